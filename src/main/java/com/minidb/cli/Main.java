@@ -14,7 +14,10 @@ public class Main {
         Path dbDir = Paths.get(Constants.DB_DIR);
         Catalog catalog = new Catalog(Paths.get(Constants.DB_DIR));
         FileManager fm = new FileManager(Paths.get(Constants.DB_DIR));
-        BufferPool bp = new BufferPool(64);
+        BufferPool bp = new BufferPool(64, BufferPool.Policy.LRU, Constants.DEFAULT_BUFFER_POOL_SHARDS, true, fm);
+        bp.startFlusher(Constants.DEFAULT_DIRTY_PAGE_RATIO, Constants.FLUSH_INTERVAL_MS);
+        // 退出时（包括 GUI 关闭窗口）写回全部脏页
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> { bp.close(); fm.close(); }));
         Executor exec = new Executor(catalog, fm, bp);
 
         if (args.length > 0 && args[0].equals("--cli")){
@@ -55,8 +58,13 @@ public class Main {
                 System.err.println("ERROR: " + res.message);
             } else {
                 System.out.println(String.join("\t", res.headers));
-                for (var r : res.rows){
-                    System.out.println(r.toString());
+                // 边读边打印，大表也不用整个结果放进内存；中途出错也要关掉算子树，删掉哈希连接的分区文件
+                try {
+                    for (var it = res.cursor(); it.hasNext(); ){
+                        System.out.println(it.next().toString());
+                    }
+                } finally {
+                    res.close();
                 }
             }
         } catch(Exception e){
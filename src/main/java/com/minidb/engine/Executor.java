@@ -5,6 +5,7 @@ import com.minidb.catalog.*;
 import com.minidb.storage.*;
 import com.minidb.utils.*;
 import com.minidb.engine.plan.*;
+import com.minidb.engine.exec.*;
 import com.minidb.transaction.*;
 import com.minidb.index.*;
 
@@ -17,8 +18,18 @@ public class Executor {
     private final IndexManager indexManager;
     private long currentTransactionId = -1;
 
+    // 优化器用的表统计，每次规划时从堆文件现估
+    private final Planner.Stats stats = new Planner.Stats() {
+        @Override public long rows(String table){
+            TableInfo t = catalog.getTable(table);
+            return new TableHeap(t.tableId, t.schema, fm, bp).estimateRows();
+        }
+        @Override public long pages(String table){ return fm.numPages(catalog.getTable(table).tableId); }
+    };
+
     public Executor(Catalog catalog, FileManager fm, BufferPool bp){
         this.catalog=catalog; this.fm=fm; this.bp=bp;
+        bp.attach(fm);
         this.semanticAnalyzer = new SemanticAnalyzer(catalog);
         this.transactionManager = new TransactionManager(fm, bp);
         this.indexManager = new IndexManager(catalog, fm, bp);
@@ -57,6 +68,9 @@ public class Executor {
 
     private Result doDrop(ast.DropTable dt){
         TableInfo t = catalog.getTable(dt.table);
+        indexManager.dropIndexesForTable(t.name);
+        bp.discard(t.tableId);
+        bp.discard(FileManager.fsmFileId(t.tableId));
         fm.deleteTable(t.tableId);
         catalog.dropTable(dt.table);
         return Result.message("Table dropped: "+dt.table);
@@ -65,9 +79,22 @@ public class Executor {
     private Result doInsert(ast.Insert ins){
         TableInfo t = catalog.getTable(ins.table);
         TableHeap heap = new TableHeap(t.tableId, t.schema, fm, bp);
+        // 先检查所有行再写堆，坏行不会让前面的行进了堆却没进索引
         for (var row: ins.rows){
-            if (row.size()!=t.schema.size()) throw new DBException("Column count mismatch");
-            heap.insert(new com.minidb.storage.Record(row));
+            if (row.size()!=t.schema.size()) throw new DBException("Column count mismatch: expected %d, got %d", t.schema.size(), row.size());
+        }
+        List<com.minidb.storage.Record> inserted = new ArrayList<>();
+        try {
+            for (var row: ins.rows){
+                RID rid = heap.insert(new com.minidb.storage.Record(row));
+                inserted.add(new com.minidb.storage.Record(row, rid));
+            }
+        } finally {
+            // 索引在整条语句之后按索引批量更新（排序后按叶子分组），不是每行下降一次；
+            // 中途写堆失败时已经进堆的行也要进索引
+            for (String index : indexManager.getIndexesForTable(t.name)){
+                indexManager.insertBatch(index, indexEntries(t, index, inserted));
+            }
         }
         return Result.message("Inserted "+ins.rows.size()+" row(s).");
     }
@@ -75,109 +102,216 @@ public class Executor {
     private Result doUpdate(ast.Update up){
         TableInfo t = catalog.getTable(up.table);
         TableHeap heap = new TableHeap(t.tableId, t.schema, fm, bp);
+        Layout layout = Layout.of(t.name, t.schema);
+        java.util.function.Predicate<List<Object>> where = up.where == null ? null : ExprCompiler.predicate(up.where, layout);
         java.util.function.Predicate<com.minidb.storage.Record> pred =
-                (up.where == null) ? (r -> true) : (r -> evalBool(up.where, t.schema, r));
+                (where == null) ? (r -> true) : (r -> where.test(r.values));
 
+        // SET 的目标列和值表达式也只解析一次
+        int[] targets = new int[up.sets.size()];
+        List<java.util.function.Function<List<Object>, Object>> values = new ArrayList<>();
+        for (int i = 0; i < targets.length; i++) {
+            var sc = up.sets.get(i);
+            targets[i] = t.schema.indexOf(sc.col).orElseThrow(() -> new DBException("Unknown column " + sc.col));
+            values.add(ExprCompiler.value(sc.expr, layout));
+        }
         java.util.function.Function<com.minidb.storage.Record, com.minidb.storage.Record> transformer =
                 (r) -> {
                     List<Object> vals = new ArrayList<>(r.values);
-                    for (var sc : up.sets) {
-                        int idx = t.schema.indexOf(sc.col).orElseThrow(() -> new DBException("Unknown column " + sc.col));
-                        Object v = eval(sc.expr, t.schema, r);
-                        v = castTo(t.schema.get(idx).type, v);
-                        vals.set(idx, v);
+                    for (int i = 0; i < targets.length; i++) {
+                        vals.set(targets[i], castTo(t.schema.get(targets[i]).type, values.get(i).apply(r.values)));
                     }
                     return new com.minidb.storage.Record(vals); // 返回更新后的记录
                 };
-        int n = heap.update(pred, transformer);
+        List<com.minidb.storage.Record> before = new ArrayList<>(), after = new ArrayList<>();
+        int n = heap.update(pred, transformer, (b, a) -> { before.add(b); after.add(a); });
+        // 键和 INCLUDE 值都没变且没搬家的行不用动索引
+        for (String index : indexManager.getIndexesForTable(t.name)){
+            int[] cols = indexManager.keyPositions(index, t.schema), include = indexManager.includePositions(index, t.schema);
+            List<com.minidb.storage.Record> removed = new ArrayList<>(), added = new ArrayList<>();
+            for (int i = 0; i < before.size(); i++){
+                var b = before.get(i); var a = after.get(i);
+                if (b.rid.equals(a.rid) && Objects.equals(IndexManager.key(cols, b.values), IndexManager.key(cols, a.values))
+                        && Objects.equals(IndexManager.payload(include, b.values), IndexManager.payload(include, a.values))) continue;
+                removed.add(b);
+                added.add(a);
+            }
+            indexManager.deleteBatch(index, indexEntries(t, index, removed));
+            indexManager.insertBatch(index, indexEntries(t, index, added));
+        }
         return Result.message("Updated "+n+" row(s).");
     }
 
     private Result doDelete(ast.Delete del){
         TableInfo t = catalog.getTable(del.table);
         TableHeap heap = new TableHeap(t.tableId, t.schema, fm, bp);
+        java.util.function.Predicate<List<Object>> where = del.where == null ? null : ExprCompiler.predicate(del.where, Layout.of(t.name, t.schema));
         java.util.function.Predicate<com.minidb.storage.Record> pred =
-                (del.where==null) ? r -> true : (r -> evalBool(del.where, t.schema, r));
-        int n = heap.delete(pred);
+                (where==null) ? r -> true : (r -> where.test(r.values));
+        List<com.minidb.storage.Record> deleted = new ArrayList<>();
+        int n = heap.delete(pred, deleted::add);
+        for (String index : indexManager.getIndexesForTable(t.name)){
+            indexManager.deleteBatch(index, indexEntries(t, index, deleted));
+        }
         return Result.message("Deleted "+n+" row(s).");
     }
 
-    private Result doSelect(ast.Select sel){
-        LogicalPlan plan = Planner.plan(sel); // 结构化
-        TableInfo t = catalog.getTable(sel.table);
-        TableHeap heap = new TableHeap(t.tableId, t.schema, fm, bp);
+    // 记录（带 RID）在某个索引上的 (key, RID, INCLUDE 值) 项
+    private List<BPlusTree.Entry> indexEntries(TableInfo t, String index, List<com.minidb.storage.Record> records){
+        int[] cols = indexManager.keyPositions(index, t.schema), include = indexManager.includePositions(index, t.schema);
+        List<BPlusTree.Entry> entries = new ArrayList<>(records.size());
+        for (var r : records) entries.add(new BPlusTree.Entry(IndexManager.key(cols, r.values), r.rid, IndexManager.payload(include, r.values)));
+        return entries;
+    }
 
-        List<Integer> projIdx = new ArrayList<>();
-        if (sel.cols.size()==1 && sel.cols.get(0).equals("*")){
-            for (int i=0;i<t.schema.size();i++) projIdx.add(i);
-        } else {
-            for (String c: sel.cols){
-                int idx = t.schema.indexOf(c).orElseThrow(()->new DBException("Unknown column "+c));
-                projIdx.add(idx);
-            }
-        }
+    // 按计划树搭好算子，结果行在调用方读的时候才从底下一行行拉上来
+    private Result doSelect(ast.Select sel){
+        Operator root = build(Planner.plan(sel, catalog, indexManager, stats));
         List<String> headers = new ArrayList<>();
-        for (int idx: projIdx) headers.add(t.schema.get(idx).name+"("+t.schema.get(idx).type+")");
-
-        List<List<Object>> rows = new ArrayList<>();
-        for (com.minidb.storage.Record r: heap.scan()){
-            if (sel.where!=null && !evalBool(sel.where, t.schema, r)) continue;
-            List<Object> out = new ArrayList<>();
-            for (int idx: projIdx) out.add(r.values.get(idx));
-            rows.add(out);
+        for (int i = 0; i < root.layout().size(); i++){
+            Column c = root.layout().column(i);
+            headers.add(c.name+"("+c.type+")");
         }
-        return Result.table(headers, rows);
+        root.open();
+        return Result.table(headers, root);
     }
 
-    // ---------- expression evaluation ----------
-    private boolean evalBool(ast.Expr e, Schema schema, com.minidb.storage.Record r){
-        if (e instanceof ast.And a) return evalBool(a.l, schema, r) && evalBool(a.r, schema, r);
-        if (e instanceof ast.Or  o) return evalBool(o.l, schema, r) ||  evalBool(o.r, schema, r);
-        if (e instanceof ast.Not n) return !evalBool(n.e, schema, r);
-        if (e instanceof ast.IsNull iz) return eval(iz.e, schema, r)==null;
-        if (e instanceof ast.IsNotNull inn) return eval(inn.e, schema, r)!=null;
-        if (e instanceof ast.Like l){
-            Object lv = eval(l.l, schema, r), rv = eval(l.r, schema, r);
-            return String.valueOf(lv).contains(String.valueOf(rv));
+    // 逻辑计划到物理算子：IndexScan 换成索引（或只读索引）访问路径，Join 按计划选定的方法，其余一一对应
+    private Operator build(LogicalPlan plan){
+        if (plan instanceof SeqScan s){
+            TableInfo t = catalog.getTable(s.table);
+            return new ScanOperator("SeqScan(table="+s.table+")", Layout.of(s.qualifier(), t.schema), new TableHeap(t.tableId, t.schema, fm, bp).scan());
         }
-        if (e instanceof ast.Compare c){
-            Object lv = eval(c.left, schema, r), rv = eval(c.right, schema, r);
-            if (lv==null || rv==null){
-                return switch(c.op){
-                    case "=" -> Objects.equals(lv, rv);
-                    case "!=" -> !Objects.equals(lv, rv);
-                    default   -> false;
-                };
+        if (plan instanceof IndexScan is){
+            TableInfo t = catalog.getTable(is.table);
+            Iterable<com.minidb.storage.Record> source = is.indexOnly ? indexOnlyScan(is, t.schema)
+                    : indexScan(is, new TableHeap(t.tableId, t.schema, fm, bp));
+            return new ScanOperator(is.kind()+"(table="+is.table+", index="+is.index+", "+is.column+" in "+is.range()+")", Layout.of(is.qualifier(), t.schema), source);
+        }
+        if (plan instanceof Filter f){
+            Operator input = build(f.input);
+            java.util.function.Predicate<List<Object>> predicate = ExprCompiler.predicate(f.predicate, input.layout());
+            return new FilterOperator(input, r -> predicate.test(r.values()));
+        }
+        if (plan instanceof Project p){
+            Operator input = build(p.input);
+            Layout layout = input.layout();
+            int[] positions;
+            if (p.cols.size()==1 && p.cols.get(0).equals("*")){
+                positions = new int[layout.size()];
+                for (int i=0;i<positions.length;i++) positions[i] = i;
+            } else {
+                positions = new int[p.cols.size()];
+                for (int i=0;i<positions.length;i++){
+                    String c = p.cols.get(i);
+                    positions[i] = layout.indexOf(c).orElseThrow(()->new DBException("Unknown column "+c));
+                }
+            }
+            return new ProjectOperator(input, positions);
+        }
+        if (plan instanceof Join j){
+            if (j.method == Join.Method.INDEX_NESTED_LOOP) return indexNestedLoopJoin(j);
+            Operator left = build(j.left), right = build(j.right);
+            Layout layout = left.layout().concat(right.layout());
+            java.util.function.Predicate<Row> residual = residual(j.residual, layout);
+            int[] leftKeys = positions(left.layout(), j.leftKeys), rightKeys = positions(right.layout(), j.rightKeys);
+            switch (j.method){
+                case MERGE: return new MergeJoinOperator(left, right, j.type, leftKeys[0], rightKeys[0], residual);
+                case HASH:
+                    boolean intKey = true;
+                    for (int k : leftKeys) intKey &= left.layout().column(k).type == Column.Type.INT;
+                    return new HashJoinOperator(left, right, j.type, leftKeys, rightKeys, intKey, j.buildLeft, residual,
+                            Constants.HASH_JOIN_MEMORY_ROWS, Constants.HASH_JOIN_FANOUT, fm.dir().resolve(Constants.TEMP_DIR));
+                default: return new NestedLoopJoinOperator(left, right, j.type, residual);
             }
-            int cmp;
-            if (lv instanceof Number && rv instanceof Number)
-                cmp = Integer.compare(((Number)lv).intValue(), ((Number)rv).intValue());
-            else
-                cmp = String.valueOf(lv).compareTo(String.valueOf(rv));
-            return switch(c.op){
-                case "=" -> cmp==0;
-                case "<" -> cmp<0;
-                case ">" -> cmp>0;
-                case "<=" -> cmp<=0;
-                case ">=" -> cmp>=0;
-                case "!=" -> cmp!=0;
-                default -> false;
-            };
         }
-        Object v = eval(e, schema, r);
-        if (v instanceof Boolean b) return b;
-        return v!=null;
+        throw new DBException("Unsupported plan node "+plan.getClass().getSimpleName());
     }
 
-    private Object eval(ast.Expr e, Schema schema, com.minidb.storage.Record r){
-        if (e instanceof ast.Literal lit) return lit.v;
-        if (e instanceof ast.ColRef cr){
-            int idx = schema.indexOf(cr.name).orElseThrow(()->new DBException("Unknown column "+cr.name));
-            return r.values.get(idx);
+    private static int[] positions(Layout layout, List<String> columns){
+        int[] positions = new int[columns.size()];
+        for (int i=0;i<positions.length;i++){
+            String c = columns.get(i);
+            positions[i] = layout.indexOf(c).orElseThrow(()->new DBException("Unknown column "+c));
         }
-        throw new DBException("Bad expr");
+        return positions;
+    }
+
+    // 索引嵌套循环：内表不扫描，外边每一行按连接键查 j.index 再回表。
+    // 组合索引的连接键是第一个键列，查的是以它开头的一段
+    private Operator indexNestedLoopJoin(Join j){
+        Operator outer = build(j.left);
+        SeqScan inner = (SeqScan) j.right;
+        TableInfo t = catalog.getTable(inner.table);
+        Layout innerLayout = Layout.of(inner.qualifier(), t.schema);
+        Layout layout = outer.layout().concat(innerLayout);
+        TableHeap heap = new TableHeap(t.tableId, t.schema, fm, bp);
+        int width = indexManager.getIndexColumns(j.index).size();
+        java.util.function.Function<Object, Iterable<com.minidb.storage.Record>> lookup = key -> () -> fetch(width == 1
+                ? indexManager.search(j.index, key).iterator()
+                : indexManager.open(j.index).cursor(BPlusTree.Bound.inclusive(prefix(key, null, width)),
+                        BPlusTree.Bound.inclusive(prefix(key, BPlusTree.MAX_KEY, width)), false), heap);
+        return new IndexNestedLoopJoinOperator(outer, "IndexLookup(table="+inner.table+", index="+j.index+")", innerLayout, lookup,
+                j.type, positions(outer.layout(), j.leftKeys)[0], residual(j.residual, layout));
     }
 
+    // 连接的剩余条件，在拼接后的行上求值
+    private static java.util.function.Predicate<Row> residual(ast.Expr e, Layout layout){
+        if (e == null) return null;
+        java.util.function.Predicate<List<Object>> p = ExprCompiler.predicate(e, layout);
+        return r -> p.test(r.values());
+    }
+
+    // 组合键的查找边界：第一列是 key，其余用 pad 补满
+    private static List<Object> prefix(Object key, Object pad, int width){
+        List<Object> t = new ArrayList<>(Collections.nCopies(width, pad));
+        t.set(0, key);
+        return t;
+    }
+
+    // 沿索引游标逐个取 RID 回表读记录；RID 指向的记录已不存在时跳过。哈希索引一次取出键的全部 RID
+    private Iterable<com.minidb.storage.Record> indexScan(IndexScan is, TableHeap heap){
+        return () -> fetch(is.hash
+                ? indexManager.search(is.index, is.lower.key).iterator()
+                : indexManager.open(is.index).cursor(is.lower, is.upper, false), heap);
+    }
+
+    private static Iterator<com.minidb.storage.Record> fetch(Iterator<RID> rids, TableHeap heap){
+        return new Iterator<>() {
+            private com.minidb.storage.Record next;
+            @Override public boolean hasNext(){
+                while (next==null && rids.hasNext()) next = heap.fetch(rids.next());
+                return next!=null;
+            }
+            @Override public com.minidb.storage.Record next(){
+                if (!hasNext()) throw new NoSuchElementException();
+                com.minidb.storage.Record r = next;
+                next = null;
+                return r;
+            }
+        };
+    }
+
+    // 只读索引叶子：每个索引项的键和 INCLUDE 值还原成一行，索引里没有的列为 null（计划保证查询用不到它们）
+    private Iterable<com.minidb.storage.Record> indexOnlyScan(IndexScan is, Schema schema){
+        int[] cols = indexManager.keyPositions(is.index, schema), include = indexManager.includePositions(is.index, schema);
+        return () -> new Iterator<>() {
+            private final BPlusTree.Cursor cursor = indexManager.open(is.index).cursor(is.lower, is.upper, false);
+            @Override public boolean hasNext(){ return cursor.hasNext(); }
+            @Override public com.minidb.storage.Record next(){
+                RID rid = cursor.next();
+                Object key = cursor.key();
+                List<Object> values = new ArrayList<>(Collections.nCopies(schema.size(), null));
+                if (cols.length == 1) values.set(cols[0], key);
+                else for (int i = 0; i < cols.length; i++) values.set(cols[i], ((List<?>) key).get(i));
+                List<?> payload = (List<?>) cursor.payload();
+                for (int i = 0; i < include.length; i++) values.set(include[i], payload.get(i));
+                return new com.minidb.storage.Record(values, rid);
+            }
+        };
+    }
+
+    // ---------- expression evaluation ----------
     private Object castTo(Column.Type type, Object v){
         if (v==null) return null;
         if (type==Column.Type.INT){
@@ -190,7 +324,7 @@ public class Executor {
     
     private Result doCreateIndex(ast.CreateIndex ci) {
         try {
-            indexManager.createIndex(ci.indexName, ci.tableName, ci.columnName);
+            indexManager.createIndex(ci.indexName, ci.tableName, ci.columns, ci.include, IndexManager.Kind.valueOf(ci.using));
             return Result.message("Index created: " + ci.indexName);
         } catch (Exception e) {
             return Result.error("Failed to create index: " + e.getMessage());
@@ -248,10 +382,72 @@ public class Executor {
     public static class Result {
         public enum Kind { MESSAGE, TABLE, ERROR }
         public final Kind kind; public final String message;
-        public final List<String> headers; public final List<List<Object>> rows;
+        public final List<String> headers;
+        // 查询结果第一次访问 rows 时才把算子树拉完放进内存；只需逐行处理的调用方用 cursor()，两者只能选一个
+        public final List<List<Object>> rows;
         private Result(Kind k, String msg, List<String> h, List<List<Object>> r){ kind=k; message=msg; headers=h; rows=r; }
         public static Result message(String m){ return new Result(Kind.MESSAGE, m, List.of(), List.of()); }
         public static Result table(List<String> h, List<List<Object>> r){ return new Result(Kind.TABLE, null, h, r); }
+        /** root 已经 open，读完后自动 close */
+        public static Result table(List<String> h, Operator root){ return new Result(Kind.TABLE, null, h, new Rows(root)); }
         public static Result error(String m){ return new Result(Kind.ERROR, m, List.of(), List.of()); }
+
+        /** 实际执行的算子树和运行时统计（行数、哈希连接的分区和落盘量）；读完结果之后数字才完整 */
+        public String plan(){ return rows instanceof Rows r ? Operator.explain(r.root) : ""; }
+
+        /** 逐行读结果，不整体放进内存 */
+        public Iterator<List<Object>> cursor(){ return rows instanceof Rows r ? r.cursor() : rows.iterator(); }
+
+        /** 没读完的结果提前释放算子 */
+        public void close(){ if (rows instanceof Rows r) r.root.close(); }
+    }
+
+    // 惰性结果集：按需从算子树拉行
+    private static final class Rows extends AbstractList<List<Object>> {
+        private final Operator root;
+        private List<List<Object>> all;
+        private boolean streamed;
+        Rows(Operator root){ this.root=root; }
+
+        @Override public List<Object> get(int i){ return all().get(i); }
+        @Override public int size(){ return all().size(); }
+
+        private List<List<Object>> all(){
+            if (all==null){
+                List<List<Object>> out = new ArrayList<>();
+                cursor().forEachRemaining(out::add);
+                all = out;
+            }
+            return all;
+        }
+
+        Iterator<List<Object>> cursor(){
+            if (all!=null) return all.iterator();
+            if (streamed) throw new DBException("Result rows were already consumed by cursor()");
+            streamed = true;
+            return new Iterator<>() {
+                private Row next;
+                private boolean done;
+                @Override public boolean hasNext(){
+                    if (next==null && !done){
+                        try { next = root.next(); }
+                        catch (RuntimeException e){
+                            // 算子中途出错（表达式类型错、落盘 I/O 失败）也要关掉整棵树，不留下分区文件
+                            done = true;
+                            try { root.close(); } catch (RuntimeException c){ e.addSuppressed(c); }
+                            throw e;
+                        }
+                        if (next==null){ done = true; root.close(); }
+                    }
+                    return next!=null;
+                }
+                @Override public List<Object> next(){
+                    if (!hasNext()) throw new NoSuchElementException();
+                    Row r = next;
+                    next = null;
+                    return r.values();
+                }
+            };
+        }
     }
 }
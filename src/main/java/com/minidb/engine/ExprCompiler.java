@@ -0,0 +1,155 @@
+package com.minidb.engine;
+import com.minidb.catalog.Column;
+import com.minidb.engine.exec.Layout;
+import com.minidb.sql.ast;
+import com.minidb.utils.DBException;
+import java.util.*;
+import java.util.function.*;
+// WHERE / ON / SET 里的表达式每条语句编译一次，逐行求值只调用编好的闭包：
+// 列名事先解析成行里的位置，比较按两边的静态类型选整数或字符串的比较节点，
+// 列和常量比较时常量事先取出来，逐行不查列名、不装箱、不分配。
+// 语义和逐行解释时一样：有一边是 NULL 时 = 只在两边都是 NULL 时为真、!= 相反，其余比较为假；
+// 两边都是数字按整数比，否则按字符串比
+final class ExprCompiler {
+    private ExprCompiler(){}
+
+    static Predicate<List<Object>> predicate(ast.Expr e, Layout layout){
+        if (e instanceof ast.And a){
+            Predicate<List<Object>> l = predicate(a.l, layout), r = predicate(a.r, layout);
+            return row -> l.test(row) && r.test(row);
+        }
+        if (e instanceof ast.Or o){
+            Predicate<List<Object>> l = predicate(o.l, layout), r = predicate(o.r, layout);
+            return row -> l.test(row) || r.test(row);
+        }
+        if (e instanceof ast.Not n){
+            Predicate<List<Object>> inner = predicate(n.e, layout);
+            return row -> !inner.test(row);
+        }
+        if (e instanceof ast.IsNull iz){
+            Function<List<Object>, Object> v = value(iz.e, layout);
+            return row -> v.apply(row) == null;
+        }
+        if (e instanceof ast.IsNotNull inn){
+            Function<List<Object>, Object> v = value(inn.e, layout);
+            return row -> v.apply(row) != null;
+        }
+        if (e instanceof ast.Like l) return like(l, layout);
+        if (e instanceof ast.Compare c) return compare(c, layout);
+        Function<List<Object>, Object> v = value(e, layout);
+        return row -> {
+            Object o = v.apply(row);
+            return o instanceof Boolean b ? b : o != null;
+        };
+    }
+
+    static Function<List<Object>, Object> value(ast.Expr e, Layout layout){
+        if (e instanceof ast.Literal lit){
+            Object v = lit.v;
+            return row -> v;
+        }
+        if (e instanceof ast.ColRef cr){
+            int idx = position(cr, layout);
+            return row -> row.get(idx);
+        }
+        throw new DBException("Bad expr");
+    }
+
+    private static int position(ast.ColRef cr, Layout layout){
+        return layout.indexOf(cr.name).orElseThrow(()->new DBException("Unknown column "+cr.name));
+    }
+
+    // 表达式的静态类型：列的类型或常量的类型，NULL 常量为 null
+    private static Column.Type type(ast.Expr e, Layout layout){
+        if (e instanceof ast.ColRef cr) return layout.column(position(cr, layout)).type;
+        if (e instanceof ast.Literal lit && lit.v != null) return lit.v instanceof Number ? Column.Type.INT : Column.Type.TEXT;
+        return null;
+    }
+
+    private static Predicate<List<Object>> like(ast.Like l, Layout layout){
+        Function<List<Object>, Object> s = value(l.l, layout);
+        if (l.r instanceof ast.Literal lit && lit.v instanceof String pattern){
+            return row -> {
+                Object v = s.apply(row);
+                return v != null && like(v instanceof String str ? str : String.valueOf(v), pattern);
+            };
+        }
+        Function<List<Object>, Object> p = value(l.r, layout);
+        return row -> {
+            Object v = s.apply(row), pv = p.apply(row);
+            return v != null && pv != null && like(String.valueOf(v), String.valueOf(pv));
+        };
+    }
+
+    // SQL LIKE：% 匹配任意串，_ 匹配单个字符；失配时回到最近的 % 让它多吞一个字符
+    static boolean like(String s, String pattern){
+        int si = 0, pi = 0, star = -1, mark = 0;
+        while (si < s.length()){
+            if (pi < pattern.length() && (pattern.charAt(pi)=='_' || pattern.charAt(pi)==s.charAt(si))){ si++; pi++; }
+            else if (pi < pattern.length() && pattern.charAt(pi)=='%'){ star = pi++; mark = si; }
+            else if (star >= 0){ pi = star + 1; si = ++mark; }
+            else return false;
+        }
+        while (pi < pattern.length() && pattern.charAt(pi)=='%') pi++;
+        return pi == pattern.length();
+    }
+
+    private static Predicate<List<Object>> compare(ast.Compare c, Layout layout){
+        IntPredicate op = switch (c.op){
+            case "=" -> cmp -> cmp == 0;
+            case "<" -> cmp -> cmp < 0;
+            case ">" -> cmp -> cmp > 0;
+            case "<=" -> cmp -> cmp <= 0;
+            case ">=" -> cmp -> cmp >= 0;
+            case "!=" -> cmp -> cmp != 0;
+            default -> null;
+        };
+        if (op == null) return row -> false;
+        // 有 NULL 时的结果：两边都是 NULL，或只有一边是
+        boolean bothNull = c.op.equals("="), oneNull = c.op.equals("!=");
+        Column.Type lt = type(c.left, layout), rt = type(c.right, layout);
+
+        // 列和整数常量
+        if (c.left instanceof ast.ColRef col && c.right instanceof ast.Literal lit && lit.v instanceof Number n && lt == Column.Type.INT){
+            int idx = position(col, layout), k = n.intValue();
+            return row -> row.get(idx) instanceof Number x ? op.test(Integer.compare(x.intValue(), k)) : compare(row.get(idx), n, bothNull, oneNull, op);
+        }
+        if (c.left instanceof ast.Literal lit && lit.v instanceof Number n && c.right instanceof ast.ColRef col && rt == Column.Type.INT){
+            int idx = position(col, layout), k = n.intValue();
+            return row -> row.get(idx) instanceof Number x ? op.test(Integer.compare(k, x.intValue())) : compare(n, row.get(idx), bothNull, oneNull, op);
+        }
+        // 列和字符串常量
+        if (c.left instanceof ast.ColRef col && c.right instanceof ast.Literal lit && lit.v instanceof String k && lt == Column.Type.TEXT){
+            int idx = position(col, layout);
+            return row -> row.get(idx) instanceof String x ? op.test(x.compareTo(k)) : compare(row.get(idx), k, bothNull, oneNull, op);
+        }
+        if (c.left instanceof ast.Literal lit && lit.v instanceof String k && c.right instanceof ast.ColRef col && rt == Column.Type.TEXT){
+            int idx = position(col, layout);
+            return row -> row.get(idx) instanceof String x ? op.test(k.compareTo(x)) : compare(k, row.get(idx), bothNull, oneNull, op);
+        }
+
+        Function<List<Object>, Object> l = value(c.left, layout), r = value(c.right, layout);
+        if (lt == Column.Type.INT && rt == Column.Type.INT){
+            return row -> {
+                Object a = l.apply(row), b = r.apply(row);
+                if (a instanceof Number x && b instanceof Number y) return op.test(Integer.compare(x.intValue(), y.intValue()));
+                return compare(a, b, bothNull, oneNull, op);
+            };
+        }
+        if (lt == Column.Type.TEXT && rt == Column.Type.TEXT){
+            return row -> {
+                Object a = l.apply(row), b = r.apply(row);
+                if (a instanceof String x && b instanceof String y) return op.test(x.compareTo(y));
+                return compare(a, b, bothNull, oneNull, op);
+            };
+        }
+        return row -> compare(l.apply(row), r.apply(row), bothNull, oneNull, op);
+    }
+
+    // 类型不确定时的比较，和逐行解释时的规则一样
+    private static boolean compare(Object lv, Object rv, boolean bothNull, boolean oneNull, IntPredicate op){
+        if (lv==null || rv==null) return lv == rv ? bothNull : oneNull;
+        if (lv instanceof Number x && rv instanceof Number y) return op.test(Integer.compare(x.intValue(), y.intValue()));
+        return op.test(String.valueOf(lv).compareTo(String.valueOf(rv)));
+    }
+}
@@ -1,22 +1,443 @@
 package com.minidb.engine;
+import com.minidb.catalog.*;
 import com.minidb.engine.plan.*;
+import com.minidb.index.IndexManager;
 import com.minidb.sql.ast;
+import com.minidb.storage.BPlusTree;
+import com.minidb.storage.BPlusTree.Bound;
+import com.minidb.utils.Constants;
 import java.util.*;
 
 public class Planner {
+    // 代价以读的页数计：索引嵌套循环每个外行下降索引再回表约 3 页；只读索引时一页叶子约放 128 项
+    private static final double INDEX_PROBE_PAGES = 3, INDEX_ENTRIES_PER_PAGE = 128;
+    
+    /** 优化器用的表统计：估算的行数和页数 */
+    public interface Stats {
+        long rows(String table);
+        long pages(String table);
+    }
+    
     public static LogicalPlan plan(ast.Select s){
-        LogicalPlan p = new SeqScan(s.table);
+        return plan(s, null, null);
+    }
+    
+    public static LogicalPlan plan(ast.Select s, Catalog catalog, IndexManager indexes){
+        return plan(s, catalog, indexes, null);
+    }
+    
+    /**
+     * 单表查询时，WHERE 里 AND 起来的 col = / < / <= / > / >= 常量以及 col LIKE '前缀%'
+     * 若落在某个索引列上就改用 IndexScan，被索引区间完全覆盖的条件不再进入 Filter；
+     * 其余条件留作 IndexScan 之上的剩余过滤。哈希索引只接等值条件，等值时优先于 B+ 树。
+     * 组合索引 (a, b, ...) 从第一列起用等值条件，直到第一个范围条件（或没有条件）的列为止。
+     * 查询用到的列全在某个 B+ 树索引里（键列或 INCLUDE 列）时只读索引叶子，不回表（index-only）。
+     * catalog 或 indexes 为 null 时只用 SeqScan。
+     * 连接按 FROM 的顺序组成左深树，每个 JOIN 的方法见 {@link #planJoin}；stats 为 null 时有等值键就用哈希连接
+     */
+    public static LogicalPlan plan(ast.Select s, Catalog catalog, IndexManager indexes, Stats stats){
+        LogicalPlan p = null;
+        ast.Expr where = s.where;
+        if (s.joins.isEmpty() && where != null && catalog != null && indexes != null) {
+            TableInfo table = catalog.getTable(s.table);
+            List<ast.Expr> conjuncts = new ArrayList<>();
+            splitAnd(where, conjuncts);
+            IndexChoice best = chooseIndex(table, indexes, conjuncts, neededColumns(s, table));
+            if (best != null) {
+                p = new IndexScan(s.table, s.alias, best.index, best.columns(), best.lower(), best.upper(), best.hash, best.covering);
+                for (KeyRange r : best.ranges) conjuncts.removeAll(r.covered);
+                where = andAll(conjuncts);
+            }
+        }
+        if (p == null) p = new SeqScan(s.table, s.alias);
         
         // 处理JOIN操作
-        for (var join : s.joins) {
-            p = new Join(p, new SeqScan(join.table), join.type, join.condition);
+        if (catalog == null || indexes == null) {
+            for (var join : s.joins) p = new Join(p, new SeqScan(join.table, join.alias), join.type, join.condition);
+        } else if (!s.joins.isEmpty()) {
+            List<Source> sources = new ArrayList<>();
+            sources.add(new Source(s.alias != null ? s.alias : s.table, catalog.getTable(s.table)));
+            for (var join : s.joins) sources.add(new Source(join.alias != null ? join.alias : join.table, catalog.getTable(join.table)));
+            List<Set<String>> needed = neededColumns(s, sources);
+            for (int i = 1; i < sources.size(); i++) {
+                p = planJoin(p, s.joins.get(i - 1), sources, i, needed, indexes, stats);
+            }
         }
         
-        if (s.where != null) p = new Filter(p, s.where);
+        if (where != null) p = new Filter(p, where);
         p = new Project(p, s.cols);
         return p;
     }
     
+    // 一个索引键列上的条件：区间和被区间完全覆盖（可以从剩余过滤里去掉）的条件
+    private static final class KeyRange {
+        final String column;
+        final boolean hash;
+        Bound lower, upper;
+        final List<ast.Expr> covered = new ArrayList<>();
+        boolean usable;
+        KeyRange(String column, boolean hash) { this.column = column; this.hash = hash; }
+        
+        boolean equality() {
+            return lower != null && upper != null && lower.inclusive && upper.inclusive
+                    && BPlusTree.KEY_ORDER.compare(lower.key, upper.key) == 0;
+        }
+        
+        // 等值 > 两端有界 > 一端有界
+        int score() {
+            if (equality()) return 3;
+            return (lower != null && lower.key != null ? 1 : 0) + (upper != null ? 1 : 0);
+        }
+    }
+    
+    // 一个候选索引：从第一个键列起连续可用的列条件，除最后一个外都是等值
+    private static final class IndexChoice {
+        final String index;
+        final List<String> keyColumns;
+        final int width; // 键列数，1 表示键就是列值本身（INCLUDE 列不在键里）
+        final boolean hash;
+        final List<KeyRange> ranges = new ArrayList<>();
+        boolean covering;
+        IndexChoice(String index, List<String> keyColumns, int width, boolean hash) {
+            this.index = index; this.keyColumns = keyColumns; this.width = width; this.hash = hash;
+        }
+        
+        // 哈希等值 > B+ 树等值 > 两端有界 > 一端有界；组合索引每多一个等值列加 3；分数相同时不回表的优先
+        int score() {
+            int score = 0;
+            for (KeyRange r : ranges) score += r.score();
+            return hash ? score + 1 : score;
+        }
+        
+        boolean betterThan(IndexChoice other) {
+            return score() != other.score() ? score() > other.score() : covering && !other.covering;
+        }
+        
+        String columns() {
+            return width == 1 ? keyColumns.get(0) : "(" + String.join(", ", keyColumns) + ")";
+        }
+        
+        // NULL 在索引里排最前，比较运算对 NULL 都为假，有条件的列下界至少要排除 NULL；没有可用条件时扫描整个索引
+        Bound lower() {
+            if (ranges.isEmpty()) return null;
+            KeyRange last = ranges.get(ranges.size() - 1);
+            Bound b = last.lower == null ? Bound.exclusive(null) : last.lower;
+            if (width == 1) return b;
+            // 组合键：后面没约束的列用 null（最小）或 MAX_KEY（最大）补齐，包含时从最小处开始，排除时跳过整段
+            return bound(tuple(b.key, b.inclusive ? null : BPlusTree.MAX_KEY), b.inclusive);
+        }
+        
+        Bound upper() {
+            if (ranges.isEmpty()) return null;
+            KeyRange last = ranges.get(ranges.size() - 1);
+            if (width == 1) return last.upper;
+            // 最后一列没有上界：有等值前缀时扫到前缀的末尾，否则不设界
+            if (last.upper == null) return ranges.size() == 1 ? null : Bound.inclusive(tuple(BPlusTree.MAX_KEY, BPlusTree.MAX_KEY));
+            return bound(tuple(last.upper.key, last.upper.inclusive ? BPlusTree.MAX_KEY : null), last.upper.inclusive);
+        }
+        
+        // 前面各列的等值常量，再接最后一列的 key，其余用 pad 补满 width 列
+        private List<Object> tuple(Object key, Object pad) {
+            List<Object> t = new ArrayList<>(width);
+            for (int i = 0; i < ranges.size() - 1; i++) t.add(ranges.get(i).lower.key);
+            t.add(key);
+            while (t.size() < width) t.add(pad);
+            return t;
+        }
+    }
+    
+    private static Bound bound(Object key, boolean inclusive) {
+        return inclusive ? Bound.inclusive(key) : Bound.exclusive(key);
+    }
+    
+    private static IndexChoice chooseIndex(TableInfo table, IndexManager indexes, List<ast.Expr> conjuncts, Set<String> needed) {
+        IndexChoice best = null;
+        for (String name : indexes.getIndexesForTable(table.name)) {
+            boolean hash = indexes.getIndexKind(name) == IndexManager.Kind.HASH;
+            List<String> keyColumns = indexes.getIndexColumns(name);
+            List<String> stored = new ArrayList<>(keyColumns);
+            stored.addAll(indexes.getIncludedColumns(name));
+            IndexChoice c = new IndexChoice(name, keyColumns, keyColumns.size(), hash);
+            for (String column : keyColumns) {
+                OptionalInt idx = table.schema.indexOf(column);
+                if (idx.isEmpty()) break;
+                KeyRange r = new KeyRange(column, hash);
+                for (ast.Expr e : conjuncts) addPredicate(r, e, table.schema.get(idx.getAsInt()).type);
+                if (!r.usable) break;
+                c.ranges.add(r);
+                if (!r.equality()) break;
+            }
+            if (hash && (c.ranges.isEmpty() || !c.ranges.get(0).equality())) continue;
+            c.covering = !hash && stored.stream().map(String::toLowerCase).toList().containsAll(needed);
+            if (c.ranges.isEmpty() && !c.covering) continue;
+            if (best == null || c.betterThan(best)) best = c;
+        }
+        return best;
+    }
+    
+    // 查询要读的列（小写）：投影列和 WHERE 里引用的列
+    private static Set<String> neededColumns(ast.Select s, TableInfo table) {
+        Set<String> cols = new HashSet<>();
+        for (String c : s.cols) {
+            if (c.equals("*")) {
+                for (int i = 0; i < table.schema.size(); i++) cols.add(table.schema.get(i).name.toLowerCase());
+            } else {
+                cols.add(unqualified(c).toLowerCase());
+            }
+        }
+        collectColumns(s.where, c -> cols.add(unqualified(c).toLowerCase()));
+        return cols;
+    }
+    
+    // 单表查询里的限定列名（t.col / alias.col）就是 col，语义分析已经检查过限定名
+    private static String unqualified(String name) {
+        return name.substring(name.indexOf('.') + 1);
+    }
+    
+    private static void collectColumns(ast.Expr e, java.util.function.Consumer<String> out) {
+        if (e instanceof ast.ColRef c) out.accept(c.name);
+        else if (e instanceof ast.Compare c) { collectColumns(c.left, out); collectColumns(c.right, out); }
+        else if (e instanceof ast.And a) { collectColumns(a.l, out); collectColumns(a.r, out); }
+        else if (e instanceof ast.Or o) { collectColumns(o.l, out); collectColumns(o.r, out); }
+        else if (e instanceof ast.Like l) { collectColumns(l.l, out); collectColumns(l.r, out); }
+        else if (e instanceof ast.Not n) collectColumns(n.e, out);
+        else if (e instanceof ast.IsNull n) collectColumns(n.e, out);
+        else if (e instanceof ast.IsNotNull n) collectColumns(n.e, out);
+    }
+    
+    // 能用索引区间表达的条件收窄 r 的区间
+    private static void addPredicate(KeyRange c, ast.Expr e, Column.Type type) {
+        if (!c.hash && e instanceof ast.Like l && l.l instanceof ast.ColRef col && unqualified(col.name).equalsIgnoreCase(c.column)
+                && type == Column.Type.TEXT && l.r instanceof ast.Literal lit && lit.v instanceof String pattern) {
+            // 前缀 LIKE：'abc%' 对应 ['abc', 'abd')；模式本身仍留在剩余过滤里
+            int wild = 0;
+            while (wild < pattern.length() && pattern.charAt(wild) != '%' && pattern.charAt(wild) != '_') wild++;
+            if (wild == 0) return;
+            String prefix = pattern.substring(0, wild);
+            char last = prefix.charAt(prefix.length() - 1);
+            c.lower = tighter(c.lower, Bound.inclusive(prefix), true);
+            if (last != Character.MAX_VALUE) {
+                c.upper = tighter(c.upper, Bound.exclusive(prefix.substring(0, wild - 1) + (char) (last + 1)), false);
+            }
+            c.usable = true;
+            return;
+        }
+        if (!(e instanceof ast.Compare cmp)) return;
+        String op = cmp.op;
+        ast.ColRef col;
+        ast.Literal lit;
+        if (cmp.left instanceof ast.ColRef l && cmp.right instanceof ast.Literal r) {
+            col = l; lit = r;
+        } else if (cmp.left instanceof ast.Literal l && cmp.right instanceof ast.ColRef r) {
+            col = r; lit = l;
+            op = switch (op) { case "<" -> ">"; case ">" -> "<"; case "<=" -> ">="; case ">=" -> "<="; default -> op; };
+        } else {
+            return;
+        }
+        if (!unqualified(col.name).equalsIgnoreCase(c.column) || lit.v == null) return;
+        if (c.hash && !op.equals("=")) return;
+        // 常量类型要和列一致，否则执行器按字符串比较，顺序和索引不同
+        if ((type == Column.Type.INT) != (lit.v instanceof Number)) return;
+        switch (op) {
+            case "=" -> {
+                c.lower = tighter(c.lower, Bound.inclusive(lit.v), true);
+                c.upper = tighter(c.upper, Bound.inclusive(lit.v), false);
+            }
+            case ">" -> c.lower = tighter(c.lower, Bound.exclusive(lit.v), true);
+            case ">=" -> c.lower = tighter(c.lower, Bound.inclusive(lit.v), true);
+            case "<" -> c.upper = tighter(c.upper, Bound.exclusive(lit.v), false);
+            case "<=" -> c.upper = tighter(c.upper, Bound.inclusive(lit.v), false);
+            default -> { return; }
+        }
+        c.covered.add(e);
+        c.usable = true;
+    }
+    
+    // 两个下界（isLower）或上界中更紧的一个；键相同时排除端更紧
+    private static Bound tighter(Bound a, Bound b, boolean isLower) {
+        if (a == null) return b;
+        int cmp = BPlusTree.KEY_ORDER.compare(a.key, b.key);
+        if (cmp == 0) return a.inclusive ? b : a;
+        return (cmp > 0) == isLower ? a : b;
+    }
+    
+    // 连接里的一张表：列名限定用的名字（有别名用别名）和表
+    private record Source(String qualifier, TableInfo table) {}
+    
+    // 列名解析到的表和列
+    private record Ref(Source source, Column column) {
+        String qualified() { return source.qualifier + "." + column.name; }
+    }
+    
+    // 限定名按限定符找，非限定名找唯一含这一列的表；找不到或有歧义返回 null
+    private static Ref resolve(String name, List<Source> sources) {
+        int dot = name.indexOf('.');
+        String qualifier = dot < 0 ? null : name.substring(0, dot), column = name.substring(dot + 1);
+        Ref found = null;
+        for (Source src : sources) {
+            if (qualifier != null && !src.qualifier.equalsIgnoreCase(qualifier)) continue;
+            OptionalInt idx = src.table.schema.indexOf(column);
+            if (idx.isEmpty()) continue;
+            if (found != null) return null;
+            found = new Ref(src, src.table.schema.get(idx.getAsInt()));
+        }
+        return found;
+    }
+    
+    // 每张表要读的列（小写）：投影列、WHERE 和所有 ON 里引用的列
+    private static List<Set<String>> neededColumns(ast.Select s, List<Source> sources) {
+        List<Set<String>> out = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) out.add(new HashSet<>());
+        java.util.function.Consumer<String> add = name -> {
+            Ref ref = resolve(name, sources);
+            if (ref != null) out.get(sources.indexOf(ref.source)).add(ref.column.name.toLowerCase());
+        };
+        for (String c : s.cols) {
+            if (!c.equals("*")) { add.accept(c); continue; }
+            for (int i = 0; i < sources.size(); i++) {
+                Schema schema = sources.get(i).table.schema;
+                for (int j = 0; j < schema.size(); j++) out.get(i).add(schema.get(j).name.toLowerCase());
+            }
+        }
+        collectColumns(s.where, add);
+        for (var join : s.joins) collectColumns(join.condition, add);
+        return out;
+    }
+    
+    // 估算的输出行数和页数
+    private record Estimate(double rows, double pages) {}
+    
+    private static Estimate estimate(LogicalPlan plan, Stats stats) {
+        if (plan instanceof SeqScan scan) return new Estimate(stats.rows(scan.table), stats.pages(scan.table));
+        if (plan instanceof IndexScan scan) return new Estimate(stats.rows(scan.table), stats.pages(scan.table));
+        if (plan instanceof Filter f) return estimate(f.input, stats);
+        if (plan instanceof Project p) return estimate(p.input, stats);
+        if (plan instanceof Join j) {
+            // 等值连接按外键连接估计（不超过较大的一边），否则是笛卡尔积
+            Estimate l = estimate(j.left, stats), r = estimate(j.right, stats);
+            double rows = j.leftKeys.isEmpty() ? l.rows * r.rows : Math.max(l.rows, r.rows);
+            return new Estimate(rows, l.pages + r.pages);
+        }
+        return new Estimate(Double.MAX_VALUE, Double.MAX_VALUE);
+    }
+    
+    /**
+     * sources 里第 inner 张表连到左边已有的树上。ON 里 外表列 = 内表列（类型相同）的条件是等值键，
+     * 没有等值键只能嵌套循环；否则按估算读的页数在下面几种方法里取最便宜的：
+     * 哈希连接读两边各一遍，建表侧放不进内存要分区落盘再读回来，按三遍算；
+     * 内表有以连接键开头的索引、且是 INNER 或 LEFT 时，索引嵌套循环每个外行查一次索引；
+     * 左边是单表、两边都有以连接键开头的 B+ 树索引时，两边按索引顺序扫描做归并连接，
+     * 只读索引（覆盖查询要的列）按叶子页数算，否则每行回表一次。
+     */
+    private static Join planJoin(LogicalPlan left, ast.JoinClause join, List<Source> sources, int inner,
+                                 List<Set<String>> needed, IndexManager indexes, Stats stats) {
+        SeqScan right = new SeqScan(join.table, join.alias);
+        List<Source> visible = sources.subList(0, inner + 1);
+        Source in = sources.get(inner);
+        List<ast.Expr> conjuncts = new ArrayList<>(), keyExprs = new ArrayList<>(), residual = new ArrayList<>();
+        if (join.condition != null) splitAnd(join.condition, conjuncts);
+        List<String> leftKeys = new ArrayList<>(), rightKeys = new ArrayList<>();
+        for (ast.Expr e : conjuncts) {
+            Ref[] pair = equiJoinKey(e, visible, in);
+            if (pair == null) { residual.add(e); continue; }
+            leftKeys.add(pair[0].qualified());
+            rightKeys.add(pair[1].qualified());
+            keyExprs.add(e);
+        }
+        if (leftKeys.isEmpty()) return new Join(left, right, join.type, join.condition);
+        if (stats == null) {
+            return new Join(left, right, join.type, join.condition, Join.Method.HASH, leftKeys, rightKeys, andAll(residual), true, null);
+        }
+        
+        Estimate l = estimate(left, stats), r = estimate(right, stats);
+        boolean buildLeft = l.pages <= r.pages;
+        double best = l.pages + r.pages;
+        if (Math.min(l.rows, r.rows) > Constants.HASH_JOIN_MEMORY_ROWS) best *= 3;
+        Join choice = new Join(left, right, join.type, join.condition, Join.Method.HASH, leftKeys, rightKeys, andAll(residual), buildLeft, null);
+        for (int k = 0; k < keyExprs.size(); k++) {
+            // 只用一对键，其余键对和剩余条件一起在拼接后的行上检查
+            List<ast.Expr> rest = new ArrayList<>(conjuncts);
+            rest.remove(keyExprs.get(k));
+            List<String> lk = List.of(leftKeys.get(k)), rk = List.of(rightKeys.get(k));
+            String innerColumn = unqualified(rightKeys.get(k));
+            
+            String probe = join.type == ast.JoinClause.Type.INNER || join.type == ast.JoinClause.Type.LEFT
+                    ? probeIndex(in.table, innerColumn, indexes) : null;
+            if (probe != null && l.rows * INDEX_PROBE_PAGES < best) {
+                best = l.rows * INDEX_PROBE_PAGES;
+                choice = new Join(left, right, join.type, join.condition, Join.Method.INDEX_NESTED_LOOP, lk, rk, andAll(rest), buildLeft, probe);
+            }
+            
+            if (!(left instanceof SeqScan scan)) continue;
+            IndexScan ls = orderedScan(scan, sources.get(0).table, unqualified(leftKeys.get(k)), needed.get(0), indexes);
+            IndexScan rs = orderedScan(right, in.table, innerColumn, needed.get(inner), indexes);
+            if (ls == null || rs == null) continue;
+            double cost = (ls.indexOnly ? l.rows / INDEX_ENTRIES_PER_PAGE : l.rows) + (rs.indexOnly ? r.rows / INDEX_ENTRIES_PER_PAGE : r.rows);
+            if (cost < best) {
+                best = cost;
+                choice = new Join(ls, rs, join.type, join.condition, Join.Method.MERGE, lk, rk, andAll(rest), buildLeft, null);
+            }
+        }
+        return choice;
+    }
+    
+    // col = col 且一边在左边已有的表里、另一边在内表里、类型相同时返回 {左列, 右列}
+    private static Ref[] equiJoinKey(ast.Expr e, List<Source> visible, Source inner) {
+        if (!(e instanceof ast.Compare c) || !c.op.equals("=")) return null;
+        if (!(c.left instanceof ast.ColRef a) || !(c.right instanceof ast.ColRef b)) return null;
+        Ref x = resolve(a.name, visible), y = resolve(b.name, visible);
+        if (x == null || y == null || x.column.type != y.column.type) return null;
+        if (x.source != inner && y.source == inner) return new Ref[]{x, y};
+        if (y.source != inner && x.source == inner) return new Ref[]{y, x};
+        return null;
+    }
+    
+    // 能按 column 的值逐个查找的索引：B+ 树第一个键列是 column，或单列的哈希索引；单列的优先（直接按值查）
+    private static String probeIndex(TableInfo table, String column, IndexManager indexes) {
+        String best = null;
+        for (String name : indexes.getIndexesForTable(table.name)) {
+            List<String> keyColumns = indexes.getIndexColumns(name);
+            if (!keyColumns.get(0).equalsIgnoreCase(column)) continue;
+            boolean single = keyColumns.size() == 1;
+            if (indexes.getIndexKind(name) == IndexManager.Kind.HASH && !single) continue;
+            if (best == null || single) best = name;
+            if (single) break;
+        }
+        return best;
+    }
+    
+    // 按 column 有序地扫整张表：第一个键列是 column 的 B+ 树索引上的全区间扫描，覆盖要读的列时只读索引
+    private static IndexScan orderedScan(SeqScan scan, TableInfo table, String column, Set<String> needed, IndexManager indexes) {
+        IndexScan best = null;
+        for (String name : indexes.getIndexesForTable(table.name)) {
+            if (indexes.getIndexKind(name) != IndexManager.Kind.BTREE) continue;
+            List<String> keyColumns = indexes.getIndexColumns(name);
+            if (!keyColumns.get(0).equalsIgnoreCase(column)) continue;
+            List<String> stored = new ArrayList<>(keyColumns);
+            stored.addAll(indexes.getIncludedColumns(name));
+            boolean covering = stored.stream().map(String::toLowerCase).toList().containsAll(needed);
+            if (best != null && (best.indexOnly || !covering)) continue;
+            String columns = keyColumns.size() == 1 ? keyColumns.get(0) : "(" + String.join(", ", keyColumns) + ")";
+            best = new IndexScan(scan.table, scan.alias, name, columns, null, null, false, covering);
+        }
+        return best;
+    }
+    
+    static void splitAnd(ast.Expr e, List<ast.Expr> out) {
+        if (e instanceof ast.And a) {
+            splitAnd(a.l, out);
+            splitAnd(a.r, out);
+        } else {
+            out.add(e);
+        }
+    }
+    
+    static ast.Expr andAll(List<ast.Expr> conjuncts) {
+        ast.Expr e = null;
+        for (ast.Expr c : conjuncts) e = e == null ? c : new ast.And(e, c);
+        return e;
+    }
+    
     public static String toTree(LogicalPlan plan) {
         return toTree(plan, 0);
     }
@@ -24,7 +445,10 @@ public class Planner {
     private static String toTree(LogicalPlan plan, int indent) {
         String prefix = "  ".repeat(indent);
         if (plan instanceof SeqScan scan) {
-            return prefix + "SeqScan(table=" + scan.table + ")";
+            return prefix + "SeqScan(table=" + scan.table + (scan.alias != null ? " " + scan.alias : "") + ")";
+        } else if (plan instanceof IndexScan scan) {
+            return prefix + scan.kind() + "(table=" + scan.table + ", index=" + scan.index + (scan.hash ? ", using=HASH" : "")
+                   + ", " + scan.column + " in " + scan.range() + ")";
         } else if (plan instanceof Filter filter) {
             return prefix + "Filter(condition=" + filter.predicate + ")\n" + 
                    toTree(filter.input, indent + 1);
@@ -32,7 +456,8 @@ public class Planner {
             return prefix + "Project(columns=" + project.cols + ")\n" + 
                    toTree(project.input, indent + 1);
         } else if (plan instanceof Join join) {
-            return prefix + "Join(type=" + join.type + ", condition=" + join.condition + ")\n" +
+            return prefix + "Join(type=" + join.type + ", method=" + join.method + (join.index != null ? ", index=" + join.index : "")
+                   + ", condition=" + join.condition + ")\n" +
                    toTree(join.left, indent + 1) + "\n" +
                    toTree(join.right, indent + 1);
         }
@@ -50,6 +475,15 @@ public class Planner {
                    prefix + "  \"type\": \"SeqScan\",\n" +
                    prefix + "  \"table\": \"" + scan.table + "\"\n" +
                    prefix + "}";
+        } else if (plan instanceof IndexScan scan) {
+            return prefix + "{\n" +
+                   prefix + "  \"type\": \"" + scan.kind() + "\",\n" +
+                   prefix + "  \"table\": \"" + scan.table + "\",\n" +
+                   prefix + "  \"index\": \"" + scan.index + "\",\n" +
+                   prefix + "  \"column\": \"" + scan.column + "\",\n" +
+                   prefix + "  \"using\": \"" + (scan.hash ? "HASH" : "BTREE") + "\",\n" +
+                   prefix + "  \"range\": \"" + scan.range().replace("\"", "\\\"") + "\"\n" +
+                   prefix + "}";
         } else if (plan instanceof Filter filter) {
             return prefix + "{\n" +
                    prefix + "  \"type\": \"Filter\",\n" +
@@ -66,6 +500,8 @@ public class Planner {
             return prefix + "{\n" +
                    prefix + "  \"type\": \"Join\",\n" +
                    prefix + "  \"joinType\": \"" + join.type + "\",\n" +
+                   prefix + "  \"method\": \"" + join.method + "\",\n" +
+                   (join.index != null ? prefix + "  \"index\": \"" + join.index + "\",\n" : "") +
                    prefix + "  \"condition\": \"" + join.condition + "\",\n" +
                    prefix + "  \"left\": " + toJSON(join.left, indent + 1) + ",\n" +
                    prefix + "  \"right\": " + toJSON(join.right, indent + 1) + "\n" +
@@ -81,12 +517,14 @@ public class Planner {
     public static String toSExpression(LogicalPlan plan) {
         if (plan instanceof SeqScan scan) {
             return "(SeqScan " + scan.table + ")";
+        } else if (plan instanceof IndexScan scan) {
+            return "(" + scan.kind() + " " + scan.table + " " + scan.index + (scan.hash ? " HASH " : " ") + scan.column + " " + scan.range() + ")";
         } else if (plan instanceof Filter filter) {
             return "(Filter " + filter.predicate + " " + toSExpression(filter.input) + ")";
         } else if (plan instanceof Project project) {
             return "(Project " + toSExpressionList(project.cols) + " " + toSExpression(project.input) + ")";
         } else if (plan instanceof Join join) {
-            return "(Join " + join.type + " " + join.condition + " " + 
+            return "(Join " + join.type + " " + join.method + (join.index != null ? " " + join.index : "") + " " + join.condition + " " + 
                    toSExpression(join.left) + " " + toSExpression(join.right) + ")";
         }
         return "(Unknown)";
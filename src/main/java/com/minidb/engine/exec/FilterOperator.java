@@ -0,0 +1,23 @@
+package com.minidb.engine.exec;
+import com.minidb.engine.Row;
+import java.util.List;
+import java.util.function.Predicate;
+// 只放过满足条件的行，行原样往上传
+public class FilterOperator implements Operator {
+    private final Operator input;
+    private final Predicate<Row> predicate;
+
+    public FilterOperator(Operator input, Predicate<Row> predicate){ this.input = input; this.predicate = predicate; }
+
+    @Override public Layout layout(){ return input.layout(); }
+    @Override public void open(){ input.open(); }
+    @Override public Row next(){
+        Row r;
+        while ((r = input.next()) != null){
+            if (predicate.test(r)) return r;
+        }
+        return null;
+    }
+    @Override public void close(){ input.close(); }
+    @Override public List<Operator> children(){ return List.of(input); }
+}
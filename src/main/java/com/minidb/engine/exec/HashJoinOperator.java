@@ -0,0 +1,334 @@
+package com.minidb.engine.exec;
+import com.minidb.engine.Row;
+import com.minidb.sql.ast.JoinClause;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Predicate;
+// 等值连接（hybrid hash join）：open 时把较小的一侧（buildLeft 指定）读进内存建哈希表，另一侧逐行探测。
+// 键是 ON 里 左列 = 右列 的那些列，NULL 键不参与匹配；ON 里其余条件（residual）在拼接后的行上检查。
+// 单个 INT 键用 IntHashTable，不装箱；其余情况键是列值本身（单列）或列值的 List。
+// 外连接：探测侧没匹配的行在探测时补 NULL，建表侧没匹配过的行在探测完之后补 NULL。
+// 输出列总是左边在前，和建表侧是哪边无关。
+//
+// 建表侧超过 memoryRows 行时按键的哈希分成 fanout 个分区：0 号分区只要放得下就留在内存里照常探测，
+// 其余分区（两侧）写到 spillDir 下的临时文件，探测完后逐对分区再连接一遍；
+// 分区还太大就换一个哈希种子递归再分，到 MAX_DEPTH 层为止（同一个键的行再分也分不开，只能放在内存里）。
+// 同一键的两侧行总在同一对分区里，所以外连接在每对分区里各自补 NULL 就是对的
+public class HashJoinOperator implements Operator {
+    static final int MAX_DEPTH = 4;
+
+    private final Operator left, right;
+    private final JoinClause.Type type;
+    private final int[] leftKeys, rightKeys;
+    private final boolean buildLeft, intKey;
+    private final Predicate<Row> residual;
+    private final Layout layout;
+    private final int memoryRows, fanout;
+    private final Path spillDir;
+
+    private Pass pass;                            // 正在连接的一对输入
+    private final Deque<Partition> pending = new ArrayDeque<>();
+    // 统计
+    private long buildRows, spilledRows, spilledBytes;
+    private int partitions, depth;
+
+    public HashJoinOperator(Operator left, Operator right, JoinClause.Type type, int[] leftKeys, int[] rightKeys,
+                            boolean intKey, boolean buildLeft, Predicate<Row> residual){
+        this(left, right, type, leftKeys, rightKeys, intKey, buildLeft, residual, Integer.MAX_VALUE, 2, null);
+    }
+
+    public HashJoinOperator(Operator left, Operator right, JoinClause.Type type, int[] leftKeys, int[] rightKeys,
+                            boolean intKey, boolean buildLeft, Predicate<Row> residual,
+                            int memoryRows, int fanout, Path spillDir){
+        this.left = left; this.right = right; this.type = type;
+        this.leftKeys = leftKeys; this.rightKeys = rightKeys;
+        this.intKey = intKey && leftKeys.length == 1;
+        this.buildLeft = buildLeft; this.residual = residual;
+        this.layout = left.layout().concat(right.layout());
+        this.memoryRows = memoryRows; this.fanout = fanout; this.spillDir = spillDir;
+    }
+
+    @Override public Layout layout(){ return layout; }
+
+    private Operator buildSide(){ return buildLeft ? left : right; }
+    private Operator probeSide(){ return buildLeft ? right : left; }
+    private int[] buildKeys(){ return buildLeft ? leftKeys : rightKeys; }
+    private int[] probeKeys(){ return buildLeft ? rightKeys : leftKeys; }
+    private boolean keepsLeft(){ return type == JoinClause.Type.LEFT || type == JoinClause.Type.FULL; }
+    private boolean keepsRight(){ return type == JoinClause.Type.RIGHT || type == JoinClause.Type.FULL; }
+    private boolean keepsBuild(){ return buildLeft ? keepsLeft() : keepsRight(); }
+    private boolean keepsProbe(){ return buildLeft ? keepsRight() : keepsLeft(); }
+
+    @Override public void open(){
+        buildRows = spilledRows = spilledBytes = 0;
+        partitions = depth = 0;
+        Operator build = buildSide();
+        build.open();
+        try {
+            pass = new Pass(0, build::next, probeSide()::next, null);
+        } finally {
+            build.close();
+        }
+        probeSide().open();
+    }
+
+    @Override public Row next(){
+        while (pass != null){
+            Row r = pass.next();
+            if (r != null) return r;
+            pass.close();
+            pass = null;
+            if (pending.isEmpty()) return null;
+            // 下一对落盘的分区
+            Partition p = pending.pop();
+            depth = Math.max(depth, p.depth);
+            try {
+                pass = new Pass(p.depth, p.build::read, p.probe::read, p);
+            } catch (RuntimeException e) {
+                p.close();
+                throw e;
+            }
+        }
+        return null;
+    }
+
+    @Override public void close(){
+        left.close();
+        right.close();
+        if (pass != null) pass.close();
+        pass = null;
+        for (Partition p : pending) p.close();
+        pending.clear();
+    }
+
+    @Override public String describe(){
+        StringBuilder sb = new StringBuilder("HashJoin(type=" + type + ", build=" + (buildLeft ? "left" : "right")
+                + ", buildRows=" + buildRows);
+        if (partitions > 0){
+            sb.append(", partitions=").append(partitions).append(", spilledRows=").append(spilledRows)
+              .append(", spilledBytes=").append(spilledBytes).append(", depth=").append(depth);
+        }
+        return sb.append(")").toString();
+    }
+
+    @Override public List<Operator> children(){ return List.of(left, right); }
+
+    // 一对要连接的输入：顶层是两个子算子，递归时是两份分区文件
+    private interface Source { Row next(); }
+
+    private static final class Partition {
+        final int depth;
+        final SpillFile build, probe;
+        Partition(int depth, SpillFile build, SpillFile probe){ this.depth = depth; this.build = build; this.probe = probe; }
+        void close(){ build.close(); probe.close(); }
+    }
+
+    // 一趟连接：建表（需要时分区落盘），然后流式探测
+    private final class Pass {
+        final int depth;
+        final Source probe;
+        final Partition inputs;       // 这一趟读的分区文件，结束时删除；顶层为 null
+        Table table;                  // 内存里的建表行，全部分区都落盘时为 null
+        SpillFile[] buildParts, probeParts;
+
+        Row probeRow;                 // 当前探测行，null 表示要取下一行
+        int chain;                    // 当前探测行在链上的下一个候选
+        boolean probeMatched;
+        int tailPos = -1;             // >= 0 时正在补建表侧没匹配过的行
+
+        Pass(int depth, Source build, Source probe, Partition inputs){
+            this.depth = depth;
+            this.probe = probe;
+            this.inputs = inputs;
+            table = new Table();
+            Row r;
+            while ((r = build.next()) != null){
+                if (depth == 0) buildRows++;
+                if (buildParts == null){
+                    table.rows.add(r);
+                    if (table.rows.size() > memoryRows && depth < MAX_DEPTH && spillDir != null) partition();
+                } else {
+                    int p = partitionOf(r, buildKeys());
+                    if (p == 0 && table != null){
+                        table.rows.add(r);
+                        if (table.rows.size() > memoryRows) spillMemoryPartition();
+                    } else {
+                        buildParts[p].write(r);
+                    }
+                }
+            }
+            if (table != null) table.index();
+        }
+
+        // 内存放不下：开始分区，已读进来的行按分区重新放
+        private void partition(){
+            buildParts = new SpillFile[fanout];
+            probeParts = new SpillFile[fanout];
+            for (int p = 1; p < fanout; p++) openPartition(p);
+            List<Row> all = table.rows;
+            table.rows = new ArrayList<>();
+            for (Row r : all){
+                int p = partitionOf(r, buildKeys());
+                if (p == 0) table.rows.add(r); else buildParts[p].write(r);
+            }
+            if (table.rows.size() > memoryRows) spillMemoryPartition();
+        }
+
+        // 0 号分区也放不下，同样落盘
+        private void spillMemoryPartition(){
+            openPartition(0);
+            for (Row r : table.rows) buildParts[0].write(r);
+            table = null;
+        }
+
+        private void openPartition(int p){
+            buildParts[p] = new SpillFile(spillDir, buildSide().layout().size());
+            probeParts[p] = new SpillFile(spillDir, probeSide().layout().size());
+            partitions++;
+        }
+
+        // 键的哈希按层换种子，下一层能把这一层同一分区里的行再分开；NULL 键都在 0 号分区
+        private int partitionOf(Row r, int[] keys){
+            int h;
+            if (intKey){
+                Object v = r.values().get(keys[0]);
+                if (v == null) return 0;
+                h = ((Number) v).intValue();
+            } else {
+                Object k = key(r, keys);
+                if (k == null) return 0;
+                h = k.hashCode();
+            }
+            h = (h ^ (depth + 1) * 0x9E3779B9) * 0x85EBCA6B;
+            h ^= h >>> 13;
+            h *= 0xC2B2AE35;
+            h ^= h >>> 16;
+            return Math.floorMod(h, fanout);
+        }
+
+        Row next(){
+            while (true){
+                if (tailPos >= 0){
+                    while (table != null && keepsBuild() && tailPos < table.rows.size()){
+                        int id = tailPos++;
+                        if (!table.matched.get(id)) return joined(probeSide().layout().nulls(), table.rows.get(id));
+                    }
+                    return null;
+                }
+                if (probeRow == null){
+                    probeRow = probe.next();
+                    if (probeRow == null){
+                        finishPartitions();
+                        tailPos = 0;
+                        continue;
+                    }
+                    if (probeParts != null){
+                        int p = partitionOf(probeRow, probeKeys());
+                        if (p != 0 || table == null){
+                            probeParts[p].write(probeRow);
+                            probeRow = null;
+                            continue;
+                        }
+                    }
+                    chain = table.lookup(probeRow);
+                    probeMatched = false;
+                }
+                while (chain != -1){
+                    int id = chain;
+                    chain = table.next[id];
+                    Row out = joined(probeRow, table.rows.get(id));
+                    if (residual == null || residual.test(out)){
+                        probeMatched = true;
+                        table.matched.set(id);
+                        return out;
+                    }
+                }
+                Row p = probeRow;
+                probeRow = null;
+                if (!probeMatched && keepsProbe()) return joined(p, buildSide().layout().nulls());
+            }
+        }
+
+        // 探测侧读完：落盘的分区对排队等下一趟，两侧都空的直接删掉
+        private void finishPartitions(){
+            if (buildParts == null) return;
+            for (int p = fanout - 1; p >= 0; p--){
+                if (buildParts[p] == null) continue;
+                Partition part = new Partition(depth + 1, buildParts[p], probeParts[p]);
+                spilledRows += part.build.rows() + part.probe.rows();
+                spilledBytes += part.build.finish() + part.probe.finish();
+                if (part.build.rows() == 0 && part.probe.rows() == 0) part.close();
+                else pending.push(part);
+            }
+            buildParts = probeParts = null;
+        }
+
+        void close(){
+            if (buildParts != null){
+                for (int p = 0; p < fanout; p++){
+                    if (buildParts[p] != null){ buildParts[p].close(); probeParts[p].close(); }
+                }
+            }
+            if (inputs != null) inputs.close();
+            table = null;
+        }
+    }
+
+    // 内存里的建表行；相同键的行用 next 串成链，next[i] == -1 表示链尾
+    private final class Table {
+        List<Row> rows = new ArrayList<>();
+        int[] next;
+        IntHashTable intHeads;
+        Map<Object, Integer> heads;
+        final BitSet matched = new BitSet();
+
+        void index(){
+            int[] keys = buildKeys();
+            next = new int[rows.size()];
+            if (intKey) intHeads = new IntHashTable(rows.size()); else heads = new HashMap<>();
+            for (int id = 0; id < rows.size(); id++){
+                Row r = rows.get(id);
+                next[id] = -1;
+                if (intKey){
+                    Object v = r.values().get(keys[0]);
+                    if (v != null) next[id] = intHeads.put(((Number) v).intValue(), id);
+                } else {
+                    Object k = key(r, keys);
+                    if (k != null){
+                        Integer old = heads.put(k, id);
+                        if (old != null) next[id] = old;
+                    }
+                }
+            }
+        }
+
+        // 探测行的键所在链的链头
+        int lookup(Row r){
+            int[] keys = probeKeys();
+            if (intKey){
+                Object v = r.values().get(keys[0]);
+                return v == null ? -1 : intHeads.get(((Number) v).intValue());
+            }
+            Object k = key(r, keys);
+            Integer head = k == null ? null : heads.get(k);
+            return head == null ? -1 : head;
+        }
+    }
+
+    // 单列时是列值本身，多列时是 List；任一列为 NULL 返回 null（NULL 不等于任何值）
+    private static Object key(Row r, int[] keys){
+        if (keys.length == 1) return r.values().get(keys[0]);
+        List<Object> k = new ArrayList<>(keys.length);
+        for (int p : keys){
+            Object v = r.values().get(p);
+            if (v == null) return null;
+            k.add(v);
+        }
+        return k;
+    }
+
+    // 探测行和建表行按左右顺序拼起来
+    private Row joined(Row probeRow, Row buildRow){
+        return buildLeft ? NestedLoopJoinOperator.concat(buildRow, probeRow) : NestedLoopJoinOperator.concat(probeRow, buildRow);
+    }
+}
@@ -0,0 +1,79 @@
+package com.minidb.engine.exec;
+import com.minidb.engine.Row;
+import com.minidb.sql.ast.JoinClause;
+import com.minidb.storage.Record;
+import com.minidb.utils.DBException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+// 索引嵌套循环连接：外边（左）每一行取连接键，用 lookup 在内表的索引上查出键相同的记录，
+// 不扫描也不缓存内表，适合外边很小、内表很大且连接键上有索引的情况。
+// 只支持 INNER 和 LEFT：内表没被查到的行无从得知。NULL 键不查；剩余条件在拼接后的行上检查
+public class IndexNestedLoopJoinOperator implements Operator {
+    private final Operator outer;
+    private final String label;
+    private final Layout innerLayout, layout;
+    private final Function<Object, Iterable<Record>> lookup;
+    private final JoinClause.Type type;
+    private final int outerKey;
+    private final Predicate<Row> residual;
+
+    private Row current;            // 当前外行
+    private Iterator<Record> matches;
+    private boolean currentMatched;
+    private long lookups, fetched;
+
+    /** label 是计划统计里显示的内表查找方式，如 IndexLookup(table=t, index=t_k) */
+    public IndexNestedLoopJoinOperator(Operator outer, String label, Layout innerLayout, Function<Object, Iterable<Record>> lookup,
+                                       JoinClause.Type type, int outerKey, Predicate<Row> residual){
+        if (type != JoinClause.Type.INNER && type != JoinClause.Type.LEFT){
+            throw new DBException("Index nested loop join supports only INNER and LEFT, got %s", type);
+        }
+        this.outer = outer; this.label = label; this.innerLayout = innerLayout; this.lookup = lookup;
+        this.type = type; this.outerKey = outerKey; this.residual = residual;
+        this.layout = outer.layout().concat(innerLayout);
+    }
+
+    @Override public Layout layout(){ return layout; }
+
+    @Override public void open(){
+        outer.open();
+        current = null;
+        matches = null;
+        lookups = fetched = 0;
+    }
+
+    @Override public Row next(){
+        while (true){
+            if (current == null){
+                current = outer.next();
+                if (current == null) return null;
+                Object key = current.values().get(outerKey);
+                matches = key == null ? Collections.emptyIterator() : lookup.apply(key).iterator();
+                if (key != null) lookups++;
+                currentMatched = false;
+            }
+            while (matches.hasNext()){
+                fetched++;
+                Row joined = NestedLoopJoinOperator.concat(current, new Row(matches.next().values));
+                if (residual != null && !residual.test(joined)) continue;
+                currentMatched = true;
+                return joined;
+            }
+            Row o = current;
+            current = null;
+            if (!currentMatched && type == JoinClause.Type.LEFT) return NestedLoopJoinOperator.concat(o, innerLayout.nulls());
+        }
+    }
+
+    @Override public void close(){
+        outer.close();
+        current = null;
+        matches = null;
+    }
+
+    @Override public String describe(){
+        return "IndexNestedLoopJoin(type=" + type + ", inner=" + label + ", lookups=" + lookups + ", fetched=" + fetched + ")";
+    }
+    @Override public List<Operator> children(){ return List.of(outer); }
+}
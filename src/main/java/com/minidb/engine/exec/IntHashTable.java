@@ -0,0 +1,58 @@
+package com.minidb.engine.exec;
+import java.util.Arrays;
+// int -> int 的开放寻址表（线性探测），键和值都放在原始数组里，不装箱。值 -1 表示没有
+final class IntHashTable {
+    private int[] keys;
+    private int[] values;
+    private int size, mask;
+
+    IntHashTable(int expected){
+        int cap = Integer.highestOneBit(Math.max(expected * 2, 16) - 1) << 1;
+        keys = new int[cap];
+        values = new int[cap];
+        Arrays.fill(values, -1);
+        mask = cap - 1;
+    }
+
+    int get(int key){
+        for (int i = slot(key); ; i = (i + 1) & mask){
+            if (values[i] == -1) return -1;
+            if (keys[i] == key) return values[i];
+        }
+    }
+
+    /** 写入 value（不能是 -1），返回原来的值 */
+    int put(int key, int value){
+        if ((size + 1) * 2 > keys.length) grow();
+        for (int i = slot(key); ; i = (i + 1) & mask){
+            if (values[i] == -1){
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return -1;
+            }
+            if (keys[i] == key){
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+    }
+
+    private int slot(int key){
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void grow(){
+        int[] oldKeys = keys, oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(values, -1);
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++){
+            if (oldValues[i] != -1) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
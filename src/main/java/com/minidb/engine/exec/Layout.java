@@ -0,0 +1,54 @@
+package com.minidb.engine.exec;
+import com.minidb.catalog.*;
+import com.minidb.engine.Row;
+import com.minidb.utils.DBException;
+import java.util.*;
+// 算子输出行的列定义。和 Schema 不同，连接后的行里可以有同名列（两张表都有 id），
+// 每列记着它来自哪张表（有别名时是别名）。列名写成 col 或 qualifier.col，
+// 只匹配一列才算找到，匹配多列报歧义
+public final class Layout {
+    private final List<String> qualifiers;
+    private final List<Column> columns;
+
+    private Layout(List<String> qualifiers, List<Column> columns){ this.qualifiers = qualifiers; this.columns = columns; }
+
+    public static Layout of(String qualifier, Schema schema){
+        return new Layout(Collections.nCopies(schema.size(), qualifier), schema.columns());
+    }
+
+    public int size(){ return columns.size(); }
+    public Column column(int i){ return columns.get(i); }
+
+    /** 列名（不区分大小写）所在的位置 */
+    public OptionalInt indexOf(String name){
+        int dot = name.indexOf('.');
+        String qualifier = dot < 0 ? null : name.substring(0, dot), column = name.substring(dot + 1);
+        int found = -1;
+        for (int i = 0; i < columns.size(); i++){
+            if (!columns.get(i).name.equalsIgnoreCase(column)) continue;
+            if (qualifier != null && !qualifiers.get(i).equalsIgnoreCase(qualifier)) continue;
+            if (found >= 0) throw new DBException("Ambiguous column %s", name);
+            found = i;
+        }
+        return found < 0 ? OptionalInt.empty() : OptionalInt.of(found);
+    }
+
+    /** 连接的输出：左边的列在前 */
+    public Layout concat(Layout right){
+        List<String> q = new ArrayList<>(qualifiers);
+        q.addAll(right.qualifiers);
+        List<Column> all = new ArrayList<>(columns);
+        all.addAll(right.columns);
+        return new Layout(q, all);
+    }
+
+    public Layout project(int[] positions){
+        List<String> q = new ArrayList<>(positions.length);
+        List<Column> out = new ArrayList<>(positions.length);
+        for (int p : positions){ q.add(qualifiers.get(p)); out.add(columns.get(p)); }
+        return new Layout(q, out);
+    }
+
+    /** 全是 NULL 的一行，外连接没匹配上的一侧用 */
+    Row nulls(){ return new Row(new ArrayList<>(Collections.nCopies(columns.size(), null))); }
+}
@@ -0,0 +1,128 @@
+package com.minidb.engine.exec;
+import com.minidb.engine.Row;
+import com.minidb.sql.ast.JoinClause;
+import com.minidb.storage.BPlusTree;
+import java.util.*;
+import java.util.function.Predicate;
+// 归并连接：两边都按连接键以 BPlusTree.KEY_ORDER 升序到达（索引扫描），不建哈希表也不排序。
+// 右边每次只缓冲一组同键的行，左边同键的连续几行共用这一组；键比当前左键小的右组直接跳过。
+// NULL 键排在最前且不匹配任何行。剩余条件在拼接后的行上检查，外连接补 NULL 的规则和哈希连接一样
+public class MergeJoinOperator implements Operator {
+    private final Operator left, right;
+    private final JoinClause.Type type;
+    private final int leftKey, rightKey;
+    private final Predicate<Row> residual;
+    private final Layout layout;
+
+    private final ArrayDeque<Row> out = new ArrayDeque<>();
+    private List<Row> group;        // 当前右组，null 表示还没读
+    private Object groupKey;
+    private BitSet groupMatched;
+    private Row lookahead;          // 右边读多了的一行，属于下一组
+    private boolean rightDone, done;
+    private long groups;
+
+    public MergeJoinOperator(Operator left, Operator right, JoinClause.Type type, int leftKey, int rightKey, Predicate<Row> residual){
+        this.left = left; this.right = right; this.type = type;
+        this.leftKey = leftKey; this.rightKey = rightKey; this.residual = residual;
+        this.layout = left.layout().concat(right.layout());
+    }
+
+    @Override public Layout layout(){ return layout; }
+
+    @Override public void open(){
+        left.open();
+        right.open();
+        out.clear();
+        group = null;
+        lookahead = null;
+        rightDone = done = false;
+        groups = 0;
+    }
+
+    @Override public Row next(){
+        while (out.isEmpty()){
+            if (done) return null;
+            Row l = left.next();
+            if (l == null){
+                // 左边读完：当前组和右边剩下的行都没有匹配的左行了
+                finishGroup();
+                while (nextGroup()) finishGroup();
+                done = true;
+                continue;
+            }
+            Object key = l.values().get(leftKey);
+            if (key != null){
+                if (group == null) nextGroup();
+                while (group != null && BPlusTree.KEY_ORDER.compare(groupKey, key) < 0){
+                    finishGroup();
+                    nextGroup();
+                }
+            }
+            boolean matched = false;
+            if (key != null && group != null && BPlusTree.KEY_ORDER.compare(groupKey, key) == 0){
+                for (int i = 0; i < group.size(); i++){
+                    Row joined = NestedLoopJoinOperator.concat(l, group.get(i));
+                    if (residual != null && !residual.test(joined)) continue;
+                    matched = true;
+                    groupMatched.set(i);
+                    out.add(joined);
+                }
+            }
+            if (!matched && keepsLeft()) out.add(NestedLoopJoinOperator.concat(l, right.layout().nulls()));
+        }
+        return out.poll();
+    }
+
+    // 读下一个非 NULL 键的右组；NULL 键的行遇到时直接按没匹配处理。右边读完返回 false
+    private boolean nextGroup(){
+        group = null;
+        while (!rightDone){
+            Row r = lookahead != null ? lookahead : right.next();
+            lookahead = null;
+            if (r == null){ rightDone = true; break; }
+            Object key = r.values().get(rightKey);
+            if (key == null){
+                if (keepsRight()) out.add(NestedLoopJoinOperator.concat(left.layout().nulls(), r));
+                continue;
+            }
+            if (group != null && BPlusTree.KEY_ORDER.compare(groupKey, key) != 0){
+                lookahead = r;
+                break;
+            }
+            if (group == null){
+                group = new ArrayList<>();
+                groupKey = key;
+                groupMatched = new BitSet();
+                groups++;
+            }
+            group.add(r);
+        }
+        return group != null;
+    }
+
+    // 当前组不再会被匹配：RIGHT / FULL 把没匹配过的行补左边 NULL 输出
+    private void finishGroup(){
+        if (group == null) return;
+        if (keepsRight()){
+            for (int i = groupMatched.nextClearBit(0); i < group.size(); i = groupMatched.nextClearBit(i + 1)){
+                out.add(NestedLoopJoinOperator.concat(left.layout().nulls(), group.get(i)));
+            }
+        }
+        group = null;
+    }
+
+    private boolean keepsLeft(){ return type == JoinClause.Type.LEFT || type == JoinClause.Type.FULL; }
+    private boolean keepsRight(){ return type == JoinClause.Type.RIGHT || type == JoinClause.Type.FULL; }
+
+    @Override public void close(){
+        left.close();
+        right.close();
+        out.clear();
+        group = null;
+        lookahead = null;
+    }
+
+    @Override public String describe(){ return "MergeJoin(type=" + type + ", groups=" + groups + ")"; }
+    @Override public List<Operator> children(){ return List.of(left, right); }
+}
@@ -0,0 +1,92 @@
+package com.minidb.engine.exec;
+import com.minidb.engine.Row;
+import com.minidb.sql.ast.JoinClause;
+import java.util.*;
+import java.util.function.Predicate;
+// 嵌套循环连接：左边每一行都把右边重新 open 扫一遍，条件在拼接后的行上求值；不缓存右边，内存只有一个位图。
+// LEFT / FULL 在左行一个都没匹配上时补一行右边全 NULL；RIGHT / FULL 记下匹配过的右行序号，
+// 左边扫完后再扫一遍右边，把没匹配过的补上左边全 NULL。条件为 null 时是笛卡尔积
+public class NestedLoopJoinOperator implements Operator {
+    private final Operator left, right;
+    private final JoinClause.Type type;
+    private final Predicate<Row> condition;
+    private final Layout layout;
+
+    private Row outer;            // 当前左行，null 表示要取下一行
+    private boolean outerMatched;
+    private int innerPos;         // 当前右行在右边扫描里的序号
+    private BitSet innerMatched;
+    private boolean tail;         // 正在补没匹配过的右行
+
+    public NestedLoopJoinOperator(Operator left, Operator right, JoinClause.Type type, Predicate<Row> condition){
+        this.left = left; this.right = right; this.type = type; this.condition = condition;
+        this.layout = left.layout().concat(right.layout());
+    }
+
+    @Override public Layout layout(){ return layout; }
+
+    @Override public void open(){
+        left.open();
+        outer = null;
+        innerMatched = new BitSet();
+        tail = false;
+    }
+
+    @Override public Row next(){
+        while (true){
+            if (tail){
+                Row inner;
+                while ((inner = right.next()) != null){
+                    if (!innerMatched.get(innerPos++)) return concat(left.layout().nulls(), inner);
+                }
+                right.close();
+                return null;
+            }
+            if (outer == null){
+                outer = left.next();
+                if (outer == null){
+                    if (type != JoinClause.Type.RIGHT && type != JoinClause.Type.FULL) return null;
+                    tail = true;
+                    right.open();
+                    innerPos = 0;
+                    continue;
+                }
+                right.open();
+                innerPos = 0;
+                outerMatched = false;
+            }
+            Row inner;
+            while ((inner = right.next()) != null){
+                int pos = innerPos++;
+                Row joined = concat(outer, inner);
+                if (condition == null || condition.test(joined)){
+                    outerMatched = true;
+                    innerMatched.set(pos);
+                    return joined;
+                }
+            }
+            right.close();
+            Row o = outer;
+            outer = null;
+            if (!outerMatched && (type == JoinClause.Type.LEFT || type == JoinClause.Type.FULL)){
+                return concat(o, right.layout().nulls());
+            }
+        }
+    }
+
+    @Override public void close(){
+        left.close();
+        right.close();
+        outer = null;
+    }
+
+    @Override public String describe(){ return "NestedLoopJoin(type=" + type + ")"; }
+    @Override public List<Operator> children(){ return List.of(left, right); }
+
+    static Row concat(Row l, Row r){
+        List<Object> values = new ArrayList<>(l.values().size() + r.values().size());
+        values.addAll(l.values());
+        values.addAll(r.values());
+        return new Row(values);
+    }
+}
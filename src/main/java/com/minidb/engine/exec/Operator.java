@@ -0,0 +1,31 @@
+package com.minidb.engine.exec;
+import com.minidb.engine.Row;
+import java.util.List;
+// 物理算子（Volcano 模型）：open 之后反复 next 拉取下一行，返回 null 表示没有了，close 释放资源。
+// 父算子按需向子算子要行，整条流水线同一时刻只有少量行在内存里。
+// close 可以重复调用；close 之后可以再次 open 从头开始（嵌套循环连接的内表就是这样重扫的）
+public interface Operator {
+    /** 输出行的列 */
+    Layout layout();
+    void open();
+    Row next();
+    void close();
+
+    /** 计划统计里这个算子的一行：名字、参数和运行时的数字 */
+    default String describe(){ return getClass().getSimpleName().replace("Operator", ""); }
+
+    default List<Operator> children(){ return List.of(); }
+
+    /** 整棵算子树的统计，子算子缩进两格；读完结果之后数字才完整 */
+    static String explain(Operator root){
+        StringBuilder sb = new StringBuilder();
+        explain(root, 0, sb);
+        return sb.toString();
+    }
+
+    private static void explain(Operator op, int indent, StringBuilder sb){
+        if (sb.length() > 0) sb.append('\n');
+        sb.append("  ".repeat(indent)).append(op.describe());
+        for (Operator child : op.children()) explain(child, indent + 1, sb);
+    }
+}
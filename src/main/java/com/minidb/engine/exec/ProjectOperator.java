@@ -0,0 +1,26 @@
+package com.minidb.engine.exec;
+import com.minidb.engine.Row;
+import java.util.*;
+// 按位置取出输出列
+public class ProjectOperator implements Operator {
+    private final Operator input;
+    private final int[] positions;
+    private final Layout layout;
+
+    public ProjectOperator(Operator input, int[] positions){
+        this.input = input; this.positions = positions;
+        this.layout = input.layout().project(positions);
+    }
+
+    @Override public Layout layout(){ return layout; }
+    @Override public void open(){ input.open(); }
+    @Override public Row next(){
+        Row r = input.next();
+        if (r == null) return null;
+        List<Object> out = new ArrayList<>(positions.length);
+        for (int p : positions) out.add(r.values().get(p));
+        return new Row(out);
+    }
+    @Override public void close(){ input.close(); }
+    @Override public List<Operator> children(){ return List.of(input); }
+}
@@ -0,0 +1,26 @@
+package com.minidb.engine.exec;
+import com.minidb.engine.Row;
+import com.minidb.storage.Record;
+import java.util.*;
+// 叶子算子：把一条访问路径（顺序扫描、索引扫描、只读索引扫描）的记录迭代器变成行。
+// 每次 open 重新从 source 取迭代器，所以可以重扫；TableHeap.scan 一次只缓冲一页
+public class ScanOperator implements Operator {
+    private final String label;
+    private final Layout layout;
+    private final Iterable<Record> source;
+    private Iterator<Record> it;
+    private long rows;
+
+    /** label 是计划统计里显示的访问路径，如 SeqScan(table=t) */
+    public ScanOperator(String label, Layout layout, Iterable<Record> source){ this.label = label; this.layout = layout; this.source = source; }
+
+    @Override public Layout layout(){ return layout; }
+    @Override public void open(){ it = source.iterator(); }
+    @Override public Row next(){
+        if (it == null || !it.hasNext()) return null;
+        rows++;
+        return new Row(it.next().values);
+    }
+    @Override public void close(){ it = null; }
+    @Override public String describe(){ return label.substring(0, label.length() - 1) + ", rows=" + rows + ")"; }
+}
@@ -0,0 +1,97 @@
+package com.minidb.engine.exec;
+import com.minidb.engine.Row;
+import com.minidb.utils.DBException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+// 落盘的一个分区：行依次写进临时文件，写完后从头读一遍，close 时删除。
+// 每行 width 个值，每个值 [byte 0]=NULL | [byte 1][int] | [byte 2][int len][UTF-8]
+final class SpillFile implements Closeable {
+    private final Path path;
+    private final int width;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private long rows, read, bytes;
+
+    SpillFile(Path dir, int width){
+        this.width = width;
+        try {
+            Files.createDirectories(dir);
+            path = Files.createTempFile(dir, "hashjoin_", ".part");
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        } catch (IOException e) {
+            throw new DBException("Failed to create hash join partition", e);
+        }
+    }
+
+    void write(Row r){
+        try {
+            for (Object v : r.values()){
+                if (v == null) {
+                    out.writeByte(0);
+                } else if (v instanceof Number n) {
+                    out.writeByte(1);
+                    out.writeInt(n.intValue());
+                } else {
+                    byte[] b = v.toString().getBytes(StandardCharsets.UTF_8);
+                    out.writeByte(2);
+                    out.writeInt(b.length);
+                    out.write(b);
+                }
+            }
+        } catch (IOException e) {
+            throw new DBException("Failed to write hash join partition", e);
+        }
+        rows++;
+    }
+
+    long rows(){ return rows; }
+
+    /** 写完之后的文件大小 */
+    long finish(){
+        if (out != null){
+            try {
+                out.close();
+                bytes = Files.size(path);
+            } catch (IOException e) {
+                throw new DBException("Failed to write hash join partition", e);
+            }
+            out = null;
+        }
+        return bytes;
+    }
+
+    /** 按写入顺序读下一行，读完返回 null */
+    Row read(){
+        finish();
+        if (read == rows) return null;
+        try {
+            if (in == null) in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+            List<Object> values = new ArrayList<>(width);
+            for (int i = 0; i < width; i++){
+                int type = in.readByte();
+                if (type == 0) values.add(null);
+                else if (type == 1) values.add(in.readInt());
+                else {
+                    byte[] b = new byte[in.readInt()];
+                    in.readFully(b);
+                    values.add(new String(b, StandardCharsets.UTF_8));
+                }
+            }
+            read++;
+            return new Row(values);
+        } catch (IOException e) {
+            throw new DBException("Failed to read hash join partition", e);
+        }
+    }
+
+    @Override
+    public void close(){
+        try { if (out != null) out.close(); } catch (IOException ignored) {}
+        try { if (in != null) in.close(); } catch (IOException ignored) {}
+        out = null;
+        in = null;
+        try { Files.deleteIfExists(path); } catch (IOException ignored) {}
+    }
+}
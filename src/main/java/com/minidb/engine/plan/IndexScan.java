@@ -0,0 +1,40 @@
+package com.minidb.engine.plan;
+import com.minidb.storage.BPlusTree.Bound;
+// 按索引取 [lower, upper] 内的 RID 再回表读记录；边界为 null 表示这一端不设界。
+// hash 为 true 时是哈希索引的等值查找，lower 和 upper 是同一个键。
+// 组合索引的 column 形如 (a, b)，边界是各列值的 List；indexOnly 为 true 时查询只读索引项，不回表
+public class IndexScan implements LogicalPlan {
+    public final String table, index, column;
+    public final String alias; // 表的别名，没有为 null
+    public final Bound lower, upper;
+    public final boolean hash, indexOnly;
+    public IndexScan(String table, String index, String column, Bound lower, Bound upper){
+        this(table, index, column, lower, upper, false, false);
+    }
+    public IndexScan(String table, String index, String column, Bound lower, Bound upper, boolean hash, boolean indexOnly){
+        this(table, null, index, column, lower, upper, hash, indexOnly);
+    }
+    public IndexScan(String table, String alias, String index, String column, Bound lower, Bound upper, boolean hash, boolean indexOnly){
+        this.table=table; this.alias=alias; this.index=index; this.column=column; this.lower=lower; this.upper=upper;
+        this.hash=hash; this.indexOnly=indexOnly;
+    }
+    /** 列名限定用的名字：有别名用别名 */
+    public String qualifier(){ return alias != null ? alias : table; }
+    /** 计划里显示的算子名 */
+    public String kind(){ return indexOnly ? "IndexOnlyScan" : "IndexScan"; }
+    /** 扫描区间，形如 [5, 10)、(-inf, 'b']；只排除 NULL 的下界显示为 -inf */
+    public String range(){
+        String lo = lower==null || (lower.key==null && !lower.inclusive) ? "(-inf" : (lower.inclusive ? "[" : "(") + show(lower.key);
+        String hi = upper==null ? "+inf)" : show(upper.key) + (upper.inclusive ? "]" : ")");
+        return lo + ", " + hi;
+    }
+    private static String show(Object v){
+        if (v instanceof java.util.List<?> tuple){
+            // 组合键边界里补齐用的 null 是最小值
+            java.util.StringJoiner j = new java.util.StringJoiner(", ", "(", ")");
+            for (Object o : tuple) j.add(o == null ? "-inf" : show(o));
+            return j.toString();
+        }
+        return v instanceof String s ? "'" + s + "'" : String.valueOf(v);
+    }
+}
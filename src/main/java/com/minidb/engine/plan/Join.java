@@ -2,17 +2,43 @@ package com.minidb.engine.plan;
 
 import com.minidb.sql.ast.Expr;
 import com.minidb.sql.ast.JoinClause;
+import java.util.List;
 
+// 连接方法由优化器按索引和估算的行数选定：
+//   NESTED_LOOP        没有等值键，右边对每个左行重扫一遍
+//   HASH               等值键上建哈希表，buildLeft 表示用左边建表
+//   MERGE              两边都是按连接键有序的索引扫描，边读边归并
+//   INDEX_NESTED_LOOP  左边每一行按连接键查右表的索引 index；right 只说明内表，执行时不扫描它
+// leftKeys / rightKeys 是限定名（qualifier.col）写的等值键列，MERGE 和 INDEX_NESTED_LOOP 只有一对；
+// residual 是键以外、在拼接后的行上检查的条件
 public class Join implements LogicalPlan {
+    public enum Method { NESTED_LOOP, HASH, MERGE, INDEX_NESTED_LOOP }
+
     public final LogicalPlan left;
     public final LogicalPlan right;
     public final JoinClause.Type type;
     public final Expr condition;
-    
+    public final Method method;
+    public final List<String> leftKeys, rightKeys;
+    public final Expr residual;
+    public final boolean buildLeft;
+    public final String index;
+
     public Join(LogicalPlan left, LogicalPlan right, JoinClause.Type type, Expr condition) {
+        this(left, right, type, condition, Method.NESTED_LOOP, List.of(), List.of(), condition, true, null);
+    }
+
+    public Join(LogicalPlan left, LogicalPlan right, JoinClause.Type type, Expr condition, Method method,
+                List<String> leftKeys, List<String> rightKeys, Expr residual, boolean buildLeft, String index) {
         this.left = left;
         this.right = right;
         this.type = type;
         this.condition = condition;
+        this.method = method;
+        this.leftKeys = leftKeys;
+        this.rightKeys = rightKeys;
+        this.residual = residual;
+        this.buildLeft = buildLeft;
+        this.index = index;
     }
 }
@@ -1,5 +1,8 @@
 package com.minidb.engine.plan;
 public class SeqScan implements LogicalPlan {
-    public final String table;
-    public SeqScan(String table){ this.table = table; }
+    public final String table, alias; // alias 没有为 null
+    public SeqScan(String table){ this(table, null); }
+    public SeqScan(String table, String alias){ this.table = table; this.alias = alias; }
+    /** 列名限定用的名字：有别名用别名 */
+    public String qualifier(){ return alias != null ? alias : table; }
 }
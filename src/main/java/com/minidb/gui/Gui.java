@@ -112,11 +112,16 @@ public class Gui {
                         } else {
                             DefaultTableModel model = new DefaultTableModel();
                             for (String h : res.headers) model.addColumn(h);
-                            for (var row : res.rows) model.addRow(row.toArray());
+                            // 中途出错也要关掉算子树，删掉哈希连接的分区文件
+                            try {
+                                for (var it = res.cursor(); it.hasNext(); ) model.addRow(it.next().toArray());
+                            } finally {
+                                res.close();
+                            }
                             JTable table = new JTable(model);
                             results.addTab("Result " + (++tabNo), new JScrollPane(table));
                             results.setSelectedIndex(results.getTabCount() - 1);
-                            log.append("[" + LocalTime.now().withNano(0) + "] Fetched " + res.rows.size() + " row(s).\n");
+                            log.append("[" + LocalTime.now().withNano(0) + "] Fetched " + model.getRowCount() + " row(s).\n");
                         }
                     } catch (Exception ex) {
                         log.append("[" + LocalTime.now().withNano(0) + "] Error: " + ex.getMessage() + "\n");
@@ -141,8 +146,8 @@ public class Gui {
                             "DELETE FROM emp WHERE dept IS NULL OR name LIKE 'A';\n"));
             stats.addActionListener(e -> {
                 String msg = String.format(
-                        "Cache policy: %s\nCache size: %d\nData dir: %s",
-                        bp.policy(), bp.size(), Constants.DB_DIR);
+                        "Cache policy: %s\nCache size: %d\nDirty pages: %d\nWrite-backs: %d\nData dir: %s",
+                        bp.policy(), bp.size(), bp.dirtyPages(), bp.writeBacks(), Constants.DB_DIR);
                 JOptionPane.showMessageDialog(f, msg, "Runtime Stats", JOptionPane.INFORMATION_MESSAGE);
             });
             dark.addActionListener(e -> {
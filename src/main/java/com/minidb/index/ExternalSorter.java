@@ -0,0 +1,158 @@
+package com.minidb.index;
+
+import com.minidb.storage.*;
+import com.minidb.utils.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// 建索引用的 (key, RID) 外部排序：内存里攒满 runSize 项就排好序写成一个临时顺串文件，
+// 最后对所有顺串做多路归并；全部放得下时不落盘，直接在内存里排序。
+// 顺序按 BPlusTree.KEY_ORDER，键相同时按 RID，正好是批量装载要的输入。
+// 顺串文件格式：每项一个键再跟 [long rid] 和 payload（INCLUDE 列的值，编码同键，没有时为 NULL）；键为 [byte 0]=NULL | [byte 1][int] | [byte 2][short len][UTF-8]
+// | [byte 3][byte n] n 个单列键（组合键）
+final class ExternalSorter implements Closeable {
+    private static final Comparator<BPlusTree.Entry> ORDER = IndexManager.ENTRY_ORDER;
+
+    private final Path tmpDir;
+    private final int runSize;
+    private final List<BPlusTree.Entry> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private final List<DataInputStream> open = new ArrayList<>();
+
+    ExternalSorter(Path tmpDir, int runSize) {
+        if (runSize < 1) throw new DBException("Sort run size must be positive: %d", runSize);
+        this.tmpDir = tmpDir;
+        this.runSize = runSize;
+    }
+
+    void add(Object key, RID rid, Object payload) {
+        buffer.add(new BPlusTree.Entry(key, rid, payload));
+        if (buffer.size() >= runSize) spill();
+    }
+
+    /** 已写出的顺串文件数，0 表示完全在内存里排序 */
+    int runs() {
+        return runs.size();
+    }
+
+    /** 按顺序返回全部项；只能调用一次 */
+    Iterator<BPlusTree.Entry> sorted() {
+        if (runs.isEmpty()) {
+            buffer.sort(ORDER);
+            return buffer.iterator();
+        }
+        if (!buffer.isEmpty()) spill();
+        PriorityQueue<RunReader> heap = new PriorityQueue<>((a, b) -> ORDER.compare(a.head, b.head));
+        for (Path run : runs) {
+            RunReader r = new RunReader(run);
+            if (r.advance()) heap.add(r);
+        }
+        return new Iterator<>() {
+            @Override public boolean hasNext() { return !heap.isEmpty(); }
+            @Override public BPlusTree.Entry next() {
+                RunReader r = heap.poll();
+                if (r == null) throw new NoSuchElementException();
+                BPlusTree.Entry e = r.head;
+                if (r.advance()) heap.add(r);
+                return e;
+            }
+        };
+    }
+
+    // 当前缓冲排序后写成一个顺串
+    private void spill() {
+        buffer.sort(ORDER);
+        try {
+            Path run = Files.createTempFile(tmpDir, "sort_", ".run");
+            runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+                for (BPlusTree.Entry e : buffer) {
+                    writeKey(out, e.key);
+                    out.writeLong(e.rid.toLong());
+                    writeKey(out, e.payload);
+                }
+            }
+        } catch (IOException e) {
+            throw new DBException("Failed to write sort run", e);
+        }
+        buffer.clear();
+    }
+
+    private static void writeKey(DataOutputStream out, Object key) throws IOException {
+        if (key == null) {
+            out.writeByte(0);
+        } else if (key instanceof Number n) {
+            out.writeByte(1);
+            out.writeInt(n.intValue());
+        } else if (key instanceof List<?> tuple) {
+            out.writeByte(3);
+            out.writeByte(tuple.size());
+            for (Object o : tuple) writeKey(out, o);
+        } else {
+            byte[] bytes = key.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeByte(2);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static Object readKey(DataInputStream in, int type) throws IOException {
+        switch (type) {
+            case 0: return null;
+            case 1: return in.readInt();
+            case 3:
+                int n = in.readByte();
+                List<Object> tuple = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) tuple.add(readKey(in, in.readByte()));
+                return tuple;
+            default:
+                byte[] bytes = new byte[in.readUnsignedShort()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    // 一个顺串的读取位置，head 为当前项
+    private final class RunReader {
+        private final DataInputStream in;
+        BPlusTree.Entry head;
+
+        RunReader(Path run) {
+            try {
+                in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+            } catch (IOException e) {
+                throw new DBException("Failed to open sort run", e);
+            }
+            open.add(in);
+        }
+
+        boolean advance() {
+            try {
+                int type = in.read();
+                if (type < 0) { head = null; return false; }
+                Object key = readKey(in, type);
+                RID rid = RID.fromLong(in.readLong());
+                head = new BPlusTree.Entry(key, rid, readKey(in, in.readByte()));
+                return true;
+            } catch (IOException e) {
+                throw new DBException("Failed to read sort run", e);
+            }
+        }
+    }
+
+    /** 关闭并删除全部顺串文件 */
+    @Override
+    public void close() {
+        for (DataInputStream in : open) {
+            try { in.close(); } catch (IOException ignored) {}
+        }
+        for (Path run : runs) {
+            try { Files.deleteIfExists(run); } catch (IOException ignored) {}
+        }
+        open.clear();
+        runs.clear();
+        buffer.clear();
+    }
+}
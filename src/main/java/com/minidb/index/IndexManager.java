@@ -3,35 +3,116 @@ package com.minidb.index;
 import com.minidb.catalog.*;
 import com.minidb.storage.*;
 import com.minidb.utils.*;
+import java.io.*;
 import java.util.*;
 import java.nio.file.*;
 
+// 索引的定义（名字、表、列、索引号、种类）和根页号、树高、空闲页链头记在索引目录下的 indexes.meta 里。
+// 启动时只读元数据，B+ 树在第一次用到时才打开；这几项变化（根分裂、批量装载、溢出页释放或取用）后立即重写元数据。
+// 哈希索引（USING HASH）只支持等值查找，目录和桶都在自己的索引文件里，不需要额外的元数据。
+// 单列索引的键就是列值，组合索引的键是各键列的值组成的 List，按列逐个比较。
+// INCLUDE 列的值不进键，作为 payload 跟在叶子里每个 RID 后面，只用来让查询不回表。
 public class IndexManager {
-    private final Map<String, BPlusTree> indexes = new HashMap<>();
+    /** 索引种类：B+ 树支持等值和范围，哈希只支持等值 */
+    public enum Kind { BTREE, HASH }
+    
+    private final Map<String, IndexInfo> indexes = new LinkedHashMap<>();
     private final Catalog catalog;
     private final FileManager fm;
     private final BufferPool bp;
     private final Path indexDir;
+    private final Path metaFile;
+    private final double fillFactor;
+    private final int sortRunEntries;
+    private int nextIndexId;
     
     public IndexManager(Catalog catalog, FileManager fm, BufferPool bp) {
+        this(catalog, fm, bp, Constants.DEFAULT_INDEX_FILL_FACTOR, Constants.INDEX_SORT_RUN_ENTRIES);
+    }
+    
+    /** fillFactor：建索引时每页装到的比例；sortRunEntries：外部排序时内存里一个顺串的项数 */
+    public IndexManager(Catalog catalog, FileManager fm, BufferPool bp, double fillFactor, int sortRunEntries) {
+        if (!(fillFactor > 0 && fillFactor <= 1)) {
+            throw new DBException("Fill factor must be in (0, 1]: %s", fillFactor);
+        }
         this.catalog = catalog;
         this.fm = fm;
         this.bp = bp;
-        this.indexDir = fm.dir().resolve("indexes");
+        this.fillFactor = fillFactor;
+        this.sortRunEntries = sortRunEntries;
+        this.indexDir = fm.dir().resolve(Constants.INDEX_DIR);
+        this.metaFile = indexDir.resolve(Constants.INDEX_METADATA_FILE);
         try {
             Files.createDirectories(indexDir);
         } catch (Exception e) {
             throw new DBException("Failed to create index directory", e);
         }
+        loadIndexes();
+        this.nextIndexId = Math.max(nextIndexId, scanMaxIndexId() + 1);
+    }
+    
+    // 一个索引的元数据；tree / hash 第一次用到时才创建
+    private static final class IndexInfo {
+        final String name, tableName;
+        final List<String> columns, include;
+        final int indexId;
+        final Kind kind;
+        int rootPageId, height, freeHead = -1;
+        BPlusTree tree;
+        HashIndex hash;
+        
+        IndexInfo(String name, String tableName, List<String> columns, List<String> include, int indexId, Kind kind, int rootPageId, int height) {
+            this.name = name;
+            this.tableName = tableName;
+            this.columns = columns;
+            this.include = include;
+            this.indexId = indexId;
+            this.kind = kind;
+            this.rootPageId = rootPageId;
+            this.height = height;
+        }
+    }
+    
+    // 索引号从已有的 index_N.idx 文件之后继续分配，避免覆盖旧文件
+    private int scanMaxIndexId() {
+        int max = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(indexDir, "index_*" + Constants.INDEX_FILE_EXTENSION)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                String id = name.substring("index_".length(), name.length() - Constants.INDEX_FILE_EXTENSION.length());
+                try { max = Math.max(max, Integer.parseInt(id)); } catch (NumberFormatException ignored) {}
+            }
+        } catch (Exception e) {
+            throw new DBException("Failed to list index directory", e);
+        }
+        return max;
     }
     
     public void createIndex(String indexName, String tableName, String columnName) {
+        createIndex(indexName, tableName, columnName, Kind.BTREE);
+    }
+    
+    public void createIndex(String indexName, String tableName, String columnName, Kind kind) {
+        createIndex(indexName, tableName, List.of(columnName), List.of(), kind);
+    }
+    
+    /** 在 columns 上建索引（按列逐个比较），include 列的值跟键一起存下来，只用于不回表的查询 */
+    public void createIndex(String indexName, String tableName, List<String> columns, List<String> include, Kind kind) {
         // 检查表是否存在
         TableInfo table = catalog.getTable(tableName);
         
-        // 检查列是否存在
-        if (table.schema.indexOf(columnName).isEmpty()) {
-            throw new DBException("Column not found: " + columnName);
+        // 检查列是否存在、是否重复
+        Set<String> seen = new HashSet<>();
+        for (String column : concat(columns, include)) {
+            if (table.schema.indexOf(column).isEmpty()) {
+                throw new DBException("Column not found: " + column);
+            }
+            if (!seen.add(column.toLowerCase())) {
+                throw new DBException("Column %s listed twice in index %s", column, indexName);
+            }
+        }
+        if (kind == Kind.HASH && (columns.size() > 1 || !include.isEmpty())) {
+            throw new DBException("Hash index %s must have a single column and no INCLUDE", indexName);
         }
         
         // 检查索引是否已存在
@@ -39,57 +120,104 @@ public class IndexManager {
             throw new DBException("Index already exists: " + indexName);
         }
         
-        // 创建B+树索引
-        BPlusTree index = new BPlusTree(table.tableId, columnName, fm, bp);
-        indexes.put(indexName, index);
-        
-        // 构建索引（扫描表数据）
-        buildIndex(index, table, columnName);
+        // 创建索引（独立的索引文件）并扫描表数据构建
+        IndexInfo info = new IndexInfo(indexName, table.name, List.copyOf(columns), List.copyOf(include), nextIndexId++, kind, -1, 0);
+        if (kind == Kind.HASH) {
+            info.hash = new HashIndex(info.indexId, columns.get(0), fm, bp);
+            buildHashIndex(info, table);
+        } else {
+            info.tree = new BPlusTree(info.indexId, String.join(", ", columns), fm, bp);
+            buildIndex(info, table);
+        }
         
         // 保存索引元数据
-        saveIndexMetadata(indexName, tableName, columnName);
+        indexes.put(indexName, info);
+        saveIndexMetadata(info);
     }
     
     public void dropIndex(String indexName) {
-        BPlusTree index = indexes.remove(indexName);
-        if (index == null) {
+        IndexInfo info = indexes.remove(indexName);
+        if (info == null) {
             throw new DBException("Index not found: " + indexName);
         }
         
+        // 丢弃缓存的索引页并删除索引文件
+        bp.discard(FileManager.indexFileId(info.indexId));
+        fm.deleteIndex(info.indexId);
+        
         // 删除索引元数据
         deleteIndexMetadata(indexName);
     }
     
-    public List<Integer> search(String indexName, Object key) {
-        BPlusTree index = indexes.get(indexName);
-        if (index == null) {
-            throw new DBException("Index not found: " + indexName);
+    public List<RID> search(String indexName, Object key) {
+        IndexInfo info = info(indexName);
+        return info.kind == Kind.HASH ? hash(info).search(key) : tree(info).search(key);
+    }
+    
+    public List<RID> rangeSearch(String indexName, Object minKey, Object maxKey) {
+        return open(indexName).rangeSearch(minKey, maxKey);
+    }
+    
+    public void insert(String indexName, Object key, RID rid) {
+        IndexInfo info = indexes.get(indexName);
+        if (info == null) return;
+        if (info.kind == Kind.HASH) {
+            hash(info).insert(key, rid);
+        } else {
+            tree(info).insert(key, rid);
+            treeChanged(info);
         }
-        return index.search(key);
     }
     
-    public List<Integer> rangeSearch(String indexName, Object minKey, Object maxKey) {
-        BPlusTree index = indexes.get(indexName);
-        if (index == null) {
-            throw new DBException("Index not found: " + indexName);
+    public void delete(String indexName, Object key) {
+        IndexInfo info = indexes.get(indexName);
+        if (info == null) return;
+        if (info.kind == Kind.HASH) {
+            hash(info).delete(key);
+        } else {
+            tree(info).delete(key);
+            treeChanged(info);
         }
-        return index.rangeSearch(minKey, maxKey);
     }
     
-    public void insert(String indexName, Object key, int recordId) {
-        BPlusTree index = indexes.get(indexName);
-        if (index != null) {
-            index.insert(key, recordId);
+    /** 一条语句对一个索引的全部插入：先按 (key, RID) 排序，同一个叶子里的项一次写完 */
+    public void insertBatch(String indexName, List<BPlusTree.Entry> entries) {
+        IndexInfo info = indexes.get(indexName);
+        if (info == null || entries.isEmpty()) return;
+        if (info.kind == Kind.HASH) {
+            // 哈希索引按键散列，排序没有局部性可言，逐项插入
+            for (BPlusTree.Entry e : entries) hash(info).insert(e.key, e.rid);
+            return;
         }
+        entries.sort(ENTRY_ORDER);
+        tree(info).insertBatch(entries);
+        treeChanged(info);
     }
     
-    public void delete(String indexName, Object key) {
-        BPlusTree index = indexes.get(indexName);
-        if (index != null) {
-            index.delete(key);
+    /** 一条语句对一个索引的全部删除，按 (key, RID) 排序后按叶子分组删除 */
+    public void deleteBatch(String indexName, List<BPlusTree.Entry> entries) {
+        IndexInfo info = indexes.get(indexName);
+        if (info == null || entries.isEmpty()) return;
+        if (info.kind == Kind.HASH) {
+            for (BPlusTree.Entry e : entries) hash(info).delete(e.key, e.rid);
+            return;
         }
+        entries.sort(ENTRY_ORDER);
+        tree(info).deleteBatch(entries);
+        treeChanged(info);
     }
     
+    /** 删除表上的全部索引（删表时调用） */
+    public void dropIndexesForTable(String tableName) {
+        for (String name : getIndexesForTable(tableName)) dropIndex(name);
+    }
+    
+    // 按键、键相同按 RID：批量装载和批量维护都要这个顺序
+    static final Comparator<BPlusTree.Entry> ENTRY_ORDER = (a, b) -> {
+        int c = BPlusTree.KEY_ORDER.compare(a.key, b.key);
+        return c != 0 ? c : Long.compare(a.rid.toLong(), b.rid.toLong());
+    };
+    
     public boolean hasIndex(String indexName) {
         return indexes.containsKey(indexName);
     }
@@ -100,35 +228,221 @@ public class IndexManager {
     
     public List<String> getIndexesForTable(String tableName) {
         List<String> result = new ArrayList<>();
-        for (Map.Entry<String, BPlusTree> entry : indexes.entrySet()) {
-            // 这里简化实现，实际应该从元数据中查找
-            result.add(entry.getKey());
+        for (IndexInfo info : indexes.values()) {
+            if (info.tableName.equalsIgnoreCase(tableName)) result.add(info.name);
         }
         return result;
     }
     
-    private void buildIndex(BPlusTree index, TableInfo table, String columnName) {
+    /** 索引的第一个键列 */
+    public String getIndexColumn(String indexName) {
+        return info(indexName).columns.get(0);
+    }
+    
+    /** 索引的全部键列，按比较顺序 */
+    public List<String> getIndexColumns(String indexName) {
+        return info(indexName).columns;
+    }
+    
+    /** 索引的 INCLUDE 列 */
+    public List<String> getIncludedColumns(String indexName) {
+        return info(indexName).include;
+    }
+    
+    /** 索引键列在表里的位置 */
+    public int[] keyPositions(String indexName, Schema schema) {
+        return positions(info(indexName).columns, schema);
+    }
+    
+    /** INCLUDE 列在表里的位置 */
+    public int[] includePositions(String indexName, Schema schema) {
+        return positions(info(indexName).include, schema);
+    }
+    
+    private static int[] positions(List<String> columns, Schema schema) {
+        int[] positions = new int[columns.size()];
+        for (int i = 0; i < positions.length; i++) {
+            String column = columns.get(i);
+            positions[i] = schema.indexOf(column).orElseThrow(() -> new DBException("Column not found: " + column));
+        }
+        return positions;
+    }
+    
+    /** 一行在索引里的键：只有一列时是列值本身，否则是各列值组成的 List */
+    public static Object key(int[] positions, List<Object> values) {
+        if (positions.length == 1) return values.get(positions[0]);
+        List<Object> key = new ArrayList<>(positions.length);
+        for (int p : positions) key.add(values.get(p));
+        return key;
+    }
+    
+    /** 一行的 INCLUDE 列的值（List），索引没有 INCLUDE 列时为 null */
+    public static Object payload(int[] positions, List<Object> values) {
+        if (positions.length == 0) return null;
+        List<Object> payload = new ArrayList<>(positions.length);
+        for (int p : positions) payload.add(values.get(p));
+        return payload;
+    }
+    
+    private static List<String> concat(List<String> a, List<String> b) {
+        List<String> all = new ArrayList<>(a);
+        all.addAll(b);
+        return all;
+    }
+    
+    /** 索引种类 */
+    public Kind getIndexKind(String indexName) {
+        return info(indexName).kind;
+    }
+    
+    /** 索引对应的 B+ 树，第一次调用时才打开；哈希索引没有有序游标 */
+    public BPlusTree open(String indexName) {
+        IndexInfo info = info(indexName);
+        if (info.kind == Kind.HASH) {
+            throw new DBException("Hash index %s supports only equality lookups", indexName);
+        }
+        return tree(info);
+    }
+    
+    /** 哈希索引，第一次调用时才打开 */
+    public HashIndex openHash(String indexName) {
+        IndexInfo info = info(indexName);
+        if (info.kind != Kind.HASH) {
+            throw new DBException("Not a hash index: %s", indexName);
+        }
+        return hash(info);
+    }
+    
+    private IndexInfo info(String indexName) {
+        IndexInfo info = indexes.get(indexName);
+        if (info == null) {
+            throw new DBException("Index not found: " + indexName);
+        }
+        return info;
+    }
+    
+    private HashIndex hash(IndexInfo info) {
+        if (info.hash == null) {
+            info.hash = new HashIndex(info.indexId, info.columns.get(0), fm, bp);
+        }
+        return info.hash;
+    }
+    
+    private BPlusTree tree(IndexInfo info) {
+        if (info.tree == null) {
+            info.tree = new BPlusTree(info.indexId, String.join(", ", info.columns), fm, bp, info.rootPageId, info.height, info.freeHead);
+        }
+        return info.tree;
+    }
+    
+    // 根页号、树高或空闲页链头变了就重写元数据，重启后才能找到新根和可以重用的页
+    private void treeChanged(IndexInfo info) {
+        BPlusTree tree = info.tree;
+        if (tree.rootPageId() != info.rootPageId || tree.height() != info.height || tree.freePageHead() != info.freeHead) {
+            saveIndexMetadata(info);
+        }
+    }
+    
+    private void buildIndex(IndexInfo info, TableInfo table) {
         TableHeap heap = new TableHeap(table.tableId, table.schema, fm, bp);
-        int columnIndex = table.schema.indexOf(columnName).orElseThrow();
+        int[] positions = positions(info.columns, table.schema), include = positions(info.include, table.schema);
         
-        int recordId = 0;
+        // 扫描出的记录带着自己的 RID，索引项直接指向堆中的位置；
+        // 先按 (key, RID) 外部排序，再自底向上批量装载，每个索引页只写一次
+        try (ExternalSorter sorter = new ExternalSorter(indexDir, sortRunEntries)) {
+            for (com.minidb.storage.Record record : heap.scan()) {
+                sorter.add(key(positions, record.values), record.rid, payload(include, record.values));
+            }
+            info.tree.bulkLoad(sorter.sorted(), fillFactor);
+        }
+    }
+    
+    // 哈希索引没有批量装载：逐项插入，桶满时逐个分裂
+    private void buildHashIndex(IndexInfo info, TableInfo table) {
+        TableHeap heap = new TableHeap(table.tableId, table.schema, fm, bp);
+        int[] positions = positions(info.columns, table.schema);
         for (com.minidb.storage.Record record : heap.scan()) {
-            Object key = record.values.get(columnIndex);
-            index.insert(key, recordId++);
+            info.hash.insert(key(positions, record.values), record.rid);
         }
     }
     
-    private void saveIndexMetadata(String indexName, String tableName, String columnName) {
-        // 简化实现，实际应该保存到文件中
-        // 这里可以保存到catalog.meta文件中
+    // 元数据里的根页号一落盘，重启后就按它读树；索引页还在缓冲池里没写回时会读到零页，
+    // 所以先把索引文件的脏页写回并刷盘，再改元数据
+    private void saveIndexMetadata(IndexInfo info) {
+        bp.flushFile(FileManager.indexFileId(info.indexId));
+        if (info.tree != null) {
+            info.rootPageId = info.tree.rootPageId();
+            info.height = info.tree.height();
+            info.freeHead = info.tree.freePageHead();
+        }
+        persist();
     }
     
     private void deleteIndexMetadata(String indexName) {
-        // 简化实现，实际应该从文件中删除
+        persist();
     }
     
+    // 整个元数据文件重写：先写临时文件再改名，写到一半崩溃也不会留下半个文件
+    private void persist() {
+        Path tmp = metaFile.resolveSibling(Constants.INDEX_METADATA_FILE + ".tmp");
+        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(tmp))) {
+            oos.writeInt(nextIndexId);
+            oos.writeInt(indexes.size());
+            for (IndexInfo info : indexes.values()) {
+                oos.writeUTF(info.name);
+                oos.writeUTF(info.tableName);
+                writeNames(oos, info.columns);
+                writeNames(oos, info.include);
+                oos.writeInt(info.indexId);
+                oos.writeUTF(info.kind.name());
+                oos.writeInt(info.rootPageId);
+                oos.writeInt(info.height);
+                oos.writeInt(info.freeHead);
+            }
+        } catch (IOException e) {
+            throw new DBException("Persist index metadata failed", e);
+        }
+        try {
+            Files.move(tmp, metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new DBException("Persist index metadata failed", e);
+        }
+    }
+    
+    private static void writeNames(ObjectOutputStream oos, List<String> names) throws IOException {
+        oos.writeInt(names.size());
+        for (String n : names) oos.writeUTF(n);
+    }
+    
+    private static List<String> readNames(ObjectInputStream ois) throws IOException {
+        int n = ois.readInt();
+        List<String> names = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) names.add(ois.readUTF());
+        return List.copyOf(names);
+    }
+    
+    /** 从元数据文件加载全部索引定义（不打开 B+ 树） */
     public void loadIndexes() {
-        // 从元数据文件加载所有索引
-        // 简化实现
+        indexes.clear();
+        if (!Files.exists(metaFile)) return;
+        try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(metaFile))) {
+            nextIndexId = ois.readInt();
+            int n = ois.readInt();
+            for (int i = 0; i < n; i++) {
+                String name = ois.readUTF();
+                String tableName = ois.readUTF();
+                List<String> columns = readNames(ois);
+                List<String> include = readNames(ois);
+                int indexId = ois.readInt();
+                Kind kind = Kind.valueOf(ois.readUTF());
+                int rootPageId = ois.readInt();
+                int height = ois.readInt();
+                IndexInfo info = new IndexInfo(name, tableName, columns, include, indexId, kind, rootPageId, height);
+                info.freeHead = ois.readInt();
+                indexes.put(name, info);
+            }
+        } catch (IOException e) {
+            throw new DBException("Load index metadata failed", e);
+        }
     }
 }
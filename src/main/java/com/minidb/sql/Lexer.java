@@ -196,7 +196,10 @@ public class Lexer {
             case "RIGHT" -> TokenType.RIGHT;
             case "FULL" -> TokenType.FULL;
             case "ON" -> TokenType.ON;
+            case "AS" -> TokenType.AS;
             case "INDEX" -> TokenType.INDEX;
+            case "USING" -> TokenType.USING;
+            case "INCLUDE" -> TokenType.INCLUDE;
             case "BEGIN" -> TokenType.BEGIN;
             case "COMMIT" -> TokenType.COMMIT;
             case "ROLLBACK" -> TokenType.ROLLBACK;
@@ -273,6 +276,7 @@ public class Lexer {
             case ')' -> new Token(TokenType.RPAREN, ")", startPosition.line(), startPosition.column());
             case '*' -> new Token(TokenType.STAR, "*", startPosition.line(), startPosition.column());
             case ';' -> new Token(TokenType.SEMI, ";", startPosition.line(), startPosition.column());
+            case '.' -> new Token(TokenType.DOT, ".", startPosition.line(), startPosition.column());
             default -> throw new LexerException("Unknown character: '" + currentChar + "'", 
                                               startPosition.line(), startPosition.column());
         };
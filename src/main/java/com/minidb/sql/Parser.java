@@ -87,34 +87,45 @@ public class Parser {
     private ast.Select parseSelect(){
         req(SELECT);
         List<String> cols = new ArrayList<>();
-        if (eat(STAR)) cols.add("*"); else { do { cols.add(req(IDENT).text()); } while (eat(COMMA)); }
+        if (eat(STAR)) cols.add("*"); else { do { cols.add(parseColumnName()); } while (eat(COMMA)); }
         req(FROM);
         String table = req(IDENT).text();
+        String alias = parseAlias();
         
-        // Parse JOIN clauses
+        // Parse JOIN clauses: [INNER | LEFT | RIGHT | FULL] JOIN table [[AS] alias] ON cond
         List<ast.JoinClause> joins = new ArrayList<>();
-        while (eat(JOIN) || eat(INNER) || eat(LEFT) || eat(RIGHT) || eat(FULL)) {
-            ast.JoinClause.Type joinType = ast.JoinClause.Type.INNER;
-            if (la().type() == INNER || la().type() == LEFT || la().type() == RIGHT || la().type() == FULL) {
-                joinType = switch(la().type()) {
-                    case INNER -> ast.JoinClause.Type.INNER;
-                    case LEFT -> ast.JoinClause.Type.LEFT;
-                    case RIGHT -> ast.JoinClause.Type.RIGHT;
-                    case FULL -> ast.JoinClause.Type.FULL;
-                    default -> ast.JoinClause.Type.INNER;
-                };
-                i++; // consume the join type token
-            }
+        while (la().type() == JOIN || la().type() == INNER || la().type() == LEFT || la().type() == RIGHT || la().type() == FULL) {
+            ast.JoinClause.Type joinType = switch(la().type()) {
+                case LEFT -> ast.JoinClause.Type.LEFT;
+                case RIGHT -> ast.JoinClause.Type.RIGHT;
+                case FULL -> ast.JoinClause.Type.FULL;
+                default -> ast.JoinClause.Type.INNER;
+            };
+            if (la().type() != JOIN) i++; // consume the join type token
+            req(JOIN);
             String joinTable = req(IDENT).text();
+            String joinAlias = parseAlias();
             req(ON);
             ast.Expr joinCondition = parseOr();
-            joins.add(new ast.JoinClause(joinType, joinTable, joinCondition));
+            joins.add(new ast.JoinClause(joinType, joinTable, joinAlias, joinCondition));
         }
         
         ast.Expr cond = null;
         if (eat(WHERE)) cond = parseOr();
         eat(SEMI);
-        return new ast.Select(table, cols, cond, joins);
+        return new ast.Select(table, alias, cols, cond, joins);
+    }
+    
+    // 表名后面可选的 [AS] alias
+    private String parseAlias(){
+        if (eat(AS)) return req(IDENT).text();
+        return la().type() == IDENT ? req(IDENT).text() : null;
+    }
+    
+    // col 或 qualifier.col
+    private String parseColumnName(){
+        String name = req(IDENT).text();
+        return eat(DOT) ? name + "." + req(IDENT).text() : name;
     }
 
     private ast.Delete parseDelete(){
@@ -185,7 +196,7 @@ public class Parser {
     private ast.Expr parsePrimary(){
         Token x = la(); i++;
         return switch(x.type()){
-            case IDENT -> new ast.ColRef(x.text());
+            case IDENT -> new ast.ColRef(eat(DOT) ? x.text() + "." + req(IDENT).text() : x.text());
             case NUMBER -> new ast.Literal(Integer.parseInt(x.text()));
             case STRING -> new ast.Literal(x.text());
             case LPAREN -> { ast.Expr e = parseOr(); req(RPAREN); yield e; }
@@ -198,11 +209,31 @@ public class Parser {
         String indexName = req(IDENT).text();
         req(ON);
         String tableName = req(IDENT).text();
+        // USING 可以写在列表前（ON t USING HASH (c)）或后（ON t (c) USING HASH）
+        String using = parseIndexMethod();
+        List<String> columns = parseIdentList();
+        List<String> include = eat(INCLUDE) ? parseIdentList() : List.of();
+        if (using == null) using = parseIndexMethod();
+        eat(SEMI);
+        return new ast.CreateIndex(indexName, tableName, columns, include, using == null ? "BTREE" : using);
+    }
+    
+    // (a, b, ...)
+    private List<String> parseIdentList(){
         req(LPAREN);
-        String columnName = req(IDENT).text();
+        List<String> names = new ArrayList<>();
+        do { names.add(req(IDENT).text()); } while (eat(COMMA));
         req(RPAREN);
-        eat(SEMI);
-        return new ast.CreateIndex(indexName, tableName, columnName);
+        return names;
+    }
+    
+    private String parseIndexMethod(){
+        if (!eat(USING)) return null;
+        Token m = req(IDENT);
+        String method = m.text().toUpperCase();
+        if (!method.equals("BTREE") && !method.equals("HASH"))
+            throw new ParserException("Unknown index method: "+m.text(), m.line(), m.column());
+        return method;
     }
     
     private ast.DropIndex parseDropIndex(){
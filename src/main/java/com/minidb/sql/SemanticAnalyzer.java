@@ -69,29 +69,53 @@ public class SemanticAnalyzer {
     }
     
     private void analyzeSelect(ast.Select sel) {
-        TableInfo table = getTableOrThrow(sel.table, 0, 0);
+        // 带 JOIN 时列可以来自参与连接的任意一张表；有别名的表只能用别名限定
+        List<Scope> schemas = new ArrayList<>();
+        schemas.add(new Scope(sel.alias != null ? sel.alias : sel.table, getTableOrThrow(sel.table, 0, 0).schema));
+        for (var join : sel.joins) {
+            schemas.add(new Scope(join.alias != null ? join.alias : join.table, getTableOrThrow(join.table, 0, 0).schema));
+        }
         
         // Check column references
         if (!sel.cols.contains("*")) {
             for (String colName : sel.cols) {
-                if (table.schema.indexOf(colName).isEmpty()) {
-                    throw new SemanticException("Unknown column", colName, 0, 0);
-                }
+                checkColumn(schemas, colName);
+            }
+        }
+        
+        for (var join : sel.joins) {
+            if (join.condition != null) {
+                analyzeExpression(join.condition, schemas);
             }
         }
         
         // Analyze WHERE clause
         if (sel.where != null) {
-            analyzeExpression(sel.where, table.schema);
+            analyzeExpression(sel.where, schemas);
         }
     }
     
+    private record Scope(String qualifier, Schema schema) {}
+    
+    // name 为 col 或 qualifier.col，必须恰好指向一列
+    private static void checkColumn(List<Scope> schemas, String name) {
+        int dot = name.indexOf('.');
+        String qualifier = dot < 0 ? null : name.substring(0, dot), column = name.substring(dot + 1);
+        int matches = 0;
+        for (Scope s : schemas) {
+            if (qualifier != null && !s.qualifier().equalsIgnoreCase(qualifier)) continue;
+            if (s.schema().indexOf(column).isPresent()) matches++;
+        }
+        if (matches == 0) throw new SemanticException("Unknown column", name, 0, 0);
+        if (matches > 1) throw new SemanticException("Ambiguous column", name, 0, 0);
+    }
+    
     private void analyzeDelete(ast.Delete del) {
         TableInfo table = getTableOrThrow(del.table, 0, 0);
         
         // Analyze WHERE clause
         if (del.where != null) {
-            analyzeExpression(del.where, table.schema);
+            analyzeExpression(del.where, List.of(new Scope(table.name, table.schema)));
         }
     }
     
@@ -107,7 +131,7 @@ public class SemanticAnalyzer {
         
         // Analyze WHERE clause
         if (upd.where != null) {
-            analyzeExpression(upd.where, table.schema);
+            analyzeExpression(upd.where, List.of(new Scope(table.name, table.schema)));
         }
     }
     
@@ -115,29 +139,27 @@ public class SemanticAnalyzer {
         getTableOrThrow(dt.table, 0, 0); // Just check if table exists
     }
     
-    private void analyzeExpression(ast.Expr expr, Schema schema) {
+    private void analyzeExpression(ast.Expr expr, List<Scope> schemas) {
         if (expr instanceof ast.ColRef cr) {
-            if (schema.indexOf(cr.name).isEmpty()) {
-                throw new SemanticException("Unknown column", cr.name, 0, 0);
-            }
+            checkColumn(schemas, cr.name);
         } else if (expr instanceof ast.Compare cmp) {
-            analyzeExpression(cmp.left, schema);
-            analyzeExpression(cmp.right, schema);
+            analyzeExpression(cmp.left, schemas);
+            analyzeExpression(cmp.right, schemas);
         } else if (expr instanceof ast.And and) {
-            analyzeExpression(and.l, schema);
-            analyzeExpression(and.r, schema);
+            analyzeExpression(and.l, schemas);
+            analyzeExpression(and.r, schemas);
         } else if (expr instanceof ast.Or or) {
-            analyzeExpression(or.l, schema);
-            analyzeExpression(or.r, schema);
+            analyzeExpression(or.l, schemas);
+            analyzeExpression(or.r, schemas);
         } else if (expr instanceof ast.Not not) {
-            analyzeExpression(not.e, schema);
+            analyzeExpression(not.e, schemas);
         } else if (expr instanceof ast.Like like) {
-            analyzeExpression(like.l, schema);
-            analyzeExpression(like.r, schema);
+            analyzeExpression(like.l, schemas);
+            analyzeExpression(like.r, schemas);
         } else if (expr instanceof ast.IsNull isNull) {
-            analyzeExpression(isNull.e, schema);
+            analyzeExpression(isNull.e, schemas);
         } else if (expr instanceof ast.IsNotNull isNotNull) {
-            analyzeExpression(isNotNull.e, schema);
+            analyzeExpression(isNotNull.e, schemas);
         }
         // Literal expressions don't need analysis
     }
@@ -30,6 +30,8 @@ public enum TokenType {
     STAR,
     /** 分号（语句结束符） */
     SEMI,
+    /** 点（限定列名，如 e.dept_id） */
+    DOT,
     
     // ========== DDL关键字 ==========
     /** CREATE关键字 */
@@ -106,6 +108,8 @@ public enum TokenType {
     FULL,
     /** ON关键字（JOIN条件） */
     ON,
+    /** AS关键字（表别名） */
+    AS,
     
     // ========== 索引操作关键字 ==========
     /** INDEX关键字 */
@@ -114,6 +118,10 @@ public enum TokenType {
     CREATE_INDEX,
     /** DROP INDEX */
     DROP_INDEX,
+    /** USING关键字（索引种类，如 USING HASH） */
+    USING,
+    /** INCLUDE关键字（覆盖索引的附带列） */
+    INCLUDE,
     
     // ========== 事务操作关键字 ==========
     /** BEGIN关键字（开始事务） */
@@ -136,7 +144,7 @@ public enum TokenType {
         return switch (this) {
             case CREATE, TABLE, INSERT, INTO, VALUES, SELECT, FROM, WHERE,
                  INT, TEXT, LIKE, AND, OR, NOT, IS, NULL, DELETE, DROP, UPDATE, SET,
-                 JOIN, INNER, LEFT, RIGHT, FULL, ON, INDEX, BEGIN, COMMIT, ROLLBACK -> true;
+                 JOIN, INNER, LEFT, RIGHT, FULL, ON, AS, INDEX, USING, INCLUDE, BEGIN, COMMIT, ROLLBACK -> true;
             default -> false;
         };
     }
@@ -160,7 +168,7 @@ public enum TokenType {
      */
     public boolean isDelimiter() {
         return switch (this) {
-            case COMMA, LPAREN, RPAREN, STAR, SEMI -> true;
+            case COMMA, LPAREN, RPAREN, STAR, SEMI, DOT -> true;
             default -> false;
         };
     }
@@ -29,9 +29,13 @@ public class ast {
     }
     public static class Select implements Stmt {
         public final String table; public final List<String> cols; public final Expr where;
+        public final String alias; // FROM 表的别名，没有为 null
         public final List<JoinClause> joins;
+        public Select(String table, String alias, List<String> cols, Expr where, List<JoinClause> joins){ 
+            this.table=table; this.alias=alias; this.cols=cols; this.where=where; this.joins=joins; 
+        }
         public Select(String table, List<String> cols, Expr where, List<JoinClause> joins){ 
-            this.table=table; this.cols=cols; this.where=where; this.joins=joins; 
+            this(table, null, cols, where, joins); 
         }
         public Select(String table, List<String> cols, Expr where){ 
             this(table, cols, where, List.of()); 
@@ -42,18 +46,29 @@ public class ast {
         public enum Type { INNER, LEFT, RIGHT, FULL }
         public final Type type;
         public final String table;
+        public final String alias; // 没有为 null
         public final Expr condition;
         public JoinClause(Type type, String table, Expr condition) {
-            this.type = type; this.table = table; this.condition = condition;
+            this(type, table, null, condition);
+        }
+        public JoinClause(Type type, String table, String alias, Expr condition) {
+            this.type = type; this.table = table; this.alias = alias; this.condition = condition;
         }
     }
     
     public static class CreateIndex implements Stmt {
         public final String indexName;
         public final String tableName;
-        public final String columnName;
+        public final String columnName; // 第一个键列
+        public final List<String> columns; // 全部键列，按比较顺序
+        public final List<String> include; // INCLUDE 列，只存不比较
+        public final String using; // BTREE 或 HASH
         public CreateIndex(String indexName, String tableName, String columnName) {
-            this.indexName = indexName; this.tableName = tableName; this.columnName = columnName;
+            this(indexName, tableName, List.of(columnName), List.of(), "BTREE");
+        }
+        public CreateIndex(String indexName, String tableName, List<String> columns, List<String> include, String using) {
+            this.indexName = indexName; this.tableName = tableName; this.columnName = columns.get(0);
+            this.columns = columns; this.include = include; this.using = using;
         }
     }
     
@@ -75,6 +90,7 @@ public class ast {
     }
 
     // ----- Expr -----
+    // 列名可以带表名或别名限定，形如 e.dept_id
     public static class ColRef implements Expr { public final String name; public ColRef(String n){ name=n; } }
     public static class Literal implements Expr { public final Object v; public Literal(Object v){ this.v=v; } }
     public static class Compare implements Expr { public final String op; public final Expr left,right; public Compare(String op, Expr l, Expr r){ this.op=op; this.left=l; this.right=r; } }
@@ -4,341 +4,1219 @@ import com.minidb.utils.*;
 import java.util.*;
 import java.nio.ByteBuffer;
 
+// 每个索引一个独立文件 indexes/index_N.idx，节点页在自己的页号空间里分配，不占用堆文件。
+// 节点按字节装满一页：插入后序列化大小超过 PAGE_SIZE 时按字节从中间分裂，分裂键逐层向上传递，
+// 根分裂时树长高一层。扇出由页大小和键宽决定（INT 键：叶子约 300 项，内部节点约 450 个孩子）。
+// 删除只从叶子里移除，不做合并。叶子按键序双向链接，范围扫描用 Cursor 沿链表逐页流式读取。
+//
+// 重复键：每个键在树里只出现一次，带一个 RID 倒排表（posting list）。只有一个 RID 时直接存 8 字节；
+// 多个时按 RID 升序差分编码存在叶子里；编码超过 POSTING_INLINE_LIMIT 字节后整体移到溢出页链，
+// 之后新 RID 追加到链尾。低基数列因此不会把同一个键复制成成百上千个叶子项。
+// 一批删除里同一个键的 RID 合在一起，整条溢出链只读写一次；链缩短后多出来的页挂到空闲页链上，
+// 以后分配页时先从这里取。空闲页链头和根页号一样由调用方持久化。
+//
+// 组合索引的键是键列的值组成的 List，按列逐个比较；查找边界里可以用 null / MAX_KEY 补齐未约束的列。
+// INCLUDE 列不进键：它们的值（payload）跟在倒排表里每个 RID 后面，分隔键不会因此变长，
+// 同键的行照样共用一个倒排表，只改 INCLUDE 列的 UPDATE 也不会挪动键的位置。
+//
+// 页面格式：
+//   叶子    [byte 1][int n][int prev][int next] n × (key, posting)，prev/next 为 -1 表示没有
+//   内部节点 [byte 0][int n][int child0] n × (key, int child)，child_i 下的键都 >= key_i
+//   溢出页  [byte 2][int next][int count][int used][long last] count 个差分，首个相对 0
+//   空闲页  [byte 3][int next]
+//   key     保序编码（见 KeyCodec），自定界，节点里按无符号字节直接比较
+//   posting [byte 0][long rid] | [byte 1][varint count][varint bytes] 差分 | [byte 2][int count][int head][int tail]
+//           带 payload 时类型加 3，每个 RID（或差分）后面紧跟 payload 的键编码，溢出页里也一样
+//   差分    相对前一个 RID 的 zigzag 变长整数；溢出链按追加顺序，可能为负
 public class BPlusTree {
-    private final int tableId;
+    private static final byte LEAF = 1, INTERNAL = 0, OVERFLOW = 2, FREE = 3;
+    private static final int LEAF_HEADER = 1 + 4 + 4 + 4;
+    private static final int PREV_OFFSET = 5, NEXT_OFFSET = 9;
+    private static final int OVERFLOW_HEADER = 1 + 4 + 4 + 4 + 8;
+    private static final int OVF_NEXT = 1, OVF_COUNT = 5, OVF_USED = 9, OVF_LAST = 13;
+    // 下降方式：按键定位（等于分隔键时走右边），或一直走最左 / 最右
+    private static final int SEEK = 0, FIRST = 1, LAST = 2;
+    private static final int INTERNAL_HEADER = 1 + 4 + 4;
+    /** 单个键序列化后的最大字节数，保证分裂出的两半都放得下 */
+    public static final int MAX_KEY_SIZE = Constants.PAGE_SIZE / 8;
+    /** 比任何键都大的哨兵，只用于组合键查找边界里未约束的列（null 是最小的），不能写进树 */
+    public static final Object MAX_KEY = new Object() {
+        @Override public String toString() { return "+inf"; }
+    };
+    /** 叶子内倒排表差分编码的最大字节数，超过后移到溢出页 */
+    public static final int POSTING_INLINE_LIMIT = Constants.PAGE_SIZE / 16;
+
+    private final int indexId;
+    private final int fileId;
     private final String columnName;
     private final FileManager fm;
     private final BufferPool bp;
-    private final int order; // B+树的阶数
     private int rootPageId;
-    
-    public BPlusTree(int tableId, String columnName, FileManager fm, BufferPool bp) {
-        this.tableId = tableId;
+    private int height;
+    private int freeHead;
+
+    public BPlusTree(int indexId, String columnName, FileManager fm, BufferPool bp) {
+        this(indexId, columnName, fm, bp, -1, 0); // 初始时没有根节点
+    }
+
+    /** 打开已有的索引文件：根页号和树高由调用方从元数据里取回，-1 / 0 表示空树 */
+    public BPlusTree(int indexId, String columnName, FileManager fm, BufferPool bp, int rootPageId, int height) {
+        this(indexId, columnName, fm, bp, rootPageId, height, -1);
+    }
+
+    /** 同上，freeHead 是空闲页链头，-1 表示没有 */
+    public BPlusTree(int indexId, String columnName, FileManager fm, BufferPool bp, int rootPageId, int height, int freeHead) {
+        this.indexId = indexId;
+        this.fileId = FileManager.indexFileId(indexId);
         this.columnName = columnName;
         this.fm = fm;
         this.bp = bp;
-        this.order = 4; // 4阶B+树
-        this.rootPageId = -1; // 初始时没有根节点
-    }
-    
-    public void insert(Object key, int recordId) {
-        if (rootPageId == -1) {
-            // 创建根节点
-            rootPageId = fm.allocatePage(tableId);
-            LeafNode root = new LeafNode(rootPageId);
-            root.insert(key, recordId);
-            writeNode(root);
-        } else {
-            // 从根节点开始插入
-            Node root = readNode(rootPageId);
-            InsertResult result = root.insert(key, recordId);
-            if (result != null) {
-                // 需要分裂根节点
-                InternalNode newRoot = new InternalNode(fm.allocatePage(tableId));
-                newRoot.keys.add(result.key);
-                newRoot.children.add(rootPageId);
-                newRoot.children.add(result.newNodeId);
-                rootPageId = newRoot.pageId;
-                writeNode(newRoot);
+        this.rootPageId = rootPageId;
+        this.height = height;
+        this.freeHead = freeHead;
+        bp.attach(fm);
+    }
+
+    public int indexId() { return indexId; }
+    public int fileId() { return fileId; }
+    /** 根节点页号，空树为 -1；根分裂或批量装载后会变，需要持久化 */
+    public int rootPageId() { return rootPageId; }
+    /** 树高（根到叶子的层数），也就是一次点查要读的页数 */
+    public int height() { return height; }
+    /** 空闲页链头，-1 表示没有；删除释放溢出页、分配时取用都会让它变，需要和根页号一起持久化 */
+    public int freePageHead() { return freeHead; }
+
+    public void insert(Object key, RID rid) {
+        insertBatch(Collections.singletonList(new Entry(key, rid)));
+    }
+
+    /**
+     * 批量插入：从一项下降到叶子后，后面落在同一个叶子键区间里的项直接加进这个叶子，
+     * 整个叶子只读写一次（满了就分裂一次再继续）。entries 按键排好序时每个叶子只下降一次
+     */
+    public void insertBatch(List<Entry> entries) {
+        int i = 0;
+        while (i < entries.size()) {
+            Entry first = entries.get(i);
+            checkEntry(first);
+            if (rootPageId == -1) {
+                LeafNode root = new LeafNode(allocate());
+                root.keys.add(first.key);
+                root.postings.add(Posting.of(first.rid.toLong(), first.payload));
+                writeNode(root);
+                rootPageId = root.pageId;
+                height = 1;
+                i++;
+                continue;
             }
+            // 下降时只在页面字节上找孩子，记下路径；只有分裂向上传递时才反序列化父节点
+            int[] pathPages = new int[height], pathSlots = new int[height];
+            Object[] fence = new Object[1];
+            LeafNode leaf = readLeaf(descend(KeyCodec.probe(first.key), SEEK, pathPages, pathSlots, fence));
+            int bytes = leaf.size();
+            do {
+                Entry e = entries.get(i++);
+                checkEntry(e);
+                bytes += addEntry(leaf, e);
+            } while (bytes <= Constants.PAGE_SIZE && i < entries.size() && inLeaf(entries.get(i).key, first.key, fence[0]));
+            if (bytes <= Constants.PAGE_SIZE) {
+                writeNode(leaf);
+            } else {
+                propagate(splitLeaf(leaf), pathPages, pathSlots);
+            }
+        }
+    }
+
+    /** 批量删除 (key, RID)，同样按叶子分组，每个叶子读写一次；返回实际删掉的项数 */
+    public int deleteBatch(List<Entry> entries) {
+        int removed = 0;
+        int i = 0;
+        while (i < entries.size() && rootPageId != -1) {
+            Entry first = entries.get(i);
+            Object[] fence = new Object[1];
+            LeafNode leaf = readLeaf(descend(KeyCodec.probe(first.key), SEEK, null, null, fence));
+            boolean dirty = false;
+            do {
+                // 同一个键连续的几项一起删：倒排表（包括溢出链）只读写一次
+                Object key = entries.get(i).key;
+                int end = i + 1;
+                while (end < entries.size() && compareObjects(entries.get(end).key, key) == 0) end++;
+                long[] gone = new long[end - i];
+                for (int j = i; j < end; j++) gone[j - i] = entries.get(j).rid.toLong();
+                i = end;
+                int pos = lowerBound(leaf.keys, key);
+                if (pos >= leaf.keys.size() || compareObjects(leaf.keys.get(pos), key) != 0) continue;
+                Posting p = leaf.postings.get(pos);
+                int n = removeFromPosting(p, gone);
+                if (n == 0) continue;
+                if (p.count == 0) {
+                    leaf.keys.remove(pos);
+                    leaf.postings.remove(pos);
+                }
+                dirty = true;
+                removed += n;
+            } while (i < entries.size() && inLeaf(entries.get(i).key, first.key, fence[0]));
+            if (dirty) writeNode(leaf);
+        }
+        return removed;
+    }
+
+    // key 是否和 first 落在同一个叶子：first 的叶子覆盖 [下界, fence)，fence 为 null 表示到最右
+    private static boolean inLeaf(Object key, Object first, Object fence) {
+        return compareObjects(key, first) >= 0 && (fence == null || compareObjects(key, fence) < 0);
+    }
+
+    private void checkEntry(Entry e) {
+        if (KeyCodec.size(e.key) > MAX_KEY_SIZE) {
+            throw new DBException("Index key too large for %s: %d bytes (max %d)", columnName, KeyCodec.size(e.key), MAX_KEY_SIZE);
+        }
+        if (e.payload != null && KeyCodec.size(e.payload) > MAX_KEY_SIZE) {
+            throw new DBException("INCLUDE values too large for %s: %d bytes (max %d)", columnName, KeyCodec.size(e.payload), MAX_KEY_SIZE);
         }
     }
-    
+
+    // 在内存中的叶子里加一项（已有的键加进倒排表），返回叶子序列化大小的变化
+    private int addEntry(LeafNode leaf, Entry e) {
+        int pos = lowerBound(leaf.keys, e.key);
+        if (pos < leaf.keys.size() && compareObjects(leaf.keys.get(pos), e.key) == 0) {
+            Posting p = leaf.postings.get(pos);
+            int before = p.size();
+            addToPosting(p, e.rid.toLong(), e.payload);
+            return p.size() - before;
+        }
+        Posting p = Posting.of(e.rid.toLong(), e.payload);
+        leaf.keys.add(pos, e.key);
+        leaf.postings.add(pos, p);
+        return KeyCodec.size(e.key) + p.size();
+    }
+
+    // 分裂结果沿下降路径逐层插入父节点，根分裂时树长高一层
+    private void propagate(Split split, int[] pathPages, int[] pathSlots) {
+        for (int level = height - 2; level >= 0 && split != null; level--) {
+            InternalNode parent = (InternalNode) readNode(pathPages[level]);
+            int childIndex = pathSlots[level];
+            parent.keys.add(childIndex, split.key);
+            parent.children.add(childIndex + 1, split.rightPageId);
+            if (parent.size() <= Constants.PAGE_SIZE) {
+                writeNode(parent);
+                split = null;
+            } else {
+                split = splitInternal(parent);
+            }
+        }
+        if (split != null) {
+            // 根分裂：新根只有一个分隔键和两个孩子
+            InternalNode newRoot = new InternalNode(allocate());
+            newRoot.children.add(rootPageId);
+            newRoot.keys.add(split.key);
+            newRoot.children.add(split.rightPageId);
+            writeNode(newRoot);
+            rootPageId = newRoot.pageId;
+            height++;
+        }
+    }
+
+    /** 批量装载的输入项；payload 是 INCLUDE 列的值（List），没有 INCLUDE 列时为 null */
+    public static final class Entry {
+        public final Object key;
+        public final RID rid;
+        public final Object payload;
+        public Entry(Object key, RID rid) { this(key, rid, null); }
+        public Entry(Object key, RID rid, Object payload) { this.key = key; this.rid = rid; this.payload = payload; }
+    }
+
+    /** 索引键的排序规则，与树内比较一致；批量装载的输入须按它（再按 RID）排好序 */
+    public static final Comparator<Object> KEY_ORDER = BPlusTree::compareObjects;
+
+    /**
+     * 自底向上批量装载：sorted 按键升序给出全部 (key, RID)，叶子依次装到 fillFactor × PAGE_SIZE 字节，
+     * 再逐层用每个孩子的最小键建内部节点。每页只写一次，不下降、不分裂。只能用于空树
+     */
+    public void bulkLoad(Iterator<Entry> sorted, double fillFactor) {
+        if (rootPageId != -1) throw new DBException("Bulk load needs an empty index on %s", columnName);
+        if (!(fillFactor > 0 && fillFactor <= 1)) throw new DBException("Fill factor must be in (0, 1]: %s", fillFactor);
+        int limit = (int) (Constants.PAGE_SIZE * fillFactor);
+        List<Object> firstKeys = new ArrayList<>();
+        List<Integer> pages = new ArrayList<>();
+        LeafNode leaf = null;
+        Posting posting = null;
+        int leafBytes = 0;
+        while (sorted.hasNext()) {
+            Entry e = sorted.next();
+            checkEntry(e);
+            int c = leaf == null ? 1 : compareObjects(e.key, leaf.keys.get(leaf.keys.size() - 1));
+            if (c < 0) throw new DBException("Bulk load input for %s is not sorted at key %s", columnName, e.key);
+            if (c == 0) {
+                int before = posting.size();
+                addToPosting(posting, e.rid.toLong(), e.payload);
+                leafBytes += posting.size() - before;
+                // 倒排表在叶子里长大后放不下：把这个键整个挪到新叶子
+                if (leafBytes > Constants.PAGE_SIZE && leaf.keys.size() > 1) {
+                    Object key = leaf.keys.remove(leaf.keys.size() - 1);
+                    leaf.postings.remove(leaf.postings.size() - 1);
+                    leaf = nextLeaf(leaf, firstKeys, pages);
+                    leaf.keys.add(key);
+                    leaf.postings.add(posting);
+                    leafBytes = LEAF_HEADER + KeyCodec.size(key) + posting.size();
+                }
+                continue;
+            }
+            posting = Posting.of(e.rid.toLong(), e.payload);
+            int entry = KeyCodec.size(e.key) + posting.size();
+            if (leaf == null || (leafBytes + entry > limit && !leaf.keys.isEmpty())) {
+                leaf = nextLeaf(leaf, firstKeys, pages);
+                leafBytes = LEAF_HEADER;
+            }
+            leaf.keys.add(e.key);
+            leaf.postings.add(posting);
+            leafBytes += entry;
+        }
+        if (leaf == null) return;
+        writeNode(leaf);
+        firstKeys.add(leaf.keys.get(0));
+        pages.add(leaf.pageId);
+
+        // 逐层向上：每个孩子的最小键就是它在父节点里的分隔键
+        int levels = 1;
+        while (pages.size() > 1) {
+            List<Object> upKeys = new ArrayList<>();
+            List<Integer> upPages = new ArrayList<>();
+            InternalNode node = null;
+            int bytes = 0;
+            for (int i = 0; i < pages.size(); i++) {
+                Object k = firstKeys.get(i);
+                if (node != null && bytes + KeyCodec.size(k) + 4 > limit) {
+                    writeNode(node);
+                    node = null;
+                }
+                if (node == null) {
+                    node = new InternalNode(allocate());
+                    node.children.add(pages.get(i));
+                    upKeys.add(k);
+                    upPages.add(node.pageId);
+                    bytes = INTERNAL_HEADER;
+                } else {
+                    node.keys.add(k);
+                    node.children.add(pages.get(i));
+                    bytes += KeyCodec.size(k) + 4;
+                }
+            }
+            writeNode(node);
+            firstKeys = upKeys;
+            pages = upPages;
+            levels++;
+        }
+        rootPageId = pages.get(0);
+        height = levels;
+    }
+
+    // 批量装载时换一个新叶子：把装满的 full 接上新叶子后写出，记下它的最小键
+    private LeafNode nextLeaf(LeafNode full, List<Object> firstKeys, List<Integer> pages) {
+        LeafNode fresh = new LeafNode(allocate());
+        if (full != null) {
+            full.next = fresh.pageId;
+            fresh.prev = full.pageId;
+            writeNode(full);
+            firstKeys.add(full.keys.get(0));
+            pages.add(full.pageId);
+        }
+        return fresh;
+    }
+
+    // 叶子分裂：右半边搬到新页，右半边的第一个键复制到父节点
+    private Split splitLeaf(LeafNode leaf) {
+        int[] sizes = new int[leaf.keys.size()];
+        for (int i = 0; i < sizes.length; i++) sizes[i] = KeyCodec.size(leaf.keys.get(i)) + leaf.postings.get(i).size();
+        int mid = splitPoint(sizes);
+        LeafNode right = new LeafNode(allocate());
+        right.keys = new ArrayList<>(leaf.keys.subList(mid, leaf.keys.size()));
+        right.postings = new ArrayList<>(leaf.postings.subList(mid, leaf.postings.size()));
+        leaf.keys = new ArrayList<>(leaf.keys.subList(0, mid));
+        leaf.postings = new ArrayList<>(leaf.postings.subList(0, mid));
+        // 新叶子插到链表里 leaf 之后；原来的后继只需改 prev 指针，直接改页面字节
+        right.prev = leaf.pageId;
+        right.next = leaf.next;
+        leaf.next = right.pageId;
+        if (right.next != -1) {
+            Page after = bp.fetchPage(fileId, right.next);
+            after.buf.putInt(PREV_OFFSET, right.pageId);
+            bp.unpinPage(fileId, right.next, true);
+        }
+        writeNode(leaf);
+        writeNode(right);
+        return new Split(right.keys.get(0), right.pageId);
+    }
+
+    // 内部节点分裂：中间的键上移到父节点，不留在任何一边
+    private Split splitInternal(InternalNode node) {
+        int[] sizes = new int[node.keys.size()];
+        for (int i = 0; i < sizes.length; i++) sizes[i] = KeyCodec.size(node.keys.get(i)) + 4;
+        int mid = splitPoint(sizes);
+        Object up = node.keys.get(mid);
+        InternalNode right = new InternalNode(allocate());
+        right.keys = new ArrayList<>(node.keys.subList(mid + 1, node.keys.size()));
+        right.children = new ArrayList<>(node.children.subList(mid + 1, node.children.size()));
+        node.keys = new ArrayList<>(node.keys.subList(0, mid));
+        node.children = new ArrayList<>(node.children.subList(0, mid + 1));
+        writeNode(node);
+        writeNode(right);
+        return new Split(up, right.pageId);
+    }
+
+    // 按字节找分裂点：左半边累计到总大小一半的位置，两边至少各留一项
+    private static int splitPoint(int[] sizes) {
+        int total = 0;
+        for (int s : sizes) total += s;
+        int acc = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            acc += sizes[i];
+            if (acc >= total / 2) return Math.max(1, Math.min(i + 1, sizes.length - 1));
+        }
+        return sizes.length / 2;
+    }
+
+    /** 删除键 key 及其全部 RID（不合并节点） */
     public void delete(Object key) {
-        if (rootPageId != -1) {
-            Node root = readNode(rootPageId);
-            root.delete(key);
-            if (root.isEmpty() && root instanceof InternalNode) {
-                // 根节点变空，更新根节点
-                InternalNode internalRoot = (InternalNode) root;
-                if (internalRoot.children.size() == 1) {
-                    rootPageId = internalRoot.children.get(0);
+        if (rootPageId == -1) return;
+        LeafNode leaf = readLeaf(descend(KeyCodec.probe(key), SEEK, null, null));
+        int pos = lowerBound(leaf.keys, key);
+        if (pos < leaf.keys.size() && compareObjects(leaf.keys.get(pos), key) == 0) {
+            leaf.keys.remove(pos);
+            Posting p = leaf.postings.remove(pos);
+            writeNode(leaf);
+            if (p.head != -1) freeChain(p.head);
+        }
+    }
+
+    /** 从键 key 的倒排表里删除一个 RID，返回是否找到；倒排表删空时连键一起删除 */
+    public boolean delete(Object key, RID rid) {
+        return deleteBatch(Collections.singletonList(new Entry(key, rid))) == 1;
+    }
+
+    /** 等于 key 的全部 RID */
+    public List<RID> search(Object key) {
+        List<RID> result = new ArrayList<>();
+        Cursor c = lookup(key);
+        while (c.hasNext()) result.add(c.next());
+        return result;
+    }
+
+    /** 流式返回等于 key 的全部 RID，溢出页一页一页地读 */
+    public Cursor lookup(Object key) {
+        return new Cursor(key);
+    }
+
+    /** [minKey, maxKey] 范围内的全部 RID，按键升序 */
+    public List<RID> rangeSearch(Object minKey, Object maxKey) {
+        List<RID> result = new ArrayList<>();
+        Cursor c = cursor(Bound.inclusive(minKey), Bound.inclusive(maxKey), false);
+        while (c.hasNext()) result.add(c.next());
+        return result;
+    }
+
+    /** 范围边界：key 加上是否包含等于 key 的项；传 null 表示这一端不设界 */
+    public static final class Bound {
+        public final Object key;
+        public final boolean inclusive;
+        private Bound(Object key, boolean inclusive) { this.key = key; this.inclusive = inclusive; }
+        public static Bound inclusive(Object key) { return new Bound(key, true); }
+        public static Bound exclusive(Object key) { return new Bound(key, false); }
+    }
+
+    /**
+     * 按键序（descending 为 true 时倒序）流式遍历 [lower, upper] 内的索引项，同一个键的 RID 按倒排表顺序给出。
+     * 每次只缓存一个叶子或一个溢出页的内容，读完就 unpin，中途放弃也不会泄漏 pin
+     */
+    public Cursor cursor(Bound lower, Bound upper, boolean descending) {
+        return new Cursor(lower, upper, descending);
+    }
+
+    public final class Cursor implements Iterator<RID> {
+        private final Bound lower, upper;
+        private final ByteBuffer lowerProbe, upperProbe;
+        private final boolean descending;
+        // 当前叶子：整页拷进 leaf 就 unpin，offsets[0..count) 是各项的起点。
+        // 边界直接和页里的键字节比较，只有落在范围内、要返回的键才解码
+        private ByteBuffer leaf;
+        private int[] offsets = new int[0];
+        private int count;
+        private int prev = -1, next = -1;
+        private int pos;
+        // 当前键已解码的一段 RID，以及还没读的溢出页
+        private final OverflowChunk chunk = new OverflowChunk();
+        private long[] batch = new long[0];
+        private Object[] batchPayloads;
+        private int batchLen, batchPos;
+        private int overflowNext = -1;
+        private boolean overflowPayload;
+        private Object batchKey, currentKey, currentPayload;
+        private boolean done;
+
+        private Cursor(Bound lower, Bound upper, boolean descending) {
+            this.lower = lower;
+            this.upper = upper;
+            this.lowerProbe = lower == null ? null : KeyCodec.probe(lower.key);
+            this.upperProbe = upper == null ? null : KeyCodec.probe(upper.key);
+            this.descending = descending;
+            if (rootPageId == -1) { done = true; return; }
+            Bound start = descending ? upper : lower;
+            if (start == null) {
+                load(descend(null, descending ? LAST : FIRST, null, null));
+                pos = descending ? count - 1 : 0;
+            } else if (descending) {
+                load(descend(upperProbe, SEEK, null, null));
+                pos = search(upperProbe, start.inclusive) - 1;
+            } else {
+                load(descend(lowerProbe, SEEK, null, null));
+                pos = search(lowerProbe, !start.inclusive);
+            }
+        }
+
+        // 点查：在叶子页字节上找到键，只解码它自己的倒排表，不反序列化整个叶子，也不会去读兄弟叶子
+        private Cursor(Object key) {
+            this.lower = this.upper = Bound.inclusive(key);
+            this.descending = false;
+            done = rootPageId == -1;
+            this.lowerProbe = this.upperProbe = done ? null : KeyCodec.probe(key);
+            if (done) return;
+            Page page = descend(lowerProbe, SEEK, null, null);
+            try {
+                ByteBuffer buf = page.buf;
+                int n = buf.getInt(1), at = LEAF_HEADER;
+                for (int i = 0; i < n; i++) {
+                    int c = KeyCodec.compare(buf, at, lowerProbe);
+                    if (c > 0) break;
+                    at += c == 0 ? lowerProbe.capacity() : KeyCodec.storedSize(buf, at);
+                    if (c < 0) { at = Posting.skip(buf, at); continue; }
+                    Posting p = Posting.read(buf, at);
+                    batchKey = key;
+                    if (p.head == -1) { batch = p.rids; batchPayloads = p.payloads; batchLen = p.count; }
+                    else { overflowNext = p.head; overflowPayload = p.withPayload; }
+                    break;
                 }
+            } finally {
+                bp.unpinPage(fileId, page.pageId, false);
+            }
+        }
+
+        // 把 pin 住的叶子页拷进 leaf 并 unpin，只记下各项的起点，不解码
+        private void load(Page page) {
+            if (leaf == null) leaf = ByteBuffer.allocate(Constants.PAGE_SIZE);
+            try {
+                leaf.put(0, page.buf, 0, Constants.PAGE_SIZE);
+            } finally {
+                bp.unpinPage(fileId, page.pageId, false);
+            }
+            count = leaf.getInt(1);
+            prev = leaf.getInt(PREV_OFFSET);
+            next = leaf.getInt(NEXT_OFFSET);
+            if (offsets.length < count) offsets = new int[count];
+            for (int i = 0, at = LEAF_HEADER; i < count; i++) {
+                offsets[i] = at;
+                at = Posting.skip(leaf, at + KeyCodec.storedSize(leaf, at));
             }
         }
+
+        // 当前叶子里第一个 >= probe（strict 时 > probe）的项
+        private int search(ByteBuffer probe, boolean strict) {
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = KeyCodec.compare(leaf, offsets[mid], probe);
+                if (c < 0 || (strict && c == 0)) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!done) {
+                if (batchPos < batchLen) return true;
+                if (overflowNext != -1) {
+                    readOverflow(overflowNext, chunk, overflowPayload);
+                    batch = chunk.rids;
+                    batchPayloads = overflowPayload ? chunk.payloads : null;
+                    batchLen = chunk.count;
+                    batchPos = 0;
+                    overflowNext = chunk.next;
+                } else {
+                    nextEntry();
+                }
+            }
+            return false;
+        }
+
+        // 移到下一个满足边界的键并准备好它的倒排表，没有了就结束
+        private void nextEntry() {
+            while (true) {
+                // 当前叶子读完了就沿链表换页（跳过删空的叶子）
+                if (pos < 0 || pos >= count) {
+                    int target = descending ? prev : next;
+                    if (target == -1 || pastEnd()) { done = true; return; }
+                    load(bp.fetchPage(fileId, target));
+                    pos = descending ? count - 1 : 0;
+                    continue;
+                }
+                int at = offsets[pos];
+                pos += descending ? -1 : 1;
+                if (!within(at, !descending)) continue;
+                if (!within(at, descending)) { done = true; return; }
+                batchKey = KeyCodec.get(leaf, at);
+                Posting p = Posting.read(leaf, at + KeyCodec.storedSize(leaf, at));
+                batchPos = 0;
+                if (p.head == -1) {
+                    batch = p.rids;
+                    batchPayloads = p.payloads;
+                    batchLen = p.count;
+                } else {
+                    batchLen = 0;
+                    overflowNext = p.head;
+                    overflowPayload = p.withPayload;
+                }
+                return;
+            }
+        }
+
+        // pos 处的键是否在下界（isLower）或上界允许的一侧，直接比页里的字节
+        private boolean within(int at, boolean isLower) {
+            Bound b = isLower ? lower : upper;
+            if (b == null) return true;
+            int c = KeyCodec.compare(leaf, at, isLower ? lowerProbe : upperProbe);
+            return isLower ? (c > 0 || (c == 0 && b.inclusive)) : (c < 0 || (c == 0 && b.inclusive));
+        }
+
+        // 当前叶子的最后一个键已经到达终点边界时，兄弟叶子里不会再有要的键，不必再读（点查恰好读 height 页）
+        private boolean pastEnd() {
+            ByteBuffer end = descending ? lowerProbe : upperProbe;
+            if (end == null || count == 0) return false;
+            int c = KeyCodec.compare(leaf, offsets[descending ? 0 : count - 1], end);
+            return descending ? c <= 0 : c >= 0;
+        }
+
+        @Override
+        public RID next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            currentKey = batchKey;
+            currentPayload = batchPayloads == null ? null : batchPayloads[batchPos];
+            return RID.fromLong(batch[batchPos++]);
+        }
+
+        /** 上一次 next() 返回的项的键 */
+        public Object key() {
+            return currentKey;
+        }
+
+        /** 上一次 next() 返回的项的 INCLUDE 值（List），索引没有 INCLUDE 列时为 null */
+        public Object payload() {
+            return currentPayload;
+        }
     }
-    
-    public List<Integer> search(Object key) {
-        if (rootPageId == -1) return List.of();
-        
-        Node current = readNode(rootPageId);
-        while (current instanceof InternalNode) {
-            InternalNode internal = (InternalNode) current;
-            int childIndex = findChildIndex(internal, key);
-            current = readNode(internal.children.get(childIndex));
-        }
-        
-        LeafNode leaf = (LeafNode) current;
-        return leaf.search(key);
-    }
-    
-    public List<Integer> rangeSearch(Object minKey, Object maxKey) {
-        if (rootPageId == -1) return List.of();
-        
-        Node current = readNode(rootPageId);
-        while (current instanceof InternalNode) {
-            InternalNode internal = (InternalNode) current;
-            int childIndex = findChildIndex(internal, minKey);
-            current = readNode(internal.children.get(childIndex));
-        }
-        
-        LeafNode leaf = (LeafNode) current;
-        return leaf.rangeSearch(minKey, maxKey);
-    }
-    
-    private int findChildIndex(InternalNode node, Object key) {
-        for (int i = 0; i < node.keys.size(); i++) {
-            if (compare(key, node.keys.get(i)) < 0) {
-                return i;
-            }
-        }
-        return node.keys.size();
-    }
-    
-    private int compare(Object a, Object b) {
-        if (a == null && b == null) return 0;
-        if (a == null) return -1;
-        if (b == null) return 1;
-        
-        if (a instanceof Number && b instanceof Number) {
-            return Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
-        }
-        return a.toString().compareTo(b.toString());
-    }
-    
-    private Node readNode(int pageId) {
-        Page page = bp.get(tableId, pageId);
-        if (page == null) {
-            page = fm.readPage(tableId, pageId);
-            bp.put(tableId, pageId, page);
-        }
-        
-        ByteBuffer buf = page.buf;
-        buf.position(0);
-        boolean isLeaf = buf.get() == 1;
-        
-        if (isLeaf) {
-            return new LeafNode(pageId, buf);
+
+    // 从根下降到叶子，返回 pin 住的叶子页，调用方负责 unpin。
+    // 内部节点直接在页面字节上比较，不反序列化；等于分隔键的走右边（分裂时右半边的第一个键被复制为分隔键）。
+    // pathPages / pathSlots 不为 null 时记下经过的内部节点和所走孩子的下标，供分裂向上传递
+    private Page descend(ByteBuffer probe, int mode, int[] pathPages, int[] pathSlots) {
+        return descend(probe, mode, pathPages, pathSlots, null);
+    }
+
+    // probe 是 KeyCodec.probe 编码好的键（只有 SEEK 用到）。
+    // fence 不为 null 时 fence[0] 返回叶子的右边界：路径上最深一处比 key 大的分隔键，没有则为 null
+    private Page descend(ByteBuffer probe, int mode, int[] pathPages, int[] pathSlots, Object[] fence) {
+        int pageId = rootPageId;
+        for (int level = 0; ; level++) {
+            Page page = bp.fetchPage(fileId, pageId);
+            int child;
+            try {
+                ByteBuffer buf = page.buf;
+                byte type = buf.get(0);
+                if (type == LEAF) return page;
+                int keyCount = buf.getInt(1);
+                child = buf.getInt(INTERNAL_HEADER - 4);
+                // 叶子在第 height - 1 层；更深还是内部节点、或页头不像内部节点，说明索引文件缺页或损坏（如零页）
+                if (type != INTERNAL || level >= height - 1 || keyCount < 0 || keyCount > Constants.PAGE_SIZE / 5
+                        || child < 0 || child == pageId) {
+                    throw new DBException("Corrupt index %s: bad node at page %d (level %d of %d)", columnName, pageId, level, height);
+                }
+                int slot = 0;
+                if (mode == LAST) {
+                    slot = keyCount;
+                    child = buf.getInt(lastChildOffset(buf, keyCount));
+                } else if (mode == SEEK) {
+                    // 全程绝对位置读页，不复制 ByteBuffer；只有要返回的右边界才解码
+                    for (int at = INTERNAL_HEADER; slot < keyCount; slot++) {
+                        int c = KeyCodec.compare(buf, at, probe);
+                        if (c > 0) {
+                            if (fence != null) fence[0] = KeyCodec.get(buf, at);
+                            break;
+                        }
+                        at += c == 0 ? probe.capacity() : KeyCodec.storedSize(buf, at);
+                        child = buf.getInt(at);
+                        at += 4;
+                    }
+                }
+                if (pathPages != null) { pathPages[level] = pageId; pathSlots[level] = slot; }
+            } catch (RuntimeException e) {
+                bp.unpinPage(fileId, pageId, false);
+                throw e;
+            }
+            bp.unpinPage(fileId, pageId, false);
+            pageId = child;
+        }
+    }
+
+    // 最后一个孩子指针的偏移：跳过全部 (key, child)
+    private static int lastChildOffset(ByteBuffer buf, int keyCount) {
+        int p = INTERNAL_HEADER - 4;
+        for (int i = 0; i < keyCount; i++) {
+            p += 4 + KeyCodec.storedSize(buf, p + 4);
+        }
+        return p;
+    }
+
+    // 反序列化 pin 住的叶子页并 unpin
+    private LeafNode readLeaf(Page page) {
+        try {
+            return new LeafNode(page.pageId, page.buf);
+        } finally {
+            bp.unpinPage(fileId, page.pageId, false);
+        }
+    }
+
+    // 第一个 >= key 的位置
+    private static int lowerBound(List<Object> keys, Object key) {
+        int lo = 0, hi = keys.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareObjects(keys.get(mid), key) < 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // ========== 倒排表 ==========
+
+    // 叶子内的倒排表：插入有序数组，编码超过上限时整体移到溢出页；已在溢出页的直接追加到链尾。
+    // 同一个 (key, RID) 在叶子里只记一次，再插入时换成新的 payload
+    private void addToPosting(Posting p, long rid, Object payload) {
+        if ((payload != null) != p.withPayload) {
+            throw new DBException("Index %s: INCLUDE values given for only some entries of a key", columnName);
+        }
+        if (p.head != -1) {
+            appendOverflow(p, rid, payload);
+            return;
+        }
+        int at = Arrays.binarySearch(p.rids, 0, p.count, rid);
+        if (at >= 0) {
+            if (p.withPayload) p.payloads[at] = payload;
+            return;
+        }
+        at = -at - 1;
+        long[] rids = new long[p.count + 1];
+        System.arraycopy(p.rids, 0, rids, 0, at);
+        rids[at] = rid;
+        System.arraycopy(p.rids, at, rids, at + 1, p.count - at);
+        if (p.withPayload) {
+            Object[] payloads = new Object[p.count + 1];
+            System.arraycopy(p.payloads, 0, payloads, 0, at);
+            payloads[at] = payload;
+            System.arraycopy(p.payloads, at, payloads, at + 1, p.count - at);
+            p.payloads = payloads;
+        }
+        p.rids = rids;
+        p.count = rids.length;
+        if (entryBytes(rids, p.payloads, rids.length) > POSTING_INLINE_LIMIT) {
+            writeOverflow(p, rids, p.payloads, rids.length);
+        }
+    }
+
+    // 从倒排表里删掉 gone 里的 RID（顺序任意），返回实际删掉的个数。
+    // 溢出链整条读出来过滤一遍再重写一次；缩到上限一半以内时搬回叶子，不再用的溢出页放回空闲页链
+    private int removeFromPosting(Posting p, long[] gone) {
+        Arrays.sort(gone);
+        long[] all;
+        Object[] allPayloads;
+        int n;
+        if (p.head == -1) {
+            all = p.rids;
+            allPayloads = p.payloads;
+            n = p.count;
         } else {
-            return new InternalNode(pageId, buf);
+            all = new long[p.count];
+            allPayloads = p.withPayload ? new Object[p.count] : null;
+            n = 0;
+            OverflowChunk chunk = new OverflowChunk();
+            for (int pageId = p.head; pageId != -1; pageId = chunk.next) {
+                readOverflow(pageId, chunk, p.withPayload);
+                System.arraycopy(chunk.rids, 0, all, n, chunk.count);
+                if (allPayloads != null) System.arraycopy(chunk.payloads, 0, allPayloads, n, chunk.count);
+                n += chunk.count;
+            }
+        }
+        long[] kept = new long[n];
+        Object[] keptPayloads = allPayloads == null ? null : new Object[n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (Arrays.binarySearch(gone, all[i]) >= 0) continue;
+            if (keptPayloads != null) keptPayloads[k] = allPayloads[i];
+            kept[k++] = all[i];
         }
+        if (k == n) return 0;
+        if (p.head != -1) {
+            sortByRid(kept, keptPayloads, k);
+            if (entryBytes(kept, keptPayloads, k) > POSTING_INLINE_LIMIT / 2) {
+                writeOverflow(p, kept, keptPayloads, k);
+                return n - k;
+            }
+            freeChain(p.head);
+            p.head = p.tail = -1;
+        }
+        p.rids = Arrays.copyOf(kept, k);
+        p.payloads = keptPayloads == null ? null : Arrays.copyOf(keptPayloads, k);
+        p.count = k;
+        return n - k;
+    }
+
+    // 溢出链按追加顺序，搬回叶子或重写前按 RID 排好；payloads 跟着一起动
+    private static void sortByRid(long[] rids, Object[] payloads, int n) {
+        if (payloads == null) {
+            Arrays.sort(rids, 0, n);
+            return;
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (x, y) -> Long.compare(rids[x], rids[y]));
+        long[] r = new long[n];
+        Object[] pl = new Object[n];
+        for (int i = 0; i < n; i++) { r[i] = rids[order[i]]; pl[i] = payloads[order[i]]; }
+        System.arraycopy(r, 0, rids, 0, n);
+        System.arraycopy(pl, 0, payloads, 0, n);
     }
-    
+
+    // 把 rids[0..n)（带 payload 时连同 payloads）写成溢出页链；p 已有链时按顺序复用原来的页
+    private void writeOverflow(Posting p, long[] rids, Object[] payloads, int n) {
+        int pageId = p.head != -1 ? p.head : allocate();
+        p.head = pageId;
+        p.count = n;
+        p.rids = null;
+        p.payloads = null;
+        int i = 0;
+        while (true) {
+            Page page = bp.fetchPage(fileId, pageId);
+            int nextPage, oldNext;
+            try {
+                ByteBuffer buf = page.buf;
+                oldNext = buf.get(0) == OVERFLOW ? buf.getInt(OVF_NEXT) : -1;
+                int at = OVERFLOW_HEADER, count = 0;
+                long last = 0;
+                while (i < n) {
+                    long delta = zigzag(rids[i] - last);
+                    if (at + varLongSize(delta) + (payloads == null ? 0 : KeyCodec.size(payloads[i])) > Constants.PAGE_SIZE) break;
+                    at = putVarLong(buf, at, delta);
+                    if (payloads != null) at = KeyCodec.put(buf, at, payloads[i]);
+                    last = rids[i++];
+                    count++;
+                }
+                nextPage = i < n ? (oldNext != -1 ? oldNext : allocate()) : -1;
+                buf.put(0, OVERFLOW);
+                buf.putInt(OVF_NEXT, nextPage);
+                buf.putInt(OVF_COUNT, count);
+                buf.putInt(OVF_USED, at - OVERFLOW_HEADER);
+                buf.putLong(OVF_LAST, last);
+            } finally {
+                bp.unpinPage(fileId, pageId, true);
+            }
+            if (nextPage == -1) {
+                p.tail = pageId;
+                // 原来的链更长：多出来的页不再用
+                if (oldNext != -1) freeChain(oldNext);
+                return;
+            }
+            pageId = nextPage;
+        }
+    }
+
+    // 追加到溢出链尾页，放不下时接一个新页（新页第一个差分相对 0）
+    private void appendOverflow(Posting p, long rid, Object payload) {
+        int newPage = -1, payloadSize = payload == null ? 0 : KeyCodec.size(payload);
+        Page page = bp.fetchPage(fileId, p.tail);
+        try {
+            ByteBuffer buf = page.buf;
+            long delta = zigzag(rid - buf.getLong(OVF_LAST));
+            int at = OVERFLOW_HEADER + buf.getInt(OVF_USED);
+            if (at + varLongSize(delta) + payloadSize <= Constants.PAGE_SIZE) {
+                at = putVarLong(buf, at, delta);
+                if (payload != null) at = KeyCodec.put(buf, at, payload);
+                buf.putInt(OVF_COUNT, buf.getInt(OVF_COUNT) + 1);
+                buf.putInt(OVF_USED, at - OVERFLOW_HEADER);
+                buf.putLong(OVF_LAST, rid);
+            } else {
+                newPage = allocate();
+                buf.putInt(OVF_NEXT, newPage);
+            }
+        } finally {
+            bp.unpinPage(fileId, p.tail, true);
+        }
+        if (newPage != -1) {
+            Page fresh = bp.fetchPage(fileId, newPage);
+            try {
+                ByteBuffer buf = fresh.buf;
+                int at = putVarLong(buf, OVERFLOW_HEADER, zigzag(rid));
+                if (payload != null) at = KeyCodec.put(buf, at, payload);
+                buf.put(0, OVERFLOW);
+                buf.putInt(OVF_NEXT, -1);
+                buf.putInt(OVF_COUNT, 1);
+                buf.putInt(OVF_USED, at - OVERFLOW_HEADER);
+                buf.putLong(OVF_LAST, rid);
+            } finally {
+                bp.unpinPage(fileId, newPage, true);
+            }
+            p.tail = newPage;
+        }
+        p.count++;
+    }
+
+    // 分配一页：先从空闲页链头取，没有再在文件末尾新分配
+    private int allocate() {
+        if (freeHead == -1) return fm.allocatePage(fileId);
+        int pageId = freeHead;
+        Page page = bp.fetchPage(fileId, pageId);
+        try {
+            if (page.buf.get(0) != FREE) throw new DBException("Corrupt index %s: page %d on the free list is not free", columnName, pageId);
+            freeHead = page.buf.getInt(OVF_NEXT);
+        } finally {
+            bp.unpinPage(fileId, pageId, false);
+        }
+        return pageId;
+    }
+
+    // 把从 pageId 开始的溢出页链整条挂到空闲页链上
+    private void freeChain(int pageId) {
+        while (pageId != -1) {
+            Page page = bp.fetchPage(fileId, pageId);
+            int next;
+            try {
+                ByteBuffer buf = page.buf;
+                next = buf.get(0) == OVERFLOW ? buf.getInt(OVF_NEXT) : -1;
+                buf.put(0, FREE);
+                buf.putInt(OVF_NEXT, freeHead);
+            } finally {
+                bp.unpinPage(fileId, pageId, true);
+            }
+            freeHead = pageId;
+            pageId = next;
+        }
+    }
+
+    // 解码一个溢出页到 into（数组够大就复用）；withPayload 时每个 RID 后面跟着 payload
+    private void readOverflow(int pageId, OverflowChunk into, boolean withPayload) {
+        Page page = bp.fetchPage(fileId, pageId);
+        try {
+            ByteBuffer buf = page.buf;
+            if (buf.get(0) != OVERFLOW) throw new DBException("Index %d: page %d is not an overflow page", indexId, pageId);
+            int count = buf.getInt(OVF_COUNT);
+            if (into.rids.length < count) into.rids = new long[count];
+            if (withPayload && into.payloads.length < count) into.payloads = new Object[count];
+            int at = OVERFLOW_HEADER;
+            long last = 0;
+            for (int i = 0; i < count; i++) {
+                long v = 0;
+                int shift = 0;
+                byte b;
+                do { b = buf.get(at++); v |= (long) (b & 0x7f) << shift; shift += 7; } while (b < 0);
+                last += unzigzag(v);
+                into.rids[i] = last;
+                if (withPayload) {
+                    into.payloads[i] = KeyCodec.get(buf, at);
+                    at += KeyCodec.storedSize(buf, at);
+                }
+            }
+            into.count = count;
+            into.next = buf.getInt(OVF_NEXT);
+        } finally {
+            bp.unpinPage(fileId, pageId, false);
+        }
+    }
+
+    // 一个溢出页解码后的内容
+    static final class OverflowChunk {
+        long[] rids = new long[0];
+        Object[] payloads = new Object[0];
+        int count;
+        int next = -1;
+    }
+
+    private static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+    private static long unzigzag(long v) { return (v >>> 1) ^ -(v & 1); }
+
+    private static int varLongSize(long v) {
+        int n = 1;
+        while ((v & ~0x7fL) != 0) { v >>>= 7; n++; }
+        return n;
+    }
+
+    // 在 at 处写变长整数（每字节 7 位，高位为 1 表示还有后续），返回写完后的位置
+    private static int putVarLong(ByteBuffer buf, int at, long v) {
+        while ((v & ~0x7fL) != 0) {
+            buf.put(at++, (byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        buf.put(at++, (byte) v);
+        return at;
+    }
+
+    // 读 at 处的变长整数；编码是最短的，占的字节数就是 varLongSize(返回值)
+    private static long getVarLong(ByteBuffer buf, int at) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do { b = buf.get(at++); v |= (long) (b & 0x7f) << shift; shift += 7; } while (b < 0);
+        return v;
+    }
+
+    // 有序 RID 差分编码（带 payload 时加上各个 payload）后的字节数
+    private static int entryBytes(long[] rids, Object[] payloads, int n) {
+        int bytes = 0;
+        long last = 0;
+        for (int i = 0; i < n; i++) {
+            bytes += varLongSize(zigzag(rids[i] - last));
+            if (payloads != null) bytes += KeyCodec.size(payloads[i]);
+            last = rids[i];
+        }
+        return bytes;
+    }
+
+    // 一个键的倒排表：在叶子里时 rids[0..count) 升序，带 INCLUDE 值时 payloads 和 rids 一一对应；
+    // 移到溢出页后 rids / payloads 为 null，head/tail 为链首尾
+    static final class Posting {
+        long[] rids;
+        Object[] payloads;
+        boolean withPayload;
+        int count;
+        int head = -1, tail = -1;
+
+        static Posting of(long rid, Object payload) {
+            Posting p = new Posting();
+            p.rids = new long[]{rid};
+            p.count = 1;
+            if (payload != null) {
+                p.withPayload = true;
+                p.payloads = new Object[]{payload};
+            }
+            return p;
+        }
+
+        // 读 at 处的倒排表（绝对位置，页面 ByteBuffer 不用复制）
+        static Posting read(ByteBuffer buf, int at) {
+            Posting p = new Posting();
+            byte kind = buf.get(at++);
+            p.withPayload = kind >= 3;
+            if (kind % 3 == 0) {
+                p.rids = new long[]{buf.getLong(at)};
+                p.count = 1;
+                if (p.withPayload) p.payloads = new Object[]{KeyCodec.get(buf, at + 8)};
+            } else if (kind % 3 == 1) {
+                p.count = (int) getVarLong(buf, at);
+                at += varLongSize(p.count);
+                at += varLongSize(getVarLong(buf, at)); // 编码的总字节数，跳过时用
+                p.rids = new long[p.count];
+                if (p.withPayload) p.payloads = new Object[p.count];
+                long last = 0;
+                for (int i = 0; i < p.count; i++) {
+                    long v = getVarLong(buf, at);
+                    at += varLongSize(v);
+                    last += unzigzag(v);
+                    p.rids[i] = last;
+                    if (p.withPayload) {
+                        p.payloads[i] = KeyCodec.get(buf, at);
+                        at += KeyCodec.storedSize(buf, at);
+                    }
+                }
+            } else {
+                p.count = buf.getInt(at);
+                p.head = buf.getInt(at + 4);
+                p.tail = buf.getInt(at + 8);
+            }
+            return p;
+        }
+
+        // 跳过 at 处的一个倒排表，不解码差分和 payload，返回它之后的位置
+        static int skip(ByteBuffer buf, int at) {
+            byte kind = buf.get(at++);
+            if (kind % 3 == 0) return at + 8 + (kind == 3 ? KeyCodec.storedSize(buf, at + 8) : 0);
+            if (kind % 3 == 1) {
+                at += varLongSize(getVarLong(buf, at));
+                long bytes = getVarLong(buf, at);
+                return at + varLongSize(bytes) + (int) bytes;
+            }
+            return at + 12;
+        }
+
+        // 写到 at 处，返回写完后的位置
+        int write(ByteBuffer buf, int at) {
+            int payload = withPayload ? 3 : 0;
+            if (head != -1) {
+                buf.put(at, (byte) (2 + payload));
+                buf.putInt(at + 1, count);
+                buf.putInt(at + 5, head);
+                buf.putInt(at + 9, tail);
+                return at + 13;
+            }
+            if (count == 1) {
+                buf.put(at, (byte) payload);
+                buf.putLong(at + 1, rids[0]);
+                return withPayload ? KeyCodec.put(buf, at + 9, payloads[0]) : at + 9;
+            }
+            buf.put(at++, (byte) (1 + payload));
+            at = putVarLong(buf, at, count);
+            at = putVarLong(buf, at, entryBytes(rids, payloads, count));
+            long last = 0;
+            for (int i = 0; i < count; i++) {
+                at = putVarLong(buf, at, zigzag(rids[i] - last));
+                if (withPayload) at = KeyCodec.put(buf, at, payloads[i]);
+                last = rids[i];
+            }
+            return at;
+        }
+
+        /** 序列化后的字节数 */
+        int size() {
+            if (head != -1) return 1 + 4 + 4 + 4;
+            if (count == 1) return 1 + 8 + (withPayload ? KeyCodec.size(payloads[0]) : 0);
+            int bytes = entryBytes(rids, payloads, count);
+            return 1 + varLongSize(count) + varLongSize(bytes) + bytes;
+        }
+    }
+
+    // ========== 节点读写 ==========
+
+    private Node readNode(int pageId) {
+        Page page = bp.fetchPage(fileId, pageId);
+        try {
+            ByteBuffer buf = page.buf;
+            if (buf.get(0) == LEAF) {
+                return new LeafNode(pageId, buf);
+            } else {
+                return new InternalNode(pageId, buf);
+            }
+        } finally {
+            bp.unpinPage(fileId, pageId, false);
+        }
+    }
+
     private void writeNode(Node node) {
-        Page page = new Page(node.pageId, new byte[Constants.PAGE_SIZE]);
-        ByteBuffer buf = page.buf;
-        
-        if (node instanceof LeafNode) {
-            buf.put((byte) 1); // isLeaf = true
-            LeafNode leaf = (LeafNode) node;
-            buf.putInt(leaf.keys.size());
-            for (int i = 0; i < leaf.keys.size(); i++) {
-                writeObject(buf, leaf.keys.get(i));
-                buf.putInt(leaf.recordIds.get(i));
+        Page page = bp.fetchPage(fileId, node.pageId);
+        try {
+            ByteBuffer buf = page.buf;
+            if (node instanceof LeafNode leaf) {
+                buf.put(0, LEAF);
+                buf.putInt(1, leaf.keys.size());
+                buf.putInt(PREV_OFFSET, leaf.prev);
+                buf.putInt(NEXT_OFFSET, leaf.next);
+                int at = LEAF_HEADER;
+                for (int i = 0; i < leaf.keys.size(); i++) {
+                    at = KeyCodec.put(buf, at, leaf.keys.get(i));
+                    at = leaf.postings.get(i).write(buf, at);
+                }
+            } else {
+                InternalNode internal = (InternalNode) node;
+                buf.put(0, INTERNAL);
+                buf.putInt(1, internal.keys.size());
+                buf.putInt(INTERNAL_HEADER - 4, internal.children.get(0));
+                int at = INTERNAL_HEADER;
+                for (int i = 0; i < internal.keys.size(); i++) {
+                    at = KeyCodec.put(buf, at, internal.keys.get(i));
+                    buf.putInt(at, internal.children.get(i + 1));
+                    at += 4;
+                }
             }
-        } else {
-            buf.put((byte) 0); // isLeaf = false
-            InternalNode internal = (InternalNode) node;
-            buf.putInt(internal.keys.size());
-            for (Object key : internal.keys) {
-                writeObject(buf, key);
-            }
-            buf.putInt(internal.children.size());
-            for (int childId : internal.children) {
-                buf.putInt(childId);
-            }
-        }
-        
-        fm.writePage(tableId, page);
-    }
-    
-    private void writeObject(ByteBuffer buf, Object obj) {
-        if (obj == null) {
-            buf.put((byte) 0);
-        } else if (obj instanceof Number) {
-            buf.put((byte) 1);
-            buf.putInt(((Number)obj).intValue());
-        } else {
-            buf.put((byte) 2);
-            byte[] bytes = obj.toString().getBytes();
-            buf.putInt(bytes.length);
-            buf.put(bytes);
-        }
-    }
-    
-    private Object readObject(ByteBuffer buf) {
-        byte type = buf.get();
-        switch (type) {
-            case 0: return null;
-            case 1: return buf.getInt();
-            case 2: 
-                int len = buf.getInt();
-                byte[] bytes = new byte[len];
-                buf.get(bytes);
-                return new String(bytes);
-            default: throw new DBException("Unknown object type: " + type);
-        }
-    }
-    
-    // 抽象节点类
+        } finally {
+            bp.unpinPage(fileId, node.pageId, true);
+        }
+    }
+
+    // 抽象节点类：页面在内存中的反序列化形式，修改后整页写回
     abstract static class Node {
         final int pageId;
-        
+
         Node(int pageId) {
             this.pageId = pageId;
         }
-        
-        abstract InsertResult insert(Object key, int recordId);
-        abstract void delete(Object key);
-        abstract boolean isEmpty();
+
+        /** 序列化后的字节数 */
+        abstract int size();
     }
-    
-    // 内部节点
-    class InternalNode extends Node {
+
+    // 内部节点：children 比 keys 多一个
+    static class InternalNode extends Node {
         List<Object> keys = new ArrayList<>();
         List<Integer> children = new ArrayList<>();
-        
+
         InternalNode(int pageId) {
             super(pageId);
         }
-        
+
         InternalNode(int pageId, ByteBuffer buf) {
             super(pageId);
-            int keyCount = buf.getInt();
+            int keyCount = buf.getInt(1), at = INTERNAL_HEADER;
+            children.add(buf.getInt(at - 4));
             for (int i = 0; i < keyCount; i++) {
-                keys.add(readObjectFromBuffer(buf));
-            }
-            int childCount = buf.getInt();
-            for (int i = 0; i < childCount; i++) {
-                children.add(buf.getInt());
+                keys.add(KeyCodec.get(buf, at));
+                at += KeyCodec.storedSize(buf, at);
+                children.add(buf.getInt(at));
+                at += 4;
             }
         }
-        
-        @Override
-        InsertResult insert(Object key, int recordId) {
-            // 简化实现，实际应该递归处理
-            return null;
-        }
-        
-        @Override
-        void delete(Object key) {
-            // 简化实现
-        }
-        
+
         @Override
-        boolean isEmpty() {
-            return children.isEmpty();
+        int size() {
+            int size = INTERNAL_HEADER;
+            for (Object k : keys) size += KeyCodec.size(k) + 4;
+            return size;
         }
     }
-    
-    // 叶子节点
-    class LeafNode extends Node {
+
+    // 叶子节点：每个键一个倒排表，prev/next 为左右兄弟
+    static class LeafNode extends Node {
         List<Object> keys = new ArrayList<>();
-        List<Integer> recordIds = new ArrayList<>();
-        
+        List<Posting> postings = new ArrayList<>();
+        int prev = -1, next = -1;
+
         LeafNode(int pageId) {
             super(pageId);
         }
-        
+
         LeafNode(int pageId, ByteBuffer buf) {
             super(pageId);
-            int count = buf.getInt();
+            int count = buf.getInt(1), at = LEAF_HEADER;
+            prev = buf.getInt(PREV_OFFSET);
+            next = buf.getInt(NEXT_OFFSET);
             for (int i = 0; i < count; i++) {
-                keys.add(readObjectFromBuffer(buf));
-                recordIds.add(buf.getInt());
-            }
-        }
-        
-        @Override
-        InsertResult insert(Object key, int recordId) {
-            int pos = Collections.binarySearch(keys, key, BPlusTree::compareObjects);
-            if (pos < 0) pos = -pos - 1;
-            
-            keys.add(pos, key);
-            recordIds.add(pos, recordId);
-            
-            if (keys.size() > order) {
-                // 需要分裂
-                int mid = keys.size() / 2;
-                LeafNode newLeaf = new LeafNode(fm.allocatePage(tableId));
-                newLeaf.keys = new ArrayList<>(keys.subList(mid, keys.size()));
-                newLeaf.recordIds = new ArrayList<>(recordIds.subList(mid, recordIds.size()));
-                
-                keys = new ArrayList<>(keys.subList(0, mid));
-                recordIds = new ArrayList<>(recordIds.subList(0, mid));
-                
-                return new InsertResult(newLeaf.keys.get(0), newLeaf.pageId);
-            }
-            return null;
-        }
-        
-        @Override
-        void delete(Object key) {
-            int pos = Collections.binarySearch(keys, key, BPlusTree::compareObjects);
-            if (pos >= 0) {
-                keys.remove(pos);
-                recordIds.remove(pos);
+                keys.add(KeyCodec.get(buf, at));
+                at += KeyCodec.storedSize(buf, at);
+                postings.add(Posting.read(buf, at));
+                at = Posting.skip(buf, at);
             }
         }
-        
+
         @Override
-        boolean isEmpty() {
-            return keys.isEmpty();
-        }
-        
-        List<Integer> search(Object key) {
-            int pos = Collections.binarySearch(keys, key, BPlusTree::compareObjects);
-            if (pos >= 0) {
-                return List.of(recordIds.get(pos));
-            }
-            return List.of();
-        }
-        
-        List<Integer> rangeSearch(Object minKey, Object maxKey) {
-            List<Integer> result = new ArrayList<>();
-            for (int i = 0; i < keys.size(); i++) {
-                Object key = keys.get(i);
-                if (BPlusTree.compareObjects(key, minKey) >= 0 && BPlusTree.compareObjects(key, maxKey) <= 0) {
-                    result.add(recordIds.get(i));
-                }
-            }
-            return result;
+        int size() {
+            int size = LEAF_HEADER;
+            for (int i = 0; i < keys.size(); i++) size += KeyCodec.size(keys.get(i)) + postings.get(i).size();
+            return size;
         }
     }
-    
-    // 插入结果
-    class InsertResult {
+
+    // 分裂结果：插入父节点的分隔键和新的右兄弟页
+    static class Split {
         final Object key;
-        final int newNodeId;
-        
-        InsertResult(Object key, int newNodeId) {
+        final int rightPageId;
+
+        Split(Object key, int rightPageId) {
             this.key = key;
-            this.newNodeId = newNodeId;
-        }
-    }
-    
-    private static int compareObjects(Object a, Object b) {
-        if (a == null && b == null) return 0;
-        if (a == null) return -1;
-        if (b == null) return 1;
-        
-        if (a instanceof Number && b instanceof Number) {
-            return Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
-        }
-        return a.toString().compareTo(b.toString());
-    }
-    
-    private static Object readObjectFromBuffer(ByteBuffer buf) {
-        byte type = buf.get();
-        switch (type) {
-            case 0: return null;
-            case 1: return buf.getInt();
-            case 2: 
-                int len = buf.getInt();
-                byte[] bytes = new byte[len];
-                buf.get(bytes);
-                return new String(bytes);
-            default: throw new DBException("Unknown object type: " + type);
+            this.rightPageId = rightPageId;
         }
     }
+
+    static int compareObjects(Object a, Object b) {
+        return KeyCodec.compare(a, b);
+    }
 }
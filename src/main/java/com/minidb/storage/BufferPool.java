@@ -1,58 +1,327 @@
 package com.minidb.storage;
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import com.minidb.utils.*;
+// 缓冲池：fetchPage 返回被 pin 住的页面，用完后必须 unpinPage(dirty)；
+// 被 pin 住的帧不会被淘汰，脏页在淘汰、检查点或关闭时写回。
+// 帧放在固定数组里，页表把 (文件号, 页号) 打包成 long 查找帧下标，命中路径不分配对象。
+// 可以按页号散列分成多个分片，每个分片有自己的锁、页表、替换策略和统计，多线程访问不同页时互不阻塞；
+// 替换策略只在分片内部生效，某个分片的帧全部被 pin 住时即使别的分片有空闲也会报错。
+// 堆外模式下所有帧在启动时一次性从直接内存分配，页面直接读进帧里，Page 只是帧的视图，
+// 未命中不再分配 4KB 的 byte[]；视图在 unpin 之后可能被别的页复用，不能再访问。
 public class BufferPool {
-    public enum Policy { LRU, FIFO }
+    public enum Policy { LRU, FIFO, CLOCK, TWO_Q, LRU_K }
     private final int capacity;
     private final Policy policy;
-    private long hits=0, misses=0, puts=0, evicts=0;
-    private final Map<String, Page> cache;
-    private final Queue<String> fifoQ;
+    private final Shard[] shards;
+    private final boolean offHeap;
+    private volatile FileManager fm;
+    private volatile double dirtyRatio = Constants.DEFAULT_DIRTY_PAGE_RATIO;
+    private volatile Thread flusher;
+    private volatile boolean closed = false;
+
+    private static final class Frame {
+        int fileId, pageId; Page page; boolean dirty; int pinCount;
+    }
 
     public BufferPool(int capacity){ this(capacity, Policy.LRU); }
-    public BufferPool(int capacity, Policy policy){
+    public BufferPool(int capacity, Policy policy){ this(capacity, policy, 1); }
+    public BufferPool(int capacity, Policy policy, int shardCount){ this(capacity, policy, shardCount, false); }
+    public BufferPool(int capacity, Policy policy, int shardCount, boolean offHeap){
+        if (capacity <= 0) throw new DBException("BufferPool capacity must be positive: " + capacity);
+        if (shardCount <= 0 || shardCount > capacity)
+            throw new DBException("BufferPool shard count must be in [1, %d]: %d", capacity, shardCount);
         this.capacity = capacity;
         this.policy = policy;
-        if (policy==Policy.LRU){
-            this.cache = new LinkedHashMap<>(capacity, 0.75f, true){
-                protected boolean removeEldestEntry(Map.Entry<String, Page> eldest){
-                    boolean rm = size() > BufferPool.this.capacity;
-                    if (rm) evicts++;
-                    return rm;
-                }
-            };
-            this.fifoQ = null;
-        } else {
-            this.cache = new HashMap<>();
-            this.fifoQ = new ArrayDeque<>();
-        }
-    }
-    private String key(int tableId, int pageId){ return tableId+":"+pageId; }
-    public synchronized Page get(int tableId, int pageId){
-        String k = key(tableId, pageId);
-        Page p = cache.get(k);
-        if (p==null){ misses++; } else { hits++; }
-        return p;
-    }
-    public synchronized void put(int tableId, int pageId, Page p){
-        String k = key(tableId, pageId);
-        if (policy==Policy.FIFO){
-            if (!cache.containsKey(k)){
-                if (cache.size() >= capacity){
-                    String victim = fifoQ.poll();
-                    if (victim!=null){ cache.remove(victim); evicts++; }
+        this.offHeap = offHeap;
+        this.shards = new Shard[shardCount];
+        ByteBuffer[] arena = offHeap ? allocateFrames(capacity) : null;
+        // 帧数尽量平均分给各分片，余数给前几个分片
+        for (int i = 0, base = 0; i < shardCount; i++){
+            int n = capacity / shardCount + (i < capacity % shardCount ? 1 : 0);
+            shards[i] = new Shard(n, arena == null ? null : Arrays.copyOfRange(arena, base, base + n));
+            base += n;
+        }
+    }
+    public BufferPool(int capacity, Policy policy, FileManager fm){ this(capacity, policy, 1, fm); }
+    public BufferPool(int capacity, Policy policy, int shardCount, FileManager fm){ this(capacity, policy, shardCount, false, fm); }
+    public BufferPool(int capacity, Policy policy, int shardCount, boolean offHeap, FileManager fm){
+        this(capacity, policy, shardCount, offHeap);
+        attach(fm);
+    }
+    // 按块分配直接内存（单个 ByteBuffer 不能超过 2GB），再切成页大小的帧
+    private static ByteBuffer[] allocateFrames(int capacity){
+        ByteBuffer[] frames = new ByteBuffer[capacity];
+        for (int base = 0; base < capacity; base += FRAMES_PER_CHUNK){
+            int n = Math.min(FRAMES_PER_CHUNK, capacity - base);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(n * Constants.PAGE_SIZE);
+            for (int i = 0; i < n; i++) frames[base + i] = chunk.slice(i * Constants.PAGE_SIZE, Constants.PAGE_SIZE);
+        }
+        return frames;
+    }
+    private static final int FRAMES_PER_CHUNK = (1 << 30) / Constants.PAGE_SIZE;
+    // 写回脏页需要知道数据文件；同一个缓冲池只能服务一个 FileManager
+    public synchronized void attach(FileManager fm){
+        if (this.fm == fm) return;
+        if (this.fm != null) throw new DBException("BufferPool already attached to " + this.fm.dir());
+        this.fm = fm;
+    }
+    private FileManager files(){
+        FileManager f = fm;
+        if (f == null) throw new DBException("BufferPool has no FileManager attached");
+        return f;
+    }
+    private Shard shard(long key){
+        if (shards.length == 1) return shards[0];
+        // 用散列的高位选分片，分片内页表用的是整体混合后的低位，两者不相关
+        return shards[(int)((key * 0x9E3779B97F4A7C15L) >>> 33) % shards.length];
+    }
+
+    /** 取页并 pin 住；未命中时从文件读入，必要时淘汰一个未被 pin 的帧 */
+    public Page fetchPage(int fileId, int pageId){
+        long key = PageTable.key(fileId, pageId);
+        return shard(key).fetch(key, fileId, pageId);
+    }
+    /** 在文件末尾分配新页，返回 pin 住的全零页面 */
+    public Page newPage(int fileId){
+        int pageId = files().allocatePage(fileId);
+        long key = PageTable.key(fileId, pageId);
+        return shard(key).create(key, fileId, pageId);
+    }
+    /** 释放一次 pin；dirty 表示调用者修改过页面 */
+    public void unpinPage(int fileId, int pageId, boolean dirty){
+        long key = PageTable.key(fileId, pageId);
+        if (shard(key).unpin(key, fileId, pageId, dirty) && flusher != null){
+            synchronized (this){ notifyAll(); }
+        }
+    }
+    public int pinCount(int fileId, int pageId){
+        long key = PageTable.key(fileId, pageId);
+        return shard(key).pinCount(key);
+    }
+    public void flushPage(int fileId, int pageId){
+        long key = PageTable.key(fileId, pageId);
+        shard(key).flush(key);
+    }
+    public void flushAll(){
+        for (Shard s : shards) s.flushAll();
+    }
+    /** 写回一个文件的全部脏页并把这个文件刷到磁盘，之后才能让持久化的元数据指向这些页 */
+    public void flushFile(int fileId){
+        for (Shard s : shards) s.flushFile(fileId);
+        FileManager f = fm;
+        if (f != null) f.sync(fileId);
+    }
+    // 检查点：写回全部脏页并把文件刷到磁盘
+    public void checkpoint(){
+        flushAll();
+        FileManager f = fm;
+        if (f != null) f.sync();
+    }
+    /** 丢弃某个文件的全部缓存页（删表时使用），脏页不写回 */
+    public void discard(int fileId){
+        for (Shard s : shards) s.discard(fileId);
+    }
+    /** 启动后台刷脏线程：某个分片脏页占比超过 ratio 时写回，直到降到 ratio 的一半 */
+    public synchronized void startFlusher(double ratio, long intervalMs){
+        if (ratio <= 0 || ratio > 1) throw new DBException("Dirty page ratio must be in (0, 1]: " + ratio);
+        this.dirtyRatio = ratio;
+        if (flusher != null) return;
+        Thread t = new Thread(() -> {
+            while (!closed){
+                // 只在等待时持有缓冲池自身的监视器，写回时只锁各个分片
+                synchronized (BufferPool.this){
+                    try { BufferPool.this.wait(intervalMs); }
+                    catch (InterruptedException e){ return; }
+                    if (closed) return;
                 }
-                fifoQ.add(k);
+                for (Shard s : shards) s.flushIfOverRatio();
             }
-            cache.put(k, p);
-        } else {
-            cache.put(k, p);
+        }, "minidb-page-flusher");
+        t.setDaemon(true);
+        flusher = t;
+        t.start();
+    }
+    // 关闭：停止刷脏线程并做一次检查点
+    public void close(){
+        Thread t;
+        synchronized (this){
+            closed = true;
+            t = flusher;
+            flusher = null;
+            notifyAll();
         }
-        puts++;
+        if (t != null){
+            try { t.join(); } catch (InterruptedException e){ Thread.currentThread().interrupt(); }
+        }
+        checkpoint();
+    }
+    public void clear(){
+        for (Shard s : shards) s.clear();
     }
-    public synchronized void clear(){ cache.clear(); if (fifoQ!=null) fifoQ.clear(); }
-    public synchronized long hits(){ return hits; }
-    public synchronized long misses(){ return misses; }
-    public synchronized long evicts(){ return evicts; }
-    public synchronized long size(){ return cache.size(); }
+    public long hits(){ long n = 0; for (Shard s : shards) n += s.hits(); return n; }
+    public long misses(){ long n = 0; for (Shard s : shards) n += s.misses(); return n; }
+    public long evicts(){ long n = 0; for (Shard s : shards) n += s.evicts(); return n; }
+    public long writeBacks(){ long n = 0; for (Shard s : shards) n += s.writeBacks(); return n; }
+    public int dirtyPages(){ int n = 0; for (Shard s : shards) n += s.dirtyPages(); return n; }
+    public long size(){ long n = 0; for (Shard s : shards) n += s.size(); return n; }
+    public double dirtyRatio(){ return dirtyRatio; }
+    public int capacity(){ return capacity; }
+    public int shards(){ return shards.length; }
     public Policy policy(){ return policy; }
+    public boolean offHeap(){ return offHeap; }
+
+    // 一个分片：所有方法都在分片自己的监视器上同步
+    private final class Shard {
+        private final int capacity;
+        private final Frame[] frames;
+        private final PageTable table;
+        private final Replacer replacer;
+        private final IntPredicate evictable;
+        private final ByteBuffer[] slots; // 堆外帧，堆内模式下为 null
+        private final int[] freeFrames;
+        private int freeCount;
+        private int dirtyCount = 0;
+        private long hits=0, misses=0, puts=0, evicts=0, writeBacks=0;
+
+        Shard(int capacity, ByteBuffer[] slots){
+            this.capacity = capacity;
+            this.slots = slots;
+            this.frames = new Frame[capacity];
+            this.freeFrames = new int[capacity];
+            for (int i = 0; i < capacity; i++){
+                frames[i] = new Frame();
+                freeFrames[i] = capacity - 1 - i;
+            }
+            this.freeCount = capacity;
+            this.table = new PageTable(capacity);
+            this.replacer = Replacer.create(policy, capacity);
+            this.evictable = f -> frames[f].pinCount == 0;
+        }
+        private void writeBack(Frame f){
+            if (!f.dirty) return;
+            FileManager fm = BufferPool.this.fm;
+            if (fm == null) throw new DBException("BufferPool has dirty pages but no FileManager attached");
+            fm.writePage(f.fileId, f.page);
+            f.dirty = false;
+            dirtyCount--;
+            writeBacks++;
+        }
+        private void release(int idx){
+            Frame f = frames[idx];
+            table.remove(PageTable.key(f.fileId, f.pageId));
+            replacer.removed(idx);
+            f.page = null;
+            f.dirty = false;
+            freeFrames[freeCount++] = idx;
+        }
+        // 取一个空闲帧；没有时按替换策略淘汰一个未被 pin 的帧
+        private int grabFrame(){
+            if (freeCount > 0) return freeFrames[--freeCount];
+            int victim = replacer.victim(evictable);
+            if (victim < 0) throw new DBException("Buffer pool exhausted: all %d frames are pinned", capacity);
+            writeBack(frames[victim]);
+            release(victim);
+            evicts++;
+            return freeFrames[--freeCount];
+        }
+        private Page install(int idx, long key, int fileId, Page p){
+            Frame f = frames[idx];
+            f.fileId = fileId; f.pageId = p.pageId; f.page = p; f.dirty = false; f.pinCount = 1;
+            table.put(key, idx);
+            replacer.admitted(idx, key);
+            puts++;
+            return p;
+        }
+        private Frame lookup(long key){
+            int idx = table.get(key);
+            return idx == PageTable.NOT_FOUND ? null : frames[idx];
+        }
+        synchronized Page fetch(long key, int fileId, int pageId){
+            int idx = table.get(key);
+            if (idx != PageTable.NOT_FOUND){
+                hits++;
+                replacer.accessed(idx);
+                Frame f = frames[idx];
+                f.pinCount++;
+                return f.page;
+            }
+            misses++;
+            FileManager fm = files();
+            int free = grabFrame();
+            try {
+                if (slots == null) return install(free, key, fileId, fm.readPage(fileId, pageId));
+                ByteBuffer slot = slots[free].clear();
+                fm.readPage(fileId, pageId, slot);
+                return install(free, key, fileId, new Page(pageId, slot));
+            } catch (RuntimeException e){
+                freeFrames[freeCount++] = free;
+                throw e;
+            }
+        }
+        synchronized Page create(long key, int fileId, int pageId){
+            int free = grabFrame();
+            if (slots == null) return install(free, key, fileId, new Page(pageId, new byte[Constants.PAGE_SIZE]));
+            ByteBuffer slot = slots[free].clear();
+            FileManager.zero(slot, 0);
+            return install(free, key, fileId, new Page(pageId, slot));
+        }
+        // 返回 true 表示脏页占比刚越过阈值，需要唤醒刷脏线程
+        synchronized boolean unpin(long key, int fileId, int pageId, boolean dirty){
+            Frame f = lookup(key);
+            if (f == null || f.pinCount <= 0) throw new DBException("Page %d:%d is not pinned", fileId, pageId);
+            f.pinCount--;
+            if (dirty && !f.dirty){
+                f.dirty = true;
+                dirtyCount++;
+                return dirtyCount > dirtyRatio * capacity;
+            }
+            return false;
+        }
+        synchronized int pinCount(long key){
+            Frame f = lookup(key);
+            return f == null ? 0 : f.pinCount;
+        }
+        synchronized void flush(long key){
+            Frame f = lookup(key);
+            if (f != null) writeBack(f);
+        }
+        synchronized void flushAll(){
+            for (Frame f : frames) if (f.page != null) writeBack(f);
+        }
+        synchronized void flushFile(int fileId){
+            for (Frame f : frames) if (f.page != null && f.fileId == fileId) writeBack(f);
+        }
+        synchronized void discard(int fileId){
+            for (int i = 0; i < capacity; i++){
+                Frame f = frames[i];
+                if (f.page == null || f.fileId != fileId) continue;
+                if (f.pinCount > 0) throw new DBException("Cannot discard pinned page %d:%d", fileId, f.pageId);
+                if (f.dirty) dirtyCount--;
+                release(i);
+            }
+        }
+        // 后台写回跳过被 pin 住的页，避免写出修改到一半的页面
+        synchronized void flushIfOverRatio(){
+            if (dirtyCount <= dirtyRatio * capacity) return;
+            int target = (int)(dirtyRatio * capacity / 2);
+            for (Frame f : frames){
+                if (dirtyCount <= target) return;
+                if (f.page != null && f.pinCount == 0) writeBack(f);
+            }
+        }
+        synchronized void clear(){
+            flushAll();
+            for (int i = 0; i < capacity; i++){
+                if (frames[i].page != null && frames[i].pinCount == 0) release(i);
+            }
+        }
+        synchronized long hits(){ return hits; }
+        synchronized long misses(){ return misses; }
+        synchronized long evicts(){ return evicts; }
+        synchronized long writeBacks(){ return writeBacks; }
+        synchronized int dirtyPages(){ return dirtyCount; }
+        synchronized int size(){ return table.size(); }
+    }
 }
@@ -1,58 +1,185 @@
 package com.minidb.storage;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
 import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import com.minidb.utils.*;
+// 通道表和页数缓存由对象锁保护；页面读写用定位 I/O（pread/pwrite），本身线程安全，
+// 因此只在取通道时持锁，真正的读写在锁外进行，多个线程可以同时读写不同的页
 public class FileManager {
     private final Path dir;
-    private long reads=0, writes=0, allocs=0;
-    public FileManager(Path dir){
+    private final int maxOpenFiles;
+    private final AtomicLong reads = new AtomicLong(), writes = new AtomicLong();
+    private long allocs=0, opens=0;
+    // 每个表一个常驻 FileChannel，按访问顺序 LRU 关闭，限制打开的文件描述符数量
+    private final LinkedHashMap<Integer, FileChannel> channels;
+    // 页数缓存：文件只由本进程写入，allocatePage 不必每次 stat
+    private final Map<Integer, Integer> pageCounts = new HashMap<>();
+
+    public FileManager(Path dir){ this(dir, Constants.DEFAULT_MAX_OPEN_FILES); }
+    public FileManager(Path dir, int maxOpenFiles){
         this.dir = dir;
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+        this.channels = new LinkedHashMap<>(16, 0.75f, true){
+            protected boolean removeEldestEntry(Map.Entry<Integer, FileChannel> eldest){
+                boolean rm = size() > FileManager.this.maxOpenFiles;
+                if (rm) closeQuietly(eldest.getValue());
+                return rm;
+            }
+        };
         try { Files.createDirectories(dir); } catch(IOException e){ throw new DBException("init file manager", e); }
     }
-    private Path tablePath(int tableId){ return dir.resolve("table_"+tableId+".dat"); }
+    // 文件号：低位是表号或索引号，高位区分文件种类（堆文件 / 空闲空间映射 / 索引文件），
+    // 各自有独立的页号空间，在缓冲池里也互不冲突
+    private static final int FORK_MASK = 0x60000000;
+    private static final int FSM_FORK = 0x40000000;
+    private static final int INDEX_FORK = 0x20000000;
+    public static int fsmFileId(int tableId){ return tableId | FSM_FORK; }
+    public static int indexFileId(int indexId){ return indexId | INDEX_FORK; }
+    private Path tablePath(int fileId){
+        int id = fileId & ~FORK_MASK;
+        if ((fileId & FORK_MASK) == FSM_FORK) return dir.resolve("table_"+id+Constants.FSM_FILE_EXTENSION);
+        if ((fileId & FORK_MASK) == INDEX_FORK) return dir.resolve(Constants.INDEX_DIR).resolve("index_"+id+Constants.INDEX_FILE_EXTENSION);
+        return dir.resolve("table_"+id+Constants.TABLE_FILE_EXTENSION);
+    }
+    private FileChannel channel(int fileId) throws IOException {
+        FileChannel ch = channels.get(fileId);
+        if (ch != null && ch.isOpen()) return ch;
+        Path path = tablePath(fileId);
+        if ((fileId & FORK_MASK) == INDEX_FORK) Files.createDirectories(path.getParent());
+        ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        opens++;
+        if (!pageCounts.containsKey(fileId)) pageCounts.put(fileId, (int)(ch.size() / Constants.PAGE_SIZE));
+        channels.put(fileId, ch);
+        return ch;
+    }
+    private void closeQuietly(FileChannel ch){
+        try { ch.close(); } catch(IOException ignored){}
+    }
+    private int pageCount(int tableId) throws IOException {
+        Integer n = pageCounts.get(tableId);
+        if (n != null) return n;
+        Path p = tablePath(tableId);
+        if (!Files.exists(p)) return 0;
+        return (int)(channel(tableId).size() / Constants.PAGE_SIZE);
+    }
     public synchronized long fileSize(int tableId){
-        try { Path p = tablePath(tableId); if (!Files.exists(p)) return 0; return Files.size(p); }
+        try { return (long)pageCount(tableId) * Constants.PAGE_SIZE; }
         catch(IOException e){ throw new DBException("fileSize", e); }
     }
-    public synchronized Page readPage(int tableId, int pageId){
-        try (RandomAccessFile raf = new RandomAccessFile(tablePath(tableId).toFile(), "rw")){
-            long offset = (long)pageId * com.minidb.utils.Constants.PAGE_SIZE;
-            if (raf.length() < offset + com.minidb.utils.Constants.PAGE_SIZE){
-                byte[] zero = new byte[com.minidb.utils.Constants.PAGE_SIZE];
-                reads++; return new Page(pageId, zero);
+    public synchronized int numPages(int tableId){
+        try { return pageCount(tableId); }
+        catch(IOException e){ throw new DBException("numPages", e); }
+    }
+    public Page readPage(int tableId, int pageId){
+        byte[] data = new byte[Constants.PAGE_SIZE];
+        readPage(tableId, pageId, ByteBuffer.wrap(data));
+        return new Page(pageId, data);
+    }
+    /** 把页面读进调用方给的缓冲区（如缓冲池的堆外帧），不分配堆内存；文件末尾之外按零页处理。返回时 position 归零 */
+    public void readPage(int tableId, int pageId, ByteBuffer frame){
+        long offset = (long)pageId * Constants.PAGE_SIZE;
+        try {
+            while (true){
+                FileChannel ch;
+                synchronized (this){
+                    if (pageId >= pageCount(tableId)){ zero(frame, 0); reads.incrementAndGet(); return; }
+                    ch = channel(tableId);
+                }
+                frame.clear();
+                try {
+                    while (frame.hasRemaining()){
+                        int n = ch.read(frame, offset + frame.position());
+                        if (n < 0){ zero(frame, frame.position()); break; } // 文件被截断：剩余部分按零页处理
+                    }
+                } catch (ClosedChannelException e){
+                    retryAfterClose(e);
+                    continue;
+                } finally {
+                    frame.clear();
+                }
+                reads.incrementAndGet();
+                return;
             }
-            raf.seek(offset);
-            byte[] data = new byte[com.minidb.utils.Constants.PAGE_SIZE];
-            raf.readFully(data);
-            reads++;
-            return new Page(pageId, data);
         }catch(IOException e){ throw new DBException("readPage", e); }
     }
-    public synchronized void writePage(int tableId, Page page){
-        try (RandomAccessFile raf = new RandomAccessFile(tablePath(tableId).toFile(), "rw")){
-            long offset = (long)page.pageId * com.minidb.utils.Constants.PAGE_SIZE;
-            raf.seek(offset);
-            raf.write(page.buf.array());
-            writes++;
+    private static final byte[] ZEROS = new byte[Constants.PAGE_SIZE];
+    static void zero(ByteBuffer frame, int from){
+        frame.put(from, ZEROS, 0, Constants.PAGE_SIZE - from);
+    }
+    public void writePage(int tableId, Page page){
+        long offset = (long)page.pageId * Constants.PAGE_SIZE;
+        try {
+            while (true){
+                FileChannel ch;
+                synchronized (this){ ch = channel(tableId); }
+                ByteBuffer src = page.buf.duplicate().clear();
+                try {
+                    while (src.hasRemaining()) ch.write(src, offset + src.position());
+                } catch (ClosedChannelException e){
+                    retryAfterClose(e);
+                    continue;
+                }
+                break;
+            }
+            synchronized (this){
+                if (page.pageId >= pageCounts.getOrDefault(tableId, 0)) pageCounts.put(tableId, page.pageId + 1);
+            }
+            writes.incrementAndGet();
         }catch(IOException e){ throw new DBException("writePage", e); }
     }
+    // 通道在锁外读写期间可能被 LRU 关掉，这时重新打开再试；线程被中断导致的关闭不重试
+    private static void retryAfterClose(ClosedChannelException e) throws IOException {
+        if (e instanceof ClosedByInterruptException || Thread.currentThread().isInterrupted()) throw e;
+    }
+    // 只分配页号不写零页：新页由缓冲池在写回时落盘，读到文件末尾之外的页按零页处理
     public synchronized int allocatePage(int tableId){
-        long size = fileSize(tableId);
-        int nextPageId = (int)(size / com.minidb.utils.Constants.PAGE_SIZE);
-        writePage(tableId, new Page(nextPageId, new byte[com.minidb.utils.Constants.PAGE_SIZE]));
-        allocs++;
-        return nextPageId;
+        try {
+            int nextPageId = pageCount(tableId);
+            pageCounts.put(tableId, nextPageId + 1);
+            allocs++;
+            return nextPageId;
+        }catch(IOException e){ throw new DBException("allocatePage", e); }
     }
     public synchronized void deleteTable(int tableId){
+        deleteFile(tableId);
+        deleteFile(fsmFileId(tableId));
+    }
+    public synchronized void deleteIndex(int indexId){
+        deleteFile(indexFileId(indexId));
+    }
+    private void deleteFile(int fileId){
+        FileChannel ch = channels.remove(fileId);
+        if (ch != null) closeQuietly(ch);
+        pageCounts.remove(fileId);
         try {
-            Path p = tablePath(tableId);
+            Path p = tablePath(fileId);
             java.nio.file.Files.deleteIfExists(p);
         } catch (IOException e){
             throw new com.minidb.utils.DBException("deleteTable", e);
         }
     }
-    public long reads(){ return reads; }
-    public long writes(){ return writes; }
-    public long allocs(){ return allocs; }
+    public synchronized void sync(){
+        try { for (FileChannel ch : channels.values()) ch.force(false); }
+        catch(IOException e){ throw new DBException("sync", e); }
+    }
+    /** 只把一个文件刷到磁盘 */
+    public synchronized void sync(int tableId){
+        FileChannel ch = channels.get(tableId);
+        if (ch == null) return;
+        try { ch.force(false); }
+        catch(IOException e){ throw new DBException("sync", e); }
+    }
+    public synchronized void close(){
+        for (FileChannel ch : channels.values()) closeQuietly(ch);
+        channels.clear();
+    }
+    public long reads(){ return reads.get(); }
+    public long writes(){ return writes.get(); }
+    public synchronized long allocs(){ return allocs; }
+    public synchronized long opens(){ return opens; }
+    public synchronized int openFiles(){ return channels.size(); }
     public Path dir(){ return dir; }
 }
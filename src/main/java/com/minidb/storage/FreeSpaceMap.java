@@ -0,0 +1,53 @@
+package com.minidb.storage;
+import com.minidb.utils.*;
+// 空闲空间映射：每个堆页在 table_N.fsm 中占一个字节
+//   0          = 未知（旧表或尚未记录），插入时按需读取堆页补齐
+//   1 + free/16 = 该页近似空闲字节数（向下取整，保证不会高估）
+public class FreeSpaceMap {
+    private static final int GRANULE = 16;
+    private static final int UNKNOWN = 0;
+    private static final int MAX_CATEGORY = 254;
+    private final int fileId;
+    private final FileManager fm;
+    private final BufferPool bp;
+    private int hint = 0; // 上次找到空间的堆页，批量插入时从这里继续
+
+    public FreeSpaceMap(int tableId, FileManager fm, BufferPool bp){
+        this.fileId = FileManager.fsmFileId(tableId); this.fm = fm; this.bp = bp;
+        bp.attach(fm);
+    }
+    /** 返回一个可能放得下 needed 字节的堆页号（或未知页），没有则返回 -1 */
+    public int find(int needed, int heapPages){
+        if (heapPages <= 0) return -1;
+        int want = (needed + GRANULE - 1) / GRANULE;
+        if (want > MAX_CATEGORY) return -1;
+        int start = Math.min(hint, heapPages - 1);
+        int pid = start;
+        do {
+            int fsmPid = pid / Constants.PAGE_SIZE;
+            Page p = bp.fetchPage(fileId, fsmPid);
+            try {
+                int end = Math.min(heapPages, (fsmPid + 1) * Constants.PAGE_SIZE);
+                if (pid < start && end > start) end = start;
+                for (; pid < end; pid++){
+                    int v = p.buf.get(pid % Constants.PAGE_SIZE) & 0xff;
+                    if (v == UNKNOWN || v - 1 >= want){ hint = pid; return pid; }
+                }
+            } finally {
+                bp.unpinPage(fileId, fsmPid, false);
+            }
+            if (pid >= heapPages) pid = 0;
+        } while (pid != start);
+        return -1;
+    }
+    /** 记录堆页 heapPid 当前的空闲字节数，只有分类变化时才标脏 */
+    public void update(int heapPid, int freeBytes){
+        int v = 1 + Math.min(MAX_CATEGORY, Math.max(0, freeBytes) / GRANULE);
+        int fsmPid = heapPid / Constants.PAGE_SIZE;
+        Page p = bp.fetchPage(fileId, fsmPid);
+        int slot = heapPid % Constants.PAGE_SIZE;
+        boolean changed = (p.buf.get(slot) & 0xff) != v;
+        if (changed) p.buf.put(slot, (byte) v);
+        bp.unpinPage(fileId, fsmPid, changed);
+    }
+}
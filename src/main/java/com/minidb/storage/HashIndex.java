@@ -0,0 +1,371 @@
+package com.minidb.storage;
+
+import com.minidb.utils.*;
+import java.util.*;
+import java.nio.ByteBuffer;
+
+// 可扩展哈希（extendible hashing）索引，只支持等值查找；和 BPlusTree 一样每个索引一个文件 indexes/index_N.idx。
+// 目录是 2^globalDepth 个桶页号，常驻内存，点查只读桶页（没有溢出时就是一页）。
+// 桶满时只分裂这一个桶：局部深度 +1，按哈希的下一位把项分到旧页和一个新页，再改目录里指向它的那一半槽位；
+// 局部深度已经等于全局深度时先把目录翻倍，只复制页号，不搬动任何索引项，所以不会出现整体重新哈希的停顿。
+// 桶里的项哈希值全都相同（重复键）时分裂也分不开，这时在桶后面挂溢出页。删除只从页里移除，不合并桶。
+//
+// 页面格式：
+//   元数据页 0  [int magic][int globalDepth][int dirPages] dirPages × int 目录页号
+//   目录页      DIR_PER_PAGE × int 桶页号，目录第 i 项在第 i / DIR_PER_PAGE 个目录页
+//   桶 / 溢出页 [byte 3][int localDepth][int n][int used][int next] n × (key, long rid)，next 为 -1 表示没有溢出页
+//   key        同 BPlusTree：保序编码（见 KeyCodec）
+public class HashIndex {
+    private static final int MAGIC = 0x48415348; // "HASH"
+    private static final byte BUCKET = 3;
+    private static final int META_PAGE = 0;
+    private static final int META_HEADER = 4 + 4 + 4;
+    private static final int BUCKET_HEADER = 1 + 4 + 4 + 4 + 4;
+    private static final int DEPTH_OFFSET = 1, COUNT_OFFSET = 5, USED_OFFSET = 9, NEXT_OFFSET = 13;
+    private static final int DIR_PER_PAGE = Constants.PAGE_SIZE / 4;
+    private static final int MAX_DIR_PAGES = (Constants.PAGE_SIZE - META_HEADER) / 4;
+    /** 全局深度上限：目录页号要放得进元数据页 */
+    public static final int MAX_DEPTH = 31 - Integer.numberOfLeadingZeros(MAX_DIR_PAGES * DIR_PER_PAGE);
+
+    private final int indexId;
+    private final int fileId;
+    private final String columnName;
+    private final FileManager fm;
+    private final BufferPool bp;
+    private int globalDepth;
+    private int[] dir;
+    private final List<Integer> dirPages = new ArrayList<>();
+
+    /** 打开索引文件；文件为空时建一个只有一个桶的空索引 */
+    public HashIndex(int indexId, String columnName, FileManager fm, BufferPool bp) {
+        this.indexId = indexId;
+        this.fileId = FileManager.indexFileId(indexId);
+        this.columnName = columnName;
+        this.fm = fm;
+        this.bp = bp;
+        bp.attach(fm);
+        if (fm.numPages(fileId) == 0) {
+            create();
+        } else {
+            load();
+        }
+    }
+
+    public int indexId() { return indexId; }
+    public int fileId() { return fileId; }
+    /** 全局深度，目录有 2^globalDepth 项 */
+    public int globalDepth() { return globalDepth; }
+
+    private void create() {
+        if (fm.allocatePage(fileId) != META_PAGE) {
+            throw new DBException("Hash index file not empty: %d", indexId);
+        }
+        dirPages.add(fm.allocatePage(fileId));
+        int bucket = fm.allocatePage(fileId);
+        writeBucket(bucket, 0, List.of(), List.of(), -1);
+        globalDepth = 0;
+        dir = new int[] { bucket };
+        writeDir(0, 1);
+        writeMeta();
+    }
+
+    private void load() {
+        Page meta = bp.fetchPage(fileId, META_PAGE);
+        try {
+            ByteBuffer buf = meta.buf;
+            if (buf.getInt(0) != MAGIC) throw new DBException("Not a hash index file: %d", indexId);
+            globalDepth = buf.getInt(4);
+            int n = buf.getInt(8);
+            for (int i = 0; i < n; i++) dirPages.add(buf.getInt(META_HEADER + i * 4));
+        } finally {
+            bp.unpinPage(fileId, META_PAGE, false);
+        }
+        dir = new int[1 << globalDepth];
+        for (int p = 0; p < dirPages.size(); p++) {
+            Page page = bp.fetchPage(fileId, dirPages.get(p));
+            try {
+                int from = p * DIR_PER_PAGE, to = Math.min(dir.length, from + DIR_PER_PAGE);
+                for (int i = from; i < to; i++) dir[i] = page.buf.getInt((i - from) * 4);
+            } finally {
+                bp.unpinPage(fileId, dirPages.get(p), false);
+            }
+        }
+    }
+
+    public void insert(Object key, RID rid) {
+        int size = KeyCodec.size(key) + 8;
+        if (size > BPlusTree.MAX_KEY_SIZE) {
+            throw new DBException("Index key too large for %s: %d bytes (max %d)", columnName, size - 8, BPlusTree.MAX_KEY_SIZE);
+        }
+        int h = hash(key);
+        while (true) {
+            int head = dir[h & mask(globalDepth)];
+            // 链上第一个放得下的页直接追加
+            int pageId = head, last = head;
+            while (pageId != -1) {
+                Page page = bp.fetchPage(fileId, pageId);
+                ByteBuffer buf = page.buf;
+                int used = buf.getInt(USED_OFFSET);
+                if (used + size <= Constants.PAGE_SIZE) {
+                    buf.position(used);
+                    KeyCodec.write(buf, key);
+                    buf.putLong(rid.toLong());
+                    buf.putInt(COUNT_OFFSET, buf.getInt(COUNT_OFFSET) + 1);
+                    buf.putInt(USED_OFFSET, used + size);
+                    bp.unpinPage(fileId, pageId, true);
+                    return;
+                }
+                last = pageId;
+                pageId = buf.getInt(NEXT_OFFSET);
+                bp.unpinPage(fileId, last, false);
+            }
+            // 整条链都满了：还能按哈希分开就分裂这个桶再重试，否则挂一个溢出页
+            Chain chain = readChain(head);
+            if (chain.localDepth < MAX_DEPTH && chain.separable(h)) {
+                split(h, chain);
+                continue;
+            }
+            int overflow = fm.allocatePage(fileId);
+            writeBucket(overflow, chain.localDepth, List.of(key), List.of(rid.toLong()), -1);
+            Page page = bp.fetchPage(fileId, last);
+            try {
+                page.buf.putInt(NEXT_OFFSET, overflow);
+            } finally {
+                bp.unpinPage(fileId, last, true);
+            }
+            return;
+        }
+    }
+
+    /** 键对应的全部 RID，按插入顺序 */
+    public List<RID> search(Object key) {
+        List<RID> result = new ArrayList<>();
+        // 键的编码是唯一的，直接在页面字节上比较，不反序列化桶里的其它键
+        ByteBuffer probe = KeyCodec.probe(key);
+        int pageId = dir[hash(key) & mask(globalDepth)];
+        while (pageId != -1) {
+            Page page = bp.fetchPage(fileId, pageId);
+            try {
+                ByteBuffer buf = page.buf;
+                int n = buf.getInt(COUNT_OFFSET);
+                int pos = BUCKET_HEADER;
+                for (int i = 0; i < n; i++) {
+                    int size = KeyCodec.storedSize(buf, pos);
+                    if (KeyCodec.compare(buf, pos, probe) == 0) result.add(RID.fromLong(buf.getLong(pos + size)));
+                    pos += size + 8;
+                }
+                pageId = buf.getInt(NEXT_OFFSET);
+            } finally {
+                bp.unpinPage(fileId, page.pageId, false);
+            }
+        }
+        return result;
+    }
+
+    /** 删除一项 (key, rid)，返回是否找到 */
+    public boolean delete(Object key, RID rid) {
+        return remove(key, rid.toLong()) > 0;
+    }
+
+    /** 删除键的全部项，返回删掉的项数 */
+    public int delete(Object key) {
+        return remove(key, null);
+    }
+
+    // rid 为 null 时删掉键的全部项；只重写有变化的页
+    private int remove(Object key, Long rid) {
+        int removed = 0;
+        int pageId = dir[hash(key) & mask(globalDepth)];
+        while (pageId != -1) {
+            List<Object> keys = new ArrayList<>();
+            List<Long> rids = new ArrayList<>();
+            int depth, next;
+            Page page = bp.fetchPage(fileId, pageId);
+            try {
+                ByteBuffer buf = page.buf;
+                depth = buf.getInt(DEPTH_OFFSET);
+                next = buf.getInt(NEXT_OFFSET);
+                int n = buf.getInt(COUNT_OFFSET);
+                buf.position(BUCKET_HEADER);
+                for (int i = 0; i < n; i++) {
+                    keys.add(KeyCodec.read(buf));
+                    rids.add(buf.getLong());
+                }
+            } finally {
+                bp.unpinPage(fileId, pageId, false);
+            }
+            int before = keys.size();
+            for (int i = keys.size() - 1; i >= 0; i--) {
+                if (BPlusTree.compareObjects(keys.get(i), key) == 0 && (rid == null || rids.get(i).longValue() == rid)) {
+                    keys.remove(i);
+                    rids.remove(i);
+                    if (rid != null) break;
+                }
+            }
+            if (keys.size() != before) {
+                writeBucket(pageId, depth, keys, rids, next);
+                removed += before - keys.size();
+                if (rid != null) return removed;
+            }
+            pageId = next;
+        }
+        return removed;
+    }
+
+    // 分裂哈希为 h 的项所在的桶：按第 localDepth 位分到旧链和一个新页上，目录里原来指向它的槽位一半改指新页
+    private void split(int h, Chain chain) {
+        int depth = chain.localDepth;
+        if (depth == globalDepth) doubleDirectory();
+        List<Object> stayKeys = new ArrayList<>(), moveKeys = new ArrayList<>();
+        List<Long> stayRids = new ArrayList<>(), moveRids = new ArrayList<>();
+        for (int i = 0; i < chain.keys.size(); i++) {
+            boolean move = (hash(chain.keys.get(i)) >>> depth & 1) == 1;
+            (move ? moveKeys : stayKeys).add(chain.keys.get(i));
+            (move ? moveRids : stayRids).add(chain.rids.get(i));
+        }
+        int sibling = fm.allocatePage(fileId);
+        writeChain(chain.pages, depth + 1, stayKeys, stayRids);
+        writeChain(new ArrayList<>(List.of(sibling)), depth + 1, moveKeys, moveRids);
+        // 指向这个桶的槽位是低 depth 位相同的那些，步长 2^depth；其中第 depth 位为 1 的改指新页
+        int step = 1 << depth;
+        int from = (h & (step - 1)) | step;
+        int lo = Integer.MAX_VALUE, hi = 0;
+        for (int i = from; i < dir.length; i += step << 1) {
+            dir[i] = sibling;
+            lo = Math.min(lo, i);
+            hi = i + 1;
+        }
+        writeDir(lo, hi);
+    }
+
+    // 目录翻倍：后一半照抄前一半，只写新增的目录页和元数据
+    private void doubleDirectory() {
+        if (globalDepth >= MAX_DEPTH) throw new DBException("Hash index directory full: %d", indexId);
+        int n = dir.length;
+        dir = Arrays.copyOf(dir, n * 2);
+        System.arraycopy(dir, 0, dir, n, n);
+        globalDepth++;
+        while (dirPages.size() * DIR_PER_PAGE < dir.length) dirPages.add(fm.allocatePage(fileId));
+        writeDir(n, dir.length);
+        writeMeta();
+    }
+
+    // 把 keys 依次写进 pages 这条链，不够再分配新页；多余的旧页从链上摘掉（不回收）
+    private void writeChain(List<Integer> pages, int depth, List<Object> keys, List<Long> rids) {
+        int i = 0, p = 0;
+        while (true) {
+            int start = i, used = BUCKET_HEADER;
+            while (i < keys.size() && used + KeyCodec.size(keys.get(i)) + 8 <= Constants.PAGE_SIZE) {
+                used += KeyCodec.size(keys.get(i)) + 8;
+                i++;
+            }
+            int next = -1;
+            if (i < keys.size()) {
+                if (p + 1 == pages.size()) pages.add(fm.allocatePage(fileId));
+                next = pages.get(p + 1);
+            }
+            writeBucket(pages.get(p), depth, keys.subList(start, i), rids.subList(start, i), next);
+            if (next == -1) return;
+            p++;
+        }
+    }
+
+    private void writeBucket(int pageId, int depth, List<Object> keys, List<Long> rids, int next) {
+        Page page = bp.fetchPage(fileId, pageId);
+        try {
+            ByteBuffer buf = page.buf;
+            buf.clear();
+            buf.put(BUCKET);
+            buf.putInt(depth);
+            buf.putInt(keys.size());
+            buf.putInt(0);
+            buf.putInt(next);
+            for (int i = 0; i < keys.size(); i++) {
+                KeyCodec.write(buf, keys.get(i));
+                buf.putLong(rids.get(i));
+            }
+            buf.putInt(USED_OFFSET, buf.position());
+        } finally {
+            bp.unpinPage(fileId, pageId, true);
+        }
+    }
+
+    // 写回目录 [from, to) 所在的目录页
+    private void writeDir(int from, int to) {
+        for (int p = from / DIR_PER_PAGE; p * DIR_PER_PAGE < to; p++) {
+            int pageId = dirPages.get(p);
+            Page page = bp.fetchPage(fileId, pageId);
+            try {
+                int start = p * DIR_PER_PAGE, end = Math.min(dir.length, start + DIR_PER_PAGE);
+                for (int i = start; i < end; i++) page.buf.putInt((i - start) * 4, dir[i]);
+            } finally {
+                bp.unpinPage(fileId, pageId, true);
+            }
+        }
+    }
+
+    private void writeMeta() {
+        Page page = bp.fetchPage(fileId, META_PAGE);
+        try {
+            ByteBuffer buf = page.buf;
+            buf.putInt(0, MAGIC);
+            buf.putInt(4, globalDepth);
+            buf.putInt(8, dirPages.size());
+            for (int i = 0; i < dirPages.size(); i++) buf.putInt(META_HEADER + i * 4, dirPages.get(i));
+        } finally {
+            bp.unpinPage(fileId, META_PAGE, true);
+        }
+    }
+
+    // 一个桶连同溢出页的全部项
+    private Chain readChain(int head) {
+        Chain chain = new Chain();
+        int pageId = head;
+        while (pageId != -1) {
+            Page page = bp.fetchPage(fileId, pageId);
+            try {
+                ByteBuffer buf = page.buf;
+                if (pageId == head) chain.localDepth = buf.getInt(DEPTH_OFFSET);
+                chain.pages.add(pageId);
+                int n = buf.getInt(COUNT_OFFSET);
+                buf.position(BUCKET_HEADER);
+                for (int i = 0; i < n; i++) {
+                    chain.keys.add(KeyCodec.read(buf));
+                    chain.rids.add(buf.getLong());
+                }
+                pageId = buf.getInt(NEXT_OFFSET);
+            } finally {
+                bp.unpinPage(fileId, page.pageId, false);
+            }
+        }
+        return chain;
+    }
+
+    private static final class Chain {
+        int localDepth;
+        final List<Integer> pages = new ArrayList<>();
+        final List<Object> keys = new ArrayList<>();
+        final List<Long> rids = new ArrayList<>();
+
+        // 桶里的项和新项的哈希不全相同时，继续分裂总能把它们分开
+        boolean separable(int h) {
+            for (Object k : keys) if (hash(k) != h) return true;
+            return false;
+        }
+    }
+
+    private static int mask(int depth) {
+        return (1 << depth) - 1;
+    }
+
+    /** 键的哈希：INT 按整数值、TEXT 按字符串，再做一次 murmur3 混合，让低位也分布均匀 */
+    static int hash(Object key) {
+        int h = key == null ? 0 : key instanceof Number n ? n.intValue() : key.toString().hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,205 @@
+package com.minidb.storage;
+
+import com.minidb.utils.*;
+import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// 索引键的保序编码：两个键编码后按无符号字节逐个比较（memcmp）的结果和 BPlusTree.KEY_ORDER 相同，
+// 节点里查找时直接在页面字节上比较，不解码、不分配对象。
+// 编码是自定界的（没有哪个键的编码是另一个键的前缀），页里不需要长度前缀：比较到探针结束都相同就是相等，
+// 否则在第一个不同的字节处分出大小，不会越过存储键的末尾。
+//
+// 编码（类型标记本身也参与比较，NULL < INT < TEXT < 组合键 < MAX_KEY）：
+//   NULL     [0x00]
+//   INT      [0x01][4 字节大端，符号位取反]            负数排在正数前面
+//   TEXT     [0x02][UTF-8，0x00 转义成 0x00 0x01][0x00 0x00]   终止符比任何内容字节都小，前缀排在前面
+//   组合键   [0x03][byte n] n 个单列键依次拼接                 每个单列键自己能定界
+//   MAX_KEY  [0xFF]                                             只出现在查找边界里
+final class KeyCodec {
+    private static final byte NULL = 0, INT = 1, TEXT = 2, TUPLE = 3, MAX = (byte) 0xFF;
+
+    private KeyCodec() {}
+
+    /** 键在页里占的字节数 */
+    static int size(Object key) {
+        if (key == null || key == BPlusTree.MAX_KEY) return 1;
+        if (key instanceof Number) return 1 + 4;
+        if (key instanceof List<?> tuple) {
+            int len = 1 + 1;
+            for (Object o : tuple) len += size(o);
+            return len;
+        }
+        // UTF-8 长度，不分配字节数组；U+0000 转义后多一个字节，落单的代理项编码成 '?'
+        String s = key.toString();
+        int len = 1 + 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == 0) len += 2;
+            else if (c < 0x80) len += 1;
+            else if (c < 0x800) len += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) { len += 4; i++; }
+            else if (Character.isSurrogate(c)) len += 1;
+            else len += 3;
+        }
+        return len;
+    }
+
+    static void write(ByteBuffer buf, Object key) {
+        buf.position(put(buf, buf.position(), key));
+    }
+
+    /** 在 at 处写键（绝对位置，不动 position），返回键之后的位置 */
+    static int put(ByteBuffer buf, int at, Object key) {
+        if (key == null) {
+            buf.put(at++, NULL);
+        } else if (key == BPlusTree.MAX_KEY) {
+            buf.put(at++, MAX);
+        } else if (key instanceof Number n) {
+            buf.put(at, INT);
+            buf.putInt(at + 1, n.intValue() ^ Integer.MIN_VALUE);
+            at += 5;
+        } else if (key instanceof List<?> tuple) {
+            buf.put(at, TUPLE);
+            buf.put(at + 1, (byte) tuple.size());
+            at += 2;
+            for (Object o : tuple) at = put(buf, at, o);
+        } else {
+            buf.put(at++, TEXT);
+            for (byte b : key.toString().getBytes(StandardCharsets.UTF_8)) {
+                buf.put(at++, b);
+                if (b == 0) buf.put(at++, (byte) 1);
+            }
+            buf.put(at++, (byte) 0);
+            buf.put(at++, (byte) 0);
+        }
+        return at;
+    }
+
+    /** 查找用的探针，整个操作只编码一次 */
+    static ByteBuffer probe(Object key) {
+        ByteBuffer probe = ByteBuffer.allocate(size(key));
+        write(probe, key);
+        return probe;
+    }
+
+    /** 读出 buf 当前位置的键，position 移到键之后 */
+    static Object read(ByteBuffer buf) {
+        int pos = buf.position();
+        Object key = get(buf, pos);
+        buf.position(pos + storedSize(buf, pos));
+        return key;
+    }
+
+    /** 读出 pos 处的键（绝对位置，不动 position） */
+    static Object get(ByteBuffer buf, int pos) {
+        byte type = buf.get(pos);
+        switch (type) {
+            case NULL: return null;
+            case INT: return buf.getInt(pos + 1) ^ Integer.MIN_VALUE;
+            case TUPLE:
+                int n = buf.get(pos + 1), at = pos + 2;
+                List<Object> tuple = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    tuple.add(get(buf, at));
+                    at += storedSize(buf, at);
+                }
+                return tuple;
+            case TEXT:
+                // 先数出原始字节数，再一次性解出来
+                int start = pos + 1, count = 0, p = start;
+                while (true) {
+                    byte b = buf.get(p);
+                    if (b == 0 && buf.get(p + 1) == 0) break;
+                    p += b == 0 ? 2 : 1;
+                    count++;
+                }
+                byte[] bytes = new byte[count];
+                for (int i = 0, q = start; i < count; i++) {
+                    bytes[i] = buf.get(q);
+                    q += bytes[i] == 0 ? 2 : 1;
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            default: throw new DBException("Unknown key type: " + type);
+        }
+    }
+
+    /** 页里 pos 处的键占的字节数 */
+    static int storedSize(ByteBuffer buf, int pos) {
+        switch (buf.get(pos)) {
+            case INT: return 1 + 4;
+            case TEXT:
+                int p = pos + 1;
+                while (buf.get(p) != 0 || buf.get(p + 1) != 0) p += buf.get(p) == 0 ? 2 : 1;
+                return p + 2 - pos;
+            case TUPLE:
+                int n = buf.get(pos + 1), q = pos + 2;
+                for (int i = 0; i < n; i++) q += storedSize(buf, q);
+                return q - pos;
+            default: return 1;
+        }
+    }
+
+    /** 页里 pos 处的键和探针按无符号字节比较（存储的键 - 探针的符号），类型标记之后 8 / 4 字节一组，不分配对象 */
+    static int compare(ByteBuffer buf, int pos, ByteBuffer probe) {
+        int a0 = buf.get(pos) & 0xFF, b0 = probe.get(0) & 0xFF;
+        if (a0 != b0) return a0 - b0;
+        // 自定界：不同的字节一定出现在两个编码的末尾之前，整组读取只要不越过页尾就行；INT 正好一组 4 字节
+        int n = probe.capacity(), wide = Math.min(n, buf.limit() - pos), i = 1;
+        for (; i + 8 <= wide; i += 8) {
+            long a = buf.getLong(pos + i), b = probe.getLong(i);
+            if (a != b) return Long.compareUnsigned(a, b);
+        }
+        if (i + 4 <= wide) {
+            int a = buf.getInt(pos + i), b = probe.getInt(i);
+            if (a != b) return Integer.compareUnsigned(a, b);
+            i += 4;
+        }
+        for (; i < n; i++) {
+            int a = buf.get(pos + i) & 0xFF, b = probe.get(i) & 0xFF;
+            if (a != b) return a - b;
+        }
+        return 0;
+    }
+
+    /** 和编码顺序一致的对象比较：类型标记先比，INT 按整数值，TEXT 按码点（即 UTF-8 字节序），组合键逐列 */
+    static int compare(Object a, Object b) {
+        if (a == b) return 0;
+        int ta = tag(a), tb = tag(b);
+        if (ta != tb) return Integer.compare(ta, tb);
+        switch (ta) {
+            case INT: return Integer.compare(((Number) a).intValue(), ((Number) b).intValue());
+            case TEXT: return compareCodePoints(a.toString(), b.toString());
+            case TUPLE:
+                // 编码里列数在前，列数不同时先按列数比
+                List<?> x = (List<?>) a, y = (List<?>) b;
+                if (x.size() != y.size()) return Integer.compare(x.size(), y.size());
+                for (int i = 0; i < x.size(); i++) {
+                    int c = compare(x.get(i), y.get(i));
+                    if (c != 0) return c;
+                }
+                return 0;
+            default: return 0;
+        }
+    }
+
+    private static int tag(Object key) {
+        if (key == null) return NULL;
+        if (key == BPlusTree.MAX_KEY) return MAX & 0xFF;
+        if (key instanceof Number) return INT;
+        if (key instanceof List) return TUPLE;
+        return TEXT;
+    }
+
+    // 按码点比较；String.compareTo 按 UTF-16 单元，代理对和 U+E000 以上的字符顺序不同
+    private static int compareCodePoints(String a, String b) {
+        int i = 0, j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i), cb = b.codePointAt(j);
+            if (ca != cb) return Integer.compare(ca, cb);
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+}
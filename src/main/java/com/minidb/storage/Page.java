@@ -1,5 +1,6 @@
 package com.minidb.storage;
 import java.nio.ByteBuffer;
+// 页面：堆上 byte[] 的包装，或缓冲池堆外帧的视图（只在 pin 住期间有效）
 public class Page {
     public final int pageId;
     public final ByteBuffer buf;
@@ -7,4 +8,8 @@ public class Page {
         this.pageId = pageId;
         this.buf = ByteBuffer.wrap(data);
     }
+    public Page(int pageId, ByteBuffer frame){
+        this.pageId = pageId;
+        this.buf = frame;
+    }
 }
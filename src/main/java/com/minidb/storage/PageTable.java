@@ -0,0 +1,66 @@
+package com.minidb.storage;
+import java.util.Arrays;
+// 缓冲池页表：(文件号, 页号) 打包成 long 映射到帧下标。
+// 开放寻址 + 线性探测，删除时向后移位（不留墓碑），查找与更新都不分配对象、不装箱。
+final class PageTable {
+    static final int NOT_FOUND = -1;
+    private static final long EMPTY = -1L; // 文件号 -1、页号 -1，不会出现在真实页上
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    PageTable(int expected){
+        int cap = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1; // 负载因子不超过 0.5
+        keys = new long[cap];
+        values = new int[cap];
+        mask = cap - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    static long key(int fileId, int pageId){ return ((long) fileId << 32) | (pageId & 0xffffffffL); }
+
+    private static int hash(long k){
+        long h = k * 0x9E3779B97F4A7C15L; // 斐波那契散列，打散相邻页号
+        return (int) (h ^ (h >>> 32));
+    }
+
+    int get(long k){
+        for (int i = hash(k) & mask; ; i = (i + 1) & mask){
+            long cur = keys[i];
+            if (cur == k) return values[i];
+            if (cur == EMPTY) return NOT_FOUND;
+        }
+    }
+
+    void put(long k, int v){
+        int i = hash(k) & mask;
+        for (; keys[i] != EMPTY; i = (i + 1) & mask){
+            if (keys[i] == k){ values[i] = v; return; }
+        }
+        keys[i] = k;
+        values[i] = v;
+        size++;
+    }
+
+    void remove(long k){
+        int i = hash(k) & mask;
+        for (; keys[i] != k; i = (i + 1) & mask){
+            if (keys[i] == EMPTY) return;
+        }
+        // 向后移位：把探测链上后续元素挪到空位，保证查找不会提前遇到空槽
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask){
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)){
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY;
+        size--;
+    }
+
+    int size(){ return size; }
+}
@@ -0,0 +1,16 @@
+package com.minidb.storage;
+// 记录号：堆页号 + 页内槽号。页内压缩不改变槽号，所以记录不搬页时 RID 一直有效；
+// 记录被删除后槽位可能被新记录复用
+public final class RID {
+    public final int pageId;
+    public final int slot;
+    public RID(int pageId, int slot){ this.pageId = pageId; this.slot = slot; }
+    /** 打包成 long（页号在高 32 位），便于索引按定长存储 */
+    public long toLong(){ return ((long) pageId << 32) | (slot & 0xffffffffL); }
+    public static RID fromLong(long v){ return new RID((int) (v >>> 32), (int) v); }
+    @Override public boolean equals(Object o){
+        return o instanceof RID r && r.pageId == pageId && r.slot == slot;
+    }
+    @Override public int hashCode(){ return 31 * pageId + slot; }
+    @Override public String toString(){ return "(" + pageId + "," + slot + ")"; }
+}
@@ -2,6 +2,9 @@ package com.minidb.storage;
 import java.util.*;
 public class Record {
     public final List<Object> values;
-    public Record(List<Object> values){ this.values = values; }
+    // 从堆里读出的记录带上它的位置，新构造的记录为 null
+    public final RID rid;
+    public Record(List<Object> values){ this(values, null); }
+    public Record(List<Object> values, RID rid){ this.values = values; this.rid = rid; }
     public String toString(){ return values.toString(); }
 }
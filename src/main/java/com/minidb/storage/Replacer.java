@@ -0,0 +1,239 @@
+package com.minidb.storage;
+import java.util.function.IntPredicate;
+import com.minidb.utils.*;
+// 缓冲池替换策略，按帧下标工作；调用方（BufferPool）负责加锁
+interface Replacer {
+    /** 新页面（打包键 key）装入帧 frame */
+    void admitted(int frame, long key);
+    /** 命中帧 frame */
+    void accessed(int frame);
+    /** 帧 frame 被清空（淘汰或丢弃） */
+    void removed(int frame);
+    /** 选出一个可淘汰的帧（evictable 为 true），没有则返回 -1；真正淘汰时调用方再调用 removed */
+    int victim(IntPredicate evictable);
+
+    static Replacer create(BufferPool.Policy policy, int capacity){
+        return switch (policy){
+            case LRU -> new ListReplacer(capacity, true);
+            case FIFO -> new ListReplacer(capacity, false);
+            case CLOCK -> new ClockReplacer(capacity);
+            case TWO_Q -> new TwoQueueReplacer(capacity);
+            case LRU_K -> new LruKReplacer(capacity, Constants.LRU_K);
+        };
+    }
+
+    // 帧下标组成的侵入式双向链表，头部最老；一个帧同一时刻只在一条链表里
+    final class FrameList {
+        private final int[] prev, next;
+        private int head = -1, tail = -1, size = 0;
+        FrameList(int[] prev, int[] next){ this.prev = prev; this.next = next; }
+        void unlink(int f){
+            if (prev[f] >= 0) next[prev[f]] = next[f]; else head = next[f];
+            if (next[f] >= 0) prev[next[f]] = prev[f]; else tail = prev[f];
+            size--;
+        }
+        void append(int f){
+            prev[f] = tail; next[f] = -1;
+            if (tail >= 0) next[tail] = f; else head = f;
+            tail = f;
+            size++;
+        }
+        int first(IntPredicate evictable){
+            for (int f = head; f >= 0; f = next[f]){
+                if (evictable.test(f)) return f;
+            }
+            return -1;
+        }
+        boolean isTail(int f){ return tail == f; }
+        int size(){ return size; }
+    }
+
+    // LRU / FIFO：LRU 命中时移到链表尾部，FIFO 不动
+    final class ListReplacer implements Replacer {
+        private final FrameList list;
+        private final boolean moveOnAccess;
+
+        ListReplacer(int capacity, boolean moveOnAccess){
+            this.list = new FrameList(new int[capacity], new int[capacity]);
+            this.moveOnAccess = moveOnAccess;
+        }
+        @Override public void admitted(int frame, long key){ list.append(frame); }
+        @Override public void accessed(int frame){
+            if (moveOnAccess && !list.isTail(frame)){ list.unlink(frame); list.append(frame); }
+        }
+        @Override public void removed(int frame){ list.unlink(frame); }
+        @Override public int victim(IntPredicate evictable){ return list.first(evictable); }
+    }
+
+    // CLOCK（二次机会）：新装入的页不带引用位，只有再次命中才能躲过一轮指针扫描，
+    // 因此一次性的顺序扫描页会先被换出
+    final class ClockReplacer implements Replacer {
+        private final boolean[] present, referenced;
+        private int hand = 0;
+
+        ClockReplacer(int capacity){
+            this.present = new boolean[capacity];
+            this.referenced = new boolean[capacity];
+        }
+        @Override public void admitted(int frame, long key){ present[frame] = true; referenced[frame] = false; }
+        @Override public void accessed(int frame){ referenced[frame] = true; }
+        @Override public void removed(int frame){ present[frame] = false; referenced[frame] = false; }
+        @Override public int victim(IntPredicate evictable){
+            int n = present.length;
+            // 最多转两圈：第一圈清引用位，第二圈必然能找到（除非全部被 pin）
+            for (int step = 0; step < 2 * n; step++){
+                int f = hand;
+                hand = (hand + 1) % n;
+                if (!present[f] || !evictable.test(f)) continue;
+                if (referenced[f]){ referenced[f] = false; continue; }
+                return f;
+            }
+            return -1;
+        }
+    }
+
+    // 简化 2Q（Johnson & Shasha）：首次访问的页进入 FIFO 队列 A1in，
+    // 从 A1in 换出的页号记入幽灵队列 A1out；在 A1out 中的页再次被读入时才进入 LRU 队列 Am。
+    // 扫描页只会流过 A1in，不会挤掉 Am 里的热点页
+    final class TwoQueueReplacer implements Replacer {
+        private final FrameList a1in, am;
+        private final boolean[] inAm;
+        private final long[] frameKey;
+        private final int kin;
+        // A1out：只记页号的环形队列 + 页号到环下标的映射
+        private final long[] ghostRing;
+        private final PageTable ghosts;
+        private int ghostHead = 0, ghostSize = 0;
+
+        TwoQueueReplacer(int capacity){
+            int[] prev = new int[capacity], next = new int[capacity];
+            this.a1in = new FrameList(prev, next);
+            this.am = new FrameList(prev, next);
+            this.inAm = new boolean[capacity];
+            this.frameKey = new long[capacity];
+            this.kin = Math.max(1, capacity / 4);
+            int kout = Math.max(1, capacity / 2);
+            this.ghostRing = new long[kout];
+            this.ghosts = new PageTable(kout);
+        }
+        @Override public void admitted(int frame, long key){
+            frameKey[frame] = key;
+            int slot = ghosts.get(key);
+            if (slot != PageTable.NOT_FOUND){
+                ghosts.remove(key);
+                inAm[frame] = true;
+                am.append(frame);
+            } else {
+                inAm[frame] = false;
+                a1in.append(frame);
+            }
+        }
+        @Override public void accessed(int frame){
+            if (inAm[frame] && !am.isTail(frame)){ am.unlink(frame); am.append(frame); }
+        }
+        @Override public void removed(int frame){
+            if (inAm[frame]) am.unlink(frame); else a1in.unlink(frame);
+        }
+        @Override public int victim(IntPredicate evictable){
+            int f = -1;
+            if (a1in.size() > kin || am.size() == 0) f = a1in.first(evictable);
+            if (f < 0) f = am.first(evictable);
+            if (f < 0) f = a1in.first(evictable);
+            if (f >= 0 && !inAm[f]) remember(frameKey[f]);
+            return f;
+        }
+        private void remember(long key){
+            int cap = ghostRing.length;
+            if (ghostSize == cap){
+                long old = ghostRing[ghostHead];
+                if (ghosts.get(old) == ghostHead) ghosts.remove(old);
+                ghostHead = (ghostHead + 1) % cap;
+                ghostSize--;
+            }
+            int slot = (ghostHead + ghostSize) % cap;
+            ghostRing[slot] = key;
+            ghosts.put(key, slot);
+            ghostSize++;
+        }
+    }
+
+    // LRU-K：按倒数第 K 次访问时间淘汰（向后 K 距离最大者）；
+    // 访问不足 K 次的页距离视为无穷大，优先淘汰，其中最早访问的先走。
+    // 被换出页的访问历史保留一段时间（与帧数相同的条目），重新读入时接着累计
+    final class LruKReplacer implements Replacer {
+        private final int k;
+        private final long[] history; // 每帧 k 个槽的环形访问时间
+        private final int[] count;
+        private final boolean[] present;
+        private final long[] frameKey;
+        private long clock = 0;
+        // 已换出页的历史：环形缓冲 + 页号到环下标的映射
+        private final long[] retainedKey, retainedHistory;
+        private final int[] retainedCount;
+        private final PageTable retained;
+        private int retainedHead = 0, retainedSize = 0;
+
+        LruKReplacer(int capacity, int k){
+            if (k < 1) throw new DBException("LRU-K needs K >= 1: " + k);
+            this.k = k;
+            this.history = new long[capacity * k];
+            this.count = new int[capacity];
+            this.present = new boolean[capacity];
+            this.frameKey = new long[capacity];
+            this.retainedKey = new long[capacity];
+            this.retainedHistory = new long[capacity * k];
+            this.retainedCount = new int[capacity];
+            this.retained = new PageTable(capacity);
+        }
+        private void record(int frame){
+            history[frame * k + (count[frame] % k)] = ++clock;
+            // 满 K 次后只有环上的位置有用：计数停在 [k, 2k) 里循环，热页访问再多也不会溢出
+            count[frame] = Math.min(count[frame] + 1, k + (count[frame] + 1) % k);
+        }
+        @Override public void admitted(int frame, long key){
+            present[frame] = true;
+            frameKey[frame] = key;
+            count[frame] = 0;
+            int slot = retained.get(key);
+            if (slot != PageTable.NOT_FOUND){
+                System.arraycopy(retainedHistory, slot * k, history, frame * k, k);
+                count[frame] = retainedCount[slot];
+                retained.remove(key);
+            }
+            record(frame);
+        }
+        @Override public void accessed(int frame){ record(frame); }
+        @Override public void removed(int frame){ present[frame] = false; }
+        @Override public int victim(IntPredicate evictable){
+            int best = -1;
+            boolean bestInfinite = false;
+            long bestTime = Long.MAX_VALUE;
+            for (int f = 0; f < present.length; f++){
+                if (!present[f] || !evictable.test(f)) continue;
+                boolean infinite = count[f] < k;
+                // 不足 K 次：看最早一次访问；满 K 次：看倒数第 K 次访问（环中最老的槽）
+                long t = infinite ? history[f * k] : history[f * k + (count[f] % k)];
+                if (best < 0 || (infinite && !bestInfinite) || (infinite == bestInfinite && t < bestTime)){
+                    best = f; bestInfinite = infinite; bestTime = t;
+                }
+            }
+            if (best >= 0) retain(best);
+            return best;
+        }
+        private void retain(int frame){
+            int cap = retainedKey.length;
+            if (retainedSize == cap){
+                long old = retainedKey[retainedHead];
+                if (retained.get(old) == retainedHead) retained.remove(old);
+                retainedHead = (retainedHead + 1) % cap;
+                retainedSize--;
+            }
+            int slot = (retainedHead + retainedSize) % cap;
+            retainedKey[slot] = frameKey[frame];
+            System.arraycopy(history, frame * k, retainedHistory, slot * k, k);
+            retainedCount[slot] = count[frame];
+            retained.put(frameKey[frame], slot);
+            retainedSize++;
+        }
+    }
+}
@@ -8,18 +8,18 @@ public class TableHeap {
     private final Schema schema;
     private final FileManager fm;
     private final BufferPool bp;
+    private final FreeSpaceMap fsm;
     // Page layout: [int nSlots][int freePtr][slotOffsets... (negative = free)] [free space] [records]
     public TableHeap(int tableId, Schema schema, FileManager fm, BufferPool bp){
         this.tableId = tableId; this.schema = schema; this.fm = fm; this.bp = bp;
+        bp.attach(fm);
+        this.fsm = new FreeSpaceMap(tableId, fm, bp);
     }
-    private Page loadPage(int pid){
-        Page p = bp.get(tableId, pid);
-        if (p==null){ p = fm.readPage(tableId, pid); bp.put(tableId, pid, p); }
-        return p;
-    }
+    // 取页后必须配对 unpin，否则该帧永远不会被淘汰
+    private Page pin(int pid){ return bp.fetchPage(tableId, pid); }
+    private void unpin(Page p, boolean dirty){ bp.unpinPage(tableId, p.pageId, dirty); }
     private int numPages(){
-        long sz = fm.fileSize(tableId);
-        return (int)(sz / Constants.PAGE_SIZE);
+        return fm.numPages(tableId);
     }
     private void initIfNeeded(Page p){
         ByteBuffer b = p.buf;
@@ -33,7 +33,8 @@ public class TableHeap {
             if (b.getInt(4)==0){ b.putInt(4, Constants.PAGE_SIZE); }
         }
     }
-    private boolean tryInsertInto(Page p, Record r){
+    // 放入成功返回槽号，放不下返回 -1
+    private int tryInsertInto(Page p, Record r){
         initIfNeeded(p);
         ByteBuffer b = p.buf;
         int n = b.getInt(0);
@@ -45,23 +46,23 @@ public class TableHeap {
             int off = b.getInt(headerBase + idx*4);
             if (off < 0){
                 int needed = sizeOf(r);
-                if (freePtr - (headerBase + n*4) < needed) return false;
+                if (freePtr - (headerBase + n*4) < needed) return -1;
                 int recStart = freePtr - needed;
                 writeRecord(b, recStart, r);
                 b.putInt(headerBase + idx*4, recStart);
                 b.putInt(4, recStart);
-                return true;
+                return idx;
             }
         }
         // 2) 追加新槽
         int needed = sizeOf(r);
-        if (freePtr - (headerBase + n*4 + 4) < needed) return false;
+        if (freePtr - (headerBase + n*4 + 4) < needed) return -1;
         int recStart = freePtr - needed;
         writeRecord(b, recStart, r);
         b.putInt(headerBase + n*4, recStart);
         b.putInt(0, n+1);
         b.putInt(4, recStart);
-        return true;
+        return n;
     }
     private void writeRecord(ByteBuffer b, int pos, Record r){
         b.position(pos);
@@ -80,7 +81,7 @@ public class TableHeap {
             }
         }
     }
-    private Record readRecord(ByteBuffer b, int pos){
+    private Record readRecord(ByteBuffer b, int pos, RID rid){
         b.position(pos);
         int ncols = b.getInt();
         List<Object> vals = new ArrayList<>(ncols);
@@ -94,7 +95,7 @@ public class TableHeap {
                 vals.add(new String(d, java.nio.charset.StandardCharsets.UTF_8));
             }
         }
-        return new Record(vals);
+        return new Record(vals, rid);
     }
     private int sizeOf(Record r){
         int sz = 4;
@@ -110,98 +111,295 @@ public class TableHeap {
         }
         return sz;
     }
-    public void insert(Record r){
-        int pages = Math.max(1, numPages());
-        for (int pid=0; pid<pages; pid++){
-            Page p = loadPage(pid);
-            if (tryInsertInto(p, r)){ fm.writePage(tableId, p); return; }
+    // 新记录可用的字节数（与 tryInsertInto 的判断一致：没有空槽可复用时要多留一个槽位）
+    private int freeSpace(Page p){
+        initIfNeeded(p);
+        ByteBuffer b = p.buf;
+        int n = b.getInt(0);
+        int free = b.getInt(4) - (8 + n*4);
+        for (int idx=0; idx<n; idx++){
+            if (b.getInt(8 + idx*4) < 0) return free;
+        }
+        return free - 4;
+    }
+    private int recordSize(ByteBuffer b, int pos){
+        int p = pos;
+        int ncols = b.getInt(p); p += 4;
+        for (int i=0;i<ncols;i++){
+            byte tag = b.get(p); p += 1;
+            if (tag==1) p += 4;
+            else if (tag==2) p += 4 + b.getInt(p);
+        }
+        return p - pos;
+    }
+    // 把存活记录紧凑地搬到页尾，槽号保持不变，回收被删除记录占用的空间
+    private void compact(Page p){
+        ByteBuffer b = p.buf;
+        int n = b.getInt(0);
+        // 页面可能在堆外帧里，先拷一份到堆上再往回搬
+        byte[] copy = new byte[Constants.PAGE_SIZE];
+        b.get(0, copy);
+        ByteBuffer src = ByteBuffer.wrap(copy);
+        int freePtr = Constants.PAGE_SIZE;
+        for (int idx=0; idx<n; idx++){
+            int off = b.getInt(8 + idx*4);
+            if (off <= 0) continue;
+            int len = recordSize(src, off);
+            freePtr -= len;
+            b.put(freePtr, copy, off, len);
+            b.putInt(8 + idx*4, freePtr);
+        }
+        b.putInt(4, freePtr);
+    }
+    // 尽量把更新后的记录留在原槽位：原地覆盖、用页内空闲空间、或压缩后再放
+    private boolean tryReplaceInSlot(Page p, int idx, Record nr){
+        ByteBuffer b = p.buf;
+        int slotPos = 8 + idx*4;
+        int off = b.getInt(slotPos);
+        int needed = sizeOf(nr);
+        if (needed <= recordSize(b, off)){ writeRecord(b, off, nr); return true; }
+        b.putInt(slotPos, -1);
+        int n = b.getInt(0);
+        if (b.getInt(4) - (8 + n*4) < needed) compact(p);
+        int freePtr = b.getInt(4);
+        if (freePtr - (8 + n*4) < needed) return false;
+        int recStart = freePtr - needed;
+        writeRecord(b, recStart, nr);
+        b.putInt(slotPos, recStart);
+        b.putInt(4, recStart);
+        return true;
+    }
+    /** 插入一条记录，返回它的 RID */
+    public RID insert(Record r){
+        int needed = sizeOf(r);
+        int pages = numPages();
+        // 由空闲空间映射直接定位有空间的页；映射偏乐观时用真实值修正后继续找
+        for (int pid = fsm.find(needed, pages); pid >= 0; pid = fsm.find(needed, pages)){
+            Page p = pin(pid);
+            int slot = -1;
+            int free;
+            try {
+                slot = tryInsertInto(p, r);
+                free = freeSpace(p);
+            } finally {
+                unpin(p, slot >= 0);
+            }
+            fsm.update(pid, free);
+            if (slot >= 0) return new RID(pid, slot);
+        }
+        Page p = bp.newPage(tableId);
+        int slot = -1;
+        int free;
+        try {
+            slot = tryInsertInto(p, r);
+            if (slot < 0) throw new DBException("Insert failed into fresh page");
+            free = freeSpace(p);
+        } finally {
+            unpin(p, slot >= 0);
         }
-        int newPid = fm.allocatePage(tableId);
-        Page p = loadPage(newPid);
-        if (!tryInsertInto(p, r)) throw new DBException("Insert failed into fresh page");
-        fm.writePage(tableId, p);
+        fsm.update(p.pageId, free);
+        return new RID(p.pageId, slot);
+    }
+    // RID 指向的槽在页内的偏移；页号、槽号越界或记录已删除时返回 -1
+    private int slotOffset(Page p, int slot){
+        ByteBuffer b = p.buf;
+        int n = b.getInt(0);
+        if (slot < 0 || slot >= n || n > 100000) return -1;
+        int off = b.getInt(8 + slot*4);
+        return off > 0 ? off : -1;
+    }
+    /** 按 RID 读一条记录，只访问一个堆页；记录不存在时返回 null */
+    public Record fetch(RID rid){
+        if (rid.pageId < 0 || rid.pageId >= numPages()) return null;
+        Page p = pin(rid.pageId);
+        try {
+            int off = slotOffset(p, rid.slot);
+            return off < 0 ? null : readRecord(p.buf, off, rid);
+        } finally {
+            unpin(p, false);
+        }
+    }
+    /** 按 RID 删除一条记录，返回是否确实删除了 */
+    public boolean delete(RID rid){
+        if (rid.pageId < 0 || rid.pageId >= numPages()) return false;
+        Page p = pin(rid.pageId);
+        boolean dirty = false;
+        int free = 0;
+        try {
+            if (slotOffset(p, rid.slot) < 0) return false;
+            p.buf.putInt(8 + rid.slot*4, -1);
+            compact(p);
+            free = freeSpace(p);
+            dirty = true;
+        } finally {
+            unpin(p, dirty);
+        }
+        fsm.update(rid.pageId, free);
+        return true;
+    }
+    /**
+     * 按 RID 更新一条记录：尽量留在原槽位，放不下时搬到别的页。
+     * 返回记录现在的 RID（搬走时与传入的不同），记录不存在时返回 null
+     */
+    public RID update(RID rid, Record nr){
+        if (rid.pageId < 0 || rid.pageId >= numPages()) return null;
+        Page p = pin(rid.pageId);
+        boolean dirty = false, inPlace;
+        int free = 0;
+        try {
+            if (slotOffset(p, rid.slot) < 0) return null;
+            // 放不回原槽位时 tryReplaceInSlot 已经把旧记录标记为删除
+            inPlace = tryReplaceInSlot(p, rid.slot, nr);
+            free = freeSpace(p);
+            dirty = true;
+        } finally {
+            unpin(p, dirty);
+        }
+        fsm.update(rid.pageId, free);
+        return inPlace ? rid : insert(nr);
     }
     public int delete(java.util.function.Predicate<Record> pred){
+        return delete(pred, r -> {});
+    }
+    /** 删除满足条件的记录，每删一条把它（带原 RID）交给 onDelete，供调用方维护索引 */
+    public int delete(java.util.function.Predicate<Record> pred, java.util.function.Consumer<Record> onDelete){
         int deleted = 0;
         int pages = numPages();
         for (int pid=0; pid<pages; pid++){
-            Page p = loadPage(pid);
-            initIfNeeded(p);
-            ByteBuffer b = p.buf;
-            int n = b.getInt(0);
-            int headerBase = 8;
-            for (int idx=0; idx<n; idx++){
-                int off = b.getInt(headerBase + idx*4);
-                if (off <= 0) continue;
-                Record r = readRecord(b, off);
-                if (pred.test(r)){
-                    b.putInt(headerBase + idx*4, -1); // tombstone
-                    deleted++;
+            Page p = pin(pid);
+            boolean dirty = false;
+            int free = 0;
+            try {
+                initIfNeeded(p);
+                ByteBuffer b = p.buf;
+                int n = b.getInt(0);
+                int headerBase = 8;
+                for (int idx=0; idx<n; idx++){
+                    int off = b.getInt(headerBase + idx*4);
+                    if (off <= 0) continue;
+                    Record r = readRecord(b, off, new RID(pid, idx));
+                    if (pred.test(r)){
+                        b.putInt(headerBase + idx*4, -1); // tombstone
+                        onDelete.accept(r);
+                        deleted++;
+                        dirty = true;
+                    }
+                }
+                if (dirty){
+                    compact(p);
+                    free = freeSpace(p);
                 }
+            } finally {
+                unpin(p, dirty);
             }
-            if (deleted>0) fm.writePage(tableId, p);
+            if (dirty) fsm.update(pid, free);
         }
         return deleted;
     }
-    // 在类内添加（delete/scan 已存在）：
     public int update(java.util.function.Predicate<Record> pred,
                       java.util.function.Function<Record, Record> transform){
+        return update(pred, transform, (before, after) -> {});
+    }
+    /**
+     * 更新满足条件的记录，每更新一条调用 onUpdate(旧记录, 新记录)，两者都带 RID
+     * （搬到别处的记录在扫描结束、重新插入后才回调），供调用方维护索引
+     */
+    public int update(java.util.function.Predicate<Record> pred,
+                      java.util.function.Function<Record, Record> transform,
+                      java.util.function.BiConsumer<Record, Record> onUpdate){
         int updated = 0;
         int pages = numPages();
+        // 放不回原页的记录在扫描结束后再插入，避免被后续页再次扫描并重复更新
+        List<Record> moved = new ArrayList<>(), movedFrom = new ArrayList<>();
         for (int pid=0; pid<pages; pid++){
-            Page p = loadPage(pid);
-            initIfNeeded(p);
-            java.nio.ByteBuffer b = p.buf;
-            int n = b.getInt(0);
-            int headerBase = 8;
+            Page p = pin(pid);
             boolean dirty=false;
-            for (int idx=0; idx<n; idx++){
-                int off = b.getInt(headerBase + idx*4);
-                if (off <= 0) continue;
-                Record r = readRecord(b, off);
-                if (pred.test(r)){
-                    // tombstone old
-                    b.putInt(headerBase + idx*4, -1);
-                    dirty=true;
-                    // insert new
-                    Record nr = transform.apply(r);
-                    insert(nr); // 可能落到其他页
-                    updated++;
+            int free = 0;
+            try {
+                initIfNeeded(p);
+                java.nio.ByteBuffer b = p.buf;
+                int n = b.getInt(0);
+                int headerBase = 8;
+                for (int idx=0; idx<n; idx++){
+                    int off = b.getInt(headerBase + idx*4);
+                    if (off <= 0) continue;
+                    Record r = readRecord(b, off, new RID(pid, idx));
+                    if (pred.test(r)){
+                        Record nr = transform.apply(r);
+                        if (tryReplaceInSlot(p, idx, nr)) onUpdate.accept(r, new Record(nr.values, r.rid));
+                        else { moved.add(nr); movedFrom.add(r); }
+                        dirty=true;
+                        updated++;
+                    }
                 }
+                if (dirty) free = freeSpace(p);
+            } finally {
+                unpin(p, dirty);
             }
-            if (dirty) fm.writePage(tableId, p);
+            if (dirty) fsm.update(pid, free);
+        }
+        for (int i = 0; i < moved.size(); i++){
+            Record nr = moved.get(i);
+            onUpdate.accept(movedFrom.get(i), new Record(nr.values, insert(nr)));
         }
         return updated;
     }
 
+    // 行数的估计：只读第一页和最后一页，按第一页的存活记录数外推中间各页，优化器选连接方法用
+    public long estimateRows(){
+        int pages = numPages();
+        if (pages == 0) return 0;
+        long first = liveSlots(0);
+        return pages == 1 ? first : first * (pages - 1) + liveSlots(pages - 1);
+    }
+
+    private int liveSlots(int pid){
+        Page p = pin(pid);
+        try {
+            ByteBuffer b = p.buf;
+            int n = b.getInt(0), live = 0;
+            if (n < 0 || n > 100000) return 0;
+            for (int i=0; i<n; i++) if (b.getInt(8 + i*4) > 0) live++;
+            return live;
+        } finally {
+            unpin(p, false);
+        }
+    }
+
+    // 逐页扫描：每页只在读出存活记录期间 pin 住，迭代器中途放弃也不会泄漏 pin；
+    // 返回的记录带 RID，可以再用 fetch / delete / update 定位
     public Iterable<Record> scan(){
         return () -> new Iterator<Record>(){
-            int pageCount = numPages();
-            int page = 0;
+            final int pageCount = numPages();
+            int page = -1;
+            final List<Record> buffered = new ArrayList<>();
             int idx = 0;
-            Page cur = pageCount>0 ? loadPage(0) : null;
-            int n = cur==null?0:cur.buf.getInt(0);
             @Override public boolean hasNext(){
-                while (true){
-                    if (cur==null) return false;
-                    if (idx < n){
-                        int off = cur.buf.getInt(8 + idx*4);
-                        if (off>0) return true;
-                        idx++;
-                        continue;
-                    }
-                    page++;
-                    if (page>=pageCount) return false;
-                    cur = loadPage(page);
-                    n = cur.buf.getInt(0);
-                    idx = 0;
+                while (idx >= buffered.size()){
+                    if (page + 1 >= pageCount) return false;
+                    loadNext();
                 }
+                return true;
             }
             @Override public Record next(){
-                while (true){
-                    int off = cur.buf.getInt(8 + idx*4);
-                    idx++;
-                    if (off>0) return readRecord(cur.buf, off);
+                if (!hasNext()) throw new NoSuchElementException();
+                return buffered.get(idx++);
+            }
+            private void loadNext(){
+                page++;
+                buffered.clear();
+                idx = 0;
+                Page p = pin(page);
+                try {
+                    ByteBuffer b = p.buf;
+                    int n = b.getInt(0);
+                    if (n < 0 || n > 100000) return;
+                    for (int i=0; i<n; i++){
+                        int off = b.getInt(8 + i*4);
+                        if (off>0) buffered.add(readRecord(b, off, new RID(page, i)));
+                    }
+                } finally {
+                    unpin(p, false);
                 }
             }
         };
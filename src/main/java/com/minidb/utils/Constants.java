@@ -26,6 +26,9 @@ public final class Constants {
     /** 日志目录名称 */
     public static final String LOG_DIR = "logs";
     
+    /** 同时保持打开的数据文件句柄上限（超出后按LRU关闭） */
+    public static final int DEFAULT_MAX_OPEN_FILES = 64;
+    
     // ========== 缓存相关常量 ==========
     
     /** 默认缓存池大小 */
@@ -37,6 +40,18 @@ public final class Constants {
     /** 最大缓存池大小 */
     public static final int MAX_BUFFER_POOL_SIZE = 1024;
     
+    /** 缓存池默认分片数（每个分片独立加锁） */
+    public static final int DEFAULT_BUFFER_POOL_SHARDS = 4;
+    
+    /** 默认脏页比例：超过后由后台线程写回 */
+    public static final double DEFAULT_DIRTY_PAGE_RATIO = 0.5;
+    
+    /** LRU-K 替换策略中的 K（按倒数第 K 次访问时间淘汰） */
+    public static final int LRU_K = 2;
+    
+    /** 后台刷脏线程的检查间隔（毫秒） */
+    public static final long FLUSH_INTERVAL_MS = 1000;
+    
     // ========== B+树相关常量 ==========
     
     /** B+树的默认阶数 */
@@ -48,6 +63,23 @@ public final class Constants {
     /** B+树的最大阶数 */
     public static final int MAX_BPLUS_TREE_ORDER = 10;
     
+    /** 建索引时批量装载的默认填充因子（每页装到的比例，留出余量给后续插入） */
+    public static final double DEFAULT_INDEX_FILL_FACTOR = 0.9;
+    
+    /** 建索引外部排序时内存中一个顺串的最大项数，超出后写成临时文件 */
+    public static final int INDEX_SORT_RUN_ENTRIES = 200_000;
+    
+    // ========== 查询执行相关常量 ==========
+    
+    /** 哈希连接建表侧在内存中最多放的行数，超出后按键分区写成临时文件 */
+    public static final int HASH_JOIN_MEMORY_ROWS = 200_000;
+    
+    /** 哈希连接落盘时每层分出的分区数 */
+    public static final int HASH_JOIN_FANOUT = 16;
+    
+    /** 数据库目录下放查询临时文件的子目录 */
+    public static final String TEMP_DIR = "tmp";
+    
     // ========== 事务相关常量 ==========
     
     /** 事务超时时间（毫秒） */
@@ -77,12 +109,18 @@ public final class Constants {
     /** 表文件扩展名 */
     public static final String TABLE_FILE_EXTENSION = ".dat";
     
+    /** 空闲空间映射文件扩展名 */
+    public static final String FSM_FILE_EXTENSION = ".fsm";
+    
     /** 元数据文件扩展名 */
     public static final String METADATA_FILE_EXTENSION = ".meta";
     
     /** 索引文件扩展名 */
     public static final String INDEX_FILE_EXTENSION = ".idx";
     
+    /** 索引元数据文件名（在索引目录下，记录每个索引的定义和根页号） */
+    public static final String INDEX_METADATA_FILE = "indexes" + METADATA_FILE_EXTENSION;
+    
     // ========== 错误消息常量 ==========
     
     /** 通用错误消息前缀 */
@@ -2,6 +2,7 @@ package com.minidb;
 
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import java.nio.file.*;
 import com.minidb.catalog.*;
 import com.minidb.engine.Executor;
@@ -151,4 +152,461 @@ public class ExtensionTest {
         assertTrue(sexpr.contains("(Join"));
         assertTrue(sexpr.contains("(SeqScan"));
     }
+    
+    @Test
+    public void testIndexScanChosenByPlanner(@TempDir Path dbDir) {
+        Catalog catalog = new Catalog(dbDir);
+        FileManager fm = new FileManager(dbDir);
+        BufferPool bp = new BufferPool(16);
+        Executor exec = new Executor(catalog, fm, bp);
+        
+        exec.exec(new Parser(new Lexer("CREATE TABLE people(id INT, name TEXT);").lex()).parseStmt());
+        StringBuilder sql = new StringBuilder("INSERT INTO people VALUES ");
+        for (int i = 0; i < 200; i++) sql.append(i == 0 ? "" : ", ").append("(").append(i).append(", 'n").append(i).append("')");
+        exec.exec(new Parser(new Lexer(sql + ";").lex()).parseStmt());
+        exec.exec(new Parser(new Lexer("CREATE INDEX people_id ON people(id);").lex()).parseStmt());
+        exec.exec(new Parser(new Lexer("CREATE INDEX people_name ON people(name);").lex()).parseStmt());
+        com.minidb.index.IndexManager indexes = new com.minidb.index.IndexManager(catalog, fm, bp);
+        
+        // 等值：区间完全覆盖条件，不再需要 Filter
+        String tree = plan("SELECT name FROM people WHERE id = 42;", catalog, indexes);
+        assertTrue(tree.contains("IndexScan(table=people, index=people_id, id in [42, 42])"), tree);
+        assertFalse(tree.contains("Filter"), tree);
+        assertEquals(java.util.List.of(java.util.List.of("n42")), query(exec, "SELECT name FROM people WHERE id = 42;").rows);
+        
+        // AND 起来的范围合并成一个区间，常量在左边也可以
+        assertTrue(plan("SELECT * FROM people WHERE id >= 10 AND 20 > id;", catalog, indexes).contains("id in [10, 20)"));
+        assertEquals(10, query(exec, "SELECT * FROM people WHERE id >= 10 AND 20 > id;").rows.size());
+        assertEquals(49, query(exec, "SELECT * FROM people WHERE 150 < id;").rows.size());
+        assertEquals(0, query(exec, "SELECT * FROM people WHERE id > 50 AND id < 40;").rows.size());
+        
+        // 前缀 LIKE 走 name 索引，模式和 id 条件留作剩余过滤
+        tree = plan("SELECT id FROM people WHERE name LIKE 'n1%' AND id > 100;", catalog, indexes);
+        assertTrue(tree.contains("index=people_name, name in ['n1', 'n2')"), tree);
+        assertTrue(tree.contains("Filter"), tree);
+        assertEquals(99, query(exec, "SELECT id FROM people WHERE name LIKE 'n1%' AND id > 100;").rows.size());
+        assertEquals(1 + 10 + 100, query(exec, "SELECT id FROM people WHERE name LIKE 'n1%';").rows.size());
+        assertEquals(9, query(exec, "SELECT id FROM people WHERE name LIKE 'n_5';").rows.size()); // n15 .. n95
+        
+        // 用不上索引的条件仍然是 SeqScan
+        assertTrue(plan("SELECT * FROM people WHERE name LIKE '%5';", catalog, indexes).contains("SeqScan"));
+        assertTrue(plan("SELECT * FROM people WHERE id = 1 OR id = 2;", catalog, indexes).contains("SeqScan"));
+        assertTrue(plan("SELECT * FROM people WHERE id = 'x';", catalog, indexes).contains("SeqScan"));
+        assertEquals(2, query(exec, "SELECT * FROM people WHERE id = 1 OR id = 2;").rows.size());
+    }
+    
+    @Test
+    public void testIndexesMaintainedByDml(@TempDir Path dbDir) {
+        Catalog catalog = new Catalog(dbDir);
+        FileManager fm = new FileManager(dbDir);
+        BufferPool bp = new BufferPool(16);
+        Executor exec = new Executor(catalog, fm, bp);
+        
+        exec.exec(new Parser(new Lexer("CREATE TABLE items(id INT, tag TEXT);").lex()).parseStmt());
+        exec.exec(new Parser(new Lexer("CREATE INDEX items_id ON items(id);").lex()).parseStmt());
+        exec.exec(new Parser(new Lexer("CREATE INDEX items_tag ON items(tag);").lex()).parseStmt());
+        // 建索引之后插入的行也能按索引查到
+        StringBuilder sql = new StringBuilder("INSERT INTO items VALUES ");
+        for (int i = 0; i < 300; i++) sql.append(i == 0 ? "" : ", ").append("(").append(i).append(", 't").append(i % 3).append("')");
+        exec.exec(new Parser(new Lexer(sql + ";").lex()).parseStmt());
+        assertEquals(1, query(exec, "SELECT * FROM items WHERE id = 150;").rows.size());
+        assertEquals(100, query(exec, "SELECT * FROM items WHERE tag = 't1';").rows.size());
+        
+        // UPDATE 改了索引列：旧键查不到，新键查得到
+        query(exec, "UPDATE items SET id = 1000 WHERE id = 150;");
+        assertEquals(0, query(exec, "SELECT * FROM items WHERE id = 150;").rows.size());
+        assertEquals(1, query(exec, "SELECT * FROM items WHERE id = 1000;").rows.size());
+        query(exec, "UPDATE items SET tag = 't9' WHERE tag = 't2';");
+        assertEquals(0, query(exec, "SELECT * FROM items WHERE tag = 't2';").rows.size());
+        assertEquals(100, query(exec, "SELECT * FROM items WHERE tag = 't9';").rows.size());
+        
+        // DELETE 从所有索引里删掉
+        query(exec, "DELETE FROM items WHERE id < 100;");
+        assertEquals(0, query(exec, "SELECT * FROM items WHERE id >= 0 AND id < 100;").rows.size());
+        assertEquals(67, query(exec, "SELECT * FROM items WHERE tag = 't1';").rows.size());
+        assertEquals(200, query(exec, "SELECT * FROM items WHERE id >= 0;").rows.size());
+        
+        // 删表时连索引一起删，同名新表不会用到旧索引
+        exec.exec(new Parser(new Lexer("DROP TABLE items;").lex()).parseStmt());
+        exec.exec(new Parser(new Lexer("CREATE TABLE items(id INT, tag TEXT);").lex()).parseStmt());
+        exec.exec(new Parser(new Lexer("INSERT INTO items VALUES (1, 'a');").lex()).parseStmt());
+        assertEquals(1, query(exec, "SELECT * FROM items WHERE id = 1;").rows.size());
+        
+        // 多行 INSERT 中有坏行：列数不对时一行都不写；写堆中途失败时已写进堆的行也在索引里
+        exec.exec(new Parser(new Lexer("CREATE INDEX items_id ON items(id);").lex()).parseStmt());
+        assertEquals(Executor.Result.Kind.ERROR, query(exec, "INSERT INTO items VALUES (2, 'b'), (3);").kind);
+        assertEquals(0, query(exec, "SELECT * FROM items WHERE id = 2;").rows.size());
+        String huge = "x".repeat(Constants.PAGE_SIZE);
+        assertThrows(DBException.class, () -> query(exec, "INSERT INTO items VALUES (4, 'd'), (5, '" + huge + "');"));
+        assertEquals(1, query(exec, "SELECT * FROM items WHERE id = 4;").rows.size());
+        assertEquals(2, query(exec, "SELECT * FROM items WHERE id >= 0;").rows.size());
+    }
+    
+    @Test
+    public void testHashIndex(@TempDir Path dbDir) {
+        Catalog catalog = new Catalog(dbDir);
+        FileManager fm = new FileManager(dbDir);
+        BufferPool bp = new BufferPool(16);
+        Executor exec = new Executor(catalog, fm, bp);
+        
+        exec.exec(new Parser(new Lexer("CREATE TABLE sessions(id INT, sid TEXT);").lex()).parseStmt());
+        StringBuilder sql = new StringBuilder("INSERT INTO sessions VALUES ");
+        for (int i = 0; i < 500; i++) sql.append(i == 0 ? "" : ", ").append("(").append(i).append(", 's").append(i).append("')");
+        exec.exec(new Parser(new Lexer(sql + ";").lex()).parseStmt());
+        // USING 写在列表前后都可以
+        assertEquals("Index created: sessions_sid", query(exec, "CREATE INDEX sessions_sid ON sessions USING HASH (sid);").message);
+        assertEquals("Index created: sessions_id", query(exec, "CREATE INDEX sessions_id ON sessions(id) USING hash;").message);
+        assertThrows(ParserException.class, () -> new Parser(new Lexer("CREATE INDEX x ON sessions(id) USING gist;").lex()).parseStmt());
+        com.minidb.index.IndexManager indexes = new com.minidb.index.IndexManager(catalog, fm, bp);
+        assertEquals(com.minidb.index.IndexManager.Kind.HASH, indexes.getIndexKind("sessions_sid"));
+        
+        // 等值走哈希索引，范围条件用不上
+        String tree = plan("SELECT id FROM sessions WHERE sid = 's42';", catalog, indexes);
+        assertTrue(tree.contains("IndexScan(table=sessions, index=sessions_sid, using=HASH, sid in ['s42', 's42'])"), tree);
+        assertEquals(java.util.List.of(java.util.List.of(42)), query(exec, "SELECT id FROM sessions WHERE sid = 's42';").rows);
+        assertTrue(plan("SELECT * FROM sessions WHERE id > 400;", catalog, indexes).contains("SeqScan"));
+        assertTrue(plan("SELECT * FROM sessions WHERE sid LIKE 's4%';", catalog, indexes).contains("SeqScan"));
+        assertEquals(99, query(exec, "SELECT * FROM sessions WHERE id > 400;").rows.size());
+        
+        // DML 同样维护哈希索引
+        query(exec, "UPDATE sessions SET sid = 'moved' WHERE id = 42;");
+        assertEquals(0, query(exec, "SELECT * FROM sessions WHERE sid = 's42';").rows.size());
+        assertEquals(1, query(exec, "SELECT * FROM sessions WHERE sid = 'moved';").rows.size());
+        query(exec, "DELETE FROM sessions WHERE id < 10;");
+        assertEquals(0, query(exec, "SELECT * FROM sessions WHERE id = 5;").rows.size());
+        query(exec, "INSERT INTO sessions VALUES (5, 'again');");
+        assertEquals(java.util.List.of(java.util.List.of(5)), query(exec, "SELECT id FROM sessions WHERE sid = 'again';").rows);
+    }
+    
+    @Test
+    public void testCompositeCoveringIndex(@TempDir Path dbDir) {
+        Catalog catalog = new Catalog(dbDir);
+        FileManager fm = new FileManager(dbDir);
+        BufferPool bp = new BufferPool(16);
+        Executor exec = new Executor(catalog, fm, bp);
+        
+        exec.exec(new Parser(new Lexer("CREATE TABLE orders(cust INT, day INT, amount INT, note TEXT);").lex()).parseStmt());
+        StringBuilder sql = new StringBuilder("INSERT INTO orders VALUES ");
+        for (int i = 0; i < 400; i++) {
+            sql.append(i == 0 ? "" : ", ").append("(").append(i % 20).append(", ").append(i / 20).append(", ").append(i).append(", 'n").append(i).append("')");
+        }
+        exec.exec(new Parser(new Lexer(sql + ";").lex()).parseStmt());
+        assertEquals("Index created: o_cust_day", query(exec, "CREATE INDEX o_cust_day ON orders(cust, day) INCLUDE (amount);").message);
+        assertTrue(query(exec, "CREATE INDEX o_h ON orders(cust, day) USING HASH;").message.contains("single column"));
+        assertTrue(query(exec, "CREATE INDEX o_dup ON orders(cust) INCLUDE (cust);").message.contains("twice"));
+        com.minidb.index.IndexManager indexes = new com.minidb.index.IndexManager(catalog, fm, bp);
+        assertEquals(java.util.List.of("cust", "day"), indexes.getIndexColumns("o_cust_day"));
+        assertEquals(java.util.List.of("amount"), indexes.getIncludedColumns("o_cust_day"));
+        
+        // 等值前缀加范围：区间覆盖两个条件，查询的列都在索引里，只读索引
+        String tree = plan("SELECT day, amount FROM orders WHERE cust = 7 AND day >= 15;", catalog, indexes);
+        assertTrue(tree.contains("IndexOnlyScan(table=orders, index=o_cust_day, (cust, day) in [(7, 15), (7, +inf)])"), tree);
+        assertFalse(tree.contains("Filter"), tree);
+        assertEquals(java.util.List.of(java.util.List.of(15, 307), java.util.List.of(16, 327), java.util.List.of(17, 347),
+                java.util.List.of(18, 367), java.util.List.of(19, 387)),
+                query(exec, "SELECT day, amount FROM orders WHERE cust = 7 AND day >= 15;").rows);
+        // 只有第一列有条件，后面的列照样扫；INCLUDE 列的条件留作剩余过滤
+        assertEquals(2, query(exec, "SELECT amount FROM orders WHERE cust = 3 AND amount > 350;").rows.size());
+        assertTrue(plan("SELECT amount FROM orders WHERE cust = 3 AND amount > 350;", catalog, indexes).contains("Filter"));
+        // 第一列没有条件：扫整个索引再过滤，仍然不回表
+        tree = plan("SELECT cust FROM orders WHERE day = 4;", catalog, indexes);
+        assertTrue(tree.contains("IndexOnlyScan(table=orders, index=o_cust_day, (cust, day) in (-inf, +inf))"), tree);
+        assertEquals(20, query(exec, "SELECT cust FROM orders WHERE day = 4;").rows.size());
+        // 要用 note 就得回表
+        tree = plan("SELECT note FROM orders WHERE cust = 7 AND day = 3;", catalog, indexes);
+        assertTrue(tree.contains("IndexScan(table=orders, index=o_cust_day, (cust, day) in [(7, 3), (7, 3)])"), tree);
+        assertEquals(java.util.List.of(java.util.List.of("n67")), query(exec, "SELECT note FROM orders WHERE cust = 7 AND day = 3;").rows);
+        
+        // INCLUDE 列变了也要维护索引
+        query(exec, "UPDATE orders SET amount = 999 WHERE cust = 7 AND day = 3;");
+        assertEquals(java.util.List.of(java.util.List.of(999)), query(exec, "SELECT amount FROM orders WHERE cust = 7 AND day = 3;").rows);
+        query(exec, "DELETE FROM orders WHERE day > 10;");
+        assertEquals(11, query(exec, "SELECT amount FROM orders WHERE cust = 7 AND day >= 0;").rows.size());
+        
+        // 堆文件没了，index-only 查询照样回答
+        TableInfo t = catalog.getTable("orders");
+        bp.discard(t.tableId);
+        fm.deleteTable(t.tableId);
+        assertEquals(0, query(exec, "SELECT * FROM orders;").rows.size());
+        assertEquals(java.util.List.of(java.util.List.of(999)), query(exec, "SELECT amount FROM orders WHERE cust = 7 AND day = 3;").rows);
+    }
+    
+    @Test
+    public void testStreamingSelect(@TempDir Path dbDir) {
+        Catalog catalog = new Catalog(dbDir);
+        FileManager fm = new FileManager(dbDir);
+        BufferPool bp = new BufferPool(8);
+        Executor exec = new Executor(catalog, fm, bp);
+        
+        exec.exec(new Parser(new Lexer("CREATE TABLE big(id INT, pad TEXT);").lex()).parseStmt());
+        for (int batch = 0; batch < 10; batch++) {
+            StringBuilder sql = new StringBuilder("INSERT INTO big VALUES ");
+            for (int i = 0; i < 300; i++) {
+                sql.append(i == 0 ? "" : ", ").append("(").append(batch * 300 + i).append(", '").append("x".repeat(100)).append("')");
+            }
+            exec.exec(new Parser(new Lexer(sql + ";").lex()).parseStmt());
+        }
+        
+        // 表比缓冲池大得多，逐行从算子树拉
+        var result = query(exec, "SELECT id FROM big WHERE id >= 1000;");
+        assertEquals(java.util.List.of("id(INT)"), result.headers);
+        var it = result.cursor();
+        int n = 0, sum = 0;
+        while (it.hasNext()) {
+            sum += (Integer) it.next().get(0);
+            n++;
+        }
+        assertEquals(2000, n);
+        assertEquals((1000 + 2999) * 2000 / 2, sum);
+        assertThrows(DBException.class, () -> result.rows.size());
+        
+        // 只读几行就放弃
+        var partial = query(exec, "SELECT * FROM big;");
+        assertEquals(java.util.List.of(0, "x".repeat(100)), partial.cursor().next());
+        partial.close();
+        
+        // JOIN 也走算子树：嵌套循环，条件在拼接后的行上求值
+        exec.exec(new Parser(new Lexer("CREATE TABLE depts(did INT, dname TEXT);").lex()).parseStmt());
+        exec.exec(new Parser(new Lexer("INSERT INTO depts VALUES (1, 'one'), (2, 'two'), (3, 'three');").lex()).parseStmt());
+        var joined = query(exec, "SELECT id, dname FROM big JOIN depts ON id = did WHERE id < 3;");
+        assertEquals(java.util.List.of(java.util.List.of(1, "one"), java.util.List.of(2, "two")), joined.rows);
+        assertEquals(4, query(exec, "SELECT * FROM big JOIN depts ON did = 2 WHERE id < 2;").rows.get(0).size());
+    }
+    
+    @Test
+    public void testHashJoin(@TempDir Path dbDir) {
+        Catalog catalog = new Catalog(dbDir);
+        FileManager fm = new FileManager(dbDir);
+        BufferPool bp = new BufferPool(16);
+        Executor exec = new Executor(catalog, fm, bp);
+        
+        query(exec, "CREATE TABLE emp(id INT, name TEXT, dept INT);");
+        query(exec, "CREATE TABLE dept(id INT, name TEXT);");
+        query(exec, "INSERT INTO emp VALUES (1, 'ann', 10), (2, 'bob', 20), (3, 'cat', 10), (4, 'dan', 40);");
+        exec.exec(new ast.Insert("emp", java.util.List.of(java.util.Arrays.asList(5, "eve", null))));
+        query(exec, "INSERT INTO dept VALUES (10, 'eng'), (20, 'ops'), (30, 'hr');");
+        
+        // 限定列名和别名；id 两张表都有，不限定就有歧义
+        assertEquals(java.util.Set.of(java.util.List.of("ann", "eng"), java.util.List.of("bob", "ops"), java.util.List.of("cat", "eng")),
+                new java.util.HashSet<>(query(exec, "SELECT e.name, d.name FROM emp e JOIN dept AS d ON e.dept = d.id;").rows));
+        assertEquals(Executor.Result.Kind.ERROR, query(exec, "SELECT id FROM emp JOIN dept ON dept = dept.id;").kind);
+        assertEquals(3, query(exec, "SELECT emp.name FROM emp JOIN dept ON emp.dept = dept.id;").rows.size());
+        
+        // 外连接：没匹配上的一侧补 NULL，NULL 键不匹配任何行
+        var left = query(exec, "SELECT e.name, d.name FROM emp e LEFT JOIN dept d ON e.dept = d.id;").rows;
+        assertEquals(5, left.size());
+        assertTrue(left.contains(java.util.Arrays.asList("dan", null)));
+        assertTrue(left.contains(java.util.Arrays.asList("eve", null)));
+        var right = query(exec, "SELECT e.name, d.name FROM emp e RIGHT JOIN dept d ON e.dept = d.id;").rows;
+        assertEquals(4, right.size());
+        assertTrue(right.contains(java.util.Arrays.asList(null, "hr")));
+        assertEquals(6, query(exec, "SELECT * FROM emp e FULL JOIN dept d ON e.dept = d.id;").rows.size());
+        
+        // 其余 ON 条件参与匹配，WHERE 在连接之后过滤
+        assertEquals(java.util.List.of(java.util.List.of("cat")),
+                query(exec, "SELECT e.name FROM emp e JOIN dept d ON e.dept = d.id AND e.id > 2;").rows);
+        assertEquals(4, query(exec, "SELECT e.name FROM emp e LEFT JOIN dept d ON e.dept = d.id AND d.name = 'ops' WHERE e.id < 5;").rows.size());
+        // TEXT 键和两个键
+        query(exec, "CREATE TABLE alias(who TEXT, nick TEXT, dept INT);");
+        query(exec, "INSERT INTO alias VALUES ('ann', 'a', 10), ('bob', 'b', 99), ('zed', 'z', 10);");
+        assertEquals(2, query(exec, "SELECT nick FROM emp e JOIN alias a ON e.name = a.who;").rows.size());
+        assertEquals(java.util.List.of(java.util.List.of("a")),
+                query(exec, "SELECT nick FROM emp e JOIN alias a ON e.name = a.who AND a.dept = e.dept;").rows);
+        
+        // 大表在左或在右结果一样（建表侧是较小的那张）
+        query(exec, "CREATE TABLE big(k INT, v INT);");
+        for (int batch = 0; batch < 5; batch++) {
+            StringBuilder sql = new StringBuilder("INSERT INTO big VALUES ");
+            for (int i = 0; i < 400; i++) sql.append(i == 0 ? "" : ", ").append("(").append((batch * 400 + i) % 50).append(", ").append(i).append(")");
+            query(exec, sql + ";");
+        }
+        assertEquals(120, query(exec, "SELECT v FROM big b JOIN emp e ON b.k = e.id WHERE e.id <= 3;").rows.size());
+        assertEquals(120, query(exec, "SELECT v FROM emp e JOIN big b ON e.id = b.k WHERE e.id <= 3;").rows.size());
+        assertEquals(1800 + 40, query(exec, "SELECT v FROM big b LEFT JOIN emp e ON b.k = e.id WHERE e.name IS NULL OR e.id = 5;").rows.size());
+    }
+    
+    @Test
+    public void testHybridHashJoinSpills(@TempDir Path spillDir, @TempDir Path dbDir) throws Exception {
+        // 左边键 0..999 每键 3 行；右边键 500..2499 各一行，外加 400 行同一个键（再怎么分也分不开）和 NULL 键
+        java.util.List<java.util.List<Object>> l = new java.util.ArrayList<>(), r = new java.util.ArrayList<>();
+        for (int i = 0; i < 3000; i++) l.add(java.util.List.of(i % 1000, "l" + i));
+        l.add(java.util.Arrays.asList(null, "lnull"));
+        for (int i = 500; i < 2500; i++) r.add(java.util.List.of(i, "r" + i));
+        for (int i = 0; i < 400; i++) r.add(java.util.List.of(7, "skew" + i));
+        r.add(java.util.Arrays.asList(null, "rnull"));
+        
+        for (var type : ast.JoinClause.Type.values()) {
+            for (boolean buildLeft : new boolean[]{false, true}) {
+                var expected = drain(new com.minidb.engine.exec.HashJoinOperator(rows("a", l), rows("b", r), type,
+                        new int[]{0}, new int[]{0}, true, buildLeft, null));
+                var hybrid = new com.minidb.engine.exec.HashJoinOperator(rows("a", l), rows("b", r), type,
+                        new int[]{0}, new int[]{0}, true, buildLeft, null, 50, 4, spillDir);
+                assertEquals(expected, drain(hybrid), type + " build " + (buildLeft ? "left" : "right"));
+                String stats = hybrid.describe();
+                assertTrue(stats.contains("partitions=") && stats.contains("spilledBytes=") && stats.contains("depth=4"), stats);
+                assertFalse(stats.contains("spilledRows=0,"), stats);
+                try (var files = Files.list(spillDir)) {
+                    assertEquals(0, files.count());
+                }
+            }
+        }
+        // 内存放得下时不落盘
+        var small = new com.minidb.engine.exec.HashJoinOperator(rows("a", l), rows("b", r.subList(0, 10)), ast.JoinClause.Type.INNER,
+                new int[]{0}, new int[]{0}, true, false, null, 50, 4, spillDir);
+        assertEquals(30, drain(small).size());
+        assertEquals("HashJoin(type=INNER, build=right, buildRows=10)", small.describe());
+        
+        // 探测边读到一半出错：结果集关掉整棵树，分区文件不留下
+        var failing = new com.minidb.engine.exec.Operator() {
+            final com.minidb.engine.exec.Operator in = rows("a", l);
+            int n;
+            public com.minidb.engine.exec.Layout layout() { return in.layout(); }
+            public void open() { in.open(); n = 0; }
+            public com.minidb.engine.Row next() { if (++n > 2000) throw new DBException("probe failed"); return in.next(); }
+            public void close() { in.close(); }
+        };
+        var broken = new com.minidb.engine.exec.HashJoinOperator(failing, rows("b", r), ast.JoinClause.Type.INNER,
+                new int[]{0}, new int[]{0}, true, false, null, 50, 4, spillDir);
+        broken.open();
+        var cursor = Executor.Result.table(java.util.List.of("k"), broken).cursor();
+        assertThrows(DBException.class, () -> { while (cursor.hasNext()) cursor.next(); });
+        try (var files = Files.list(spillDir)) {
+            assertEquals(0, files.count());
+        }
+        
+        // 执行器返回的结果带着实际的算子树和统计
+        Catalog catalog = new Catalog(dbDir);
+        Executor exec = new Executor(catalog, new FileManager(dbDir), new BufferPool(16));
+        query(exec, "CREATE TABLE a(k INT, v TEXT);");
+        query(exec, "CREATE TABLE b(k INT, w TEXT);");
+        query(exec, "INSERT INTO a VALUES (1, 'x'), (2, 'y');");
+        query(exec, "INSERT INTO b VALUES (1, 'p'), (1, 'q'), (3, 'r');");
+        var result = query(exec, "SELECT v, w FROM a JOIN b ON a.k = b.k;");
+        assertEquals(2, result.rows.size());
+        String plan = result.plan();
+        assertTrue(plan.contains("Project\n  HashJoin(type=INNER, build=left, buildRows=2)"), plan);
+        assertTrue(plan.contains("    SeqScan(table=b, rows=3)"), plan);
+    }
+    
+    @Test
+    public void testJoinMethods(@TempDir Path dbDir) {
+        Catalog catalog = new Catalog(dbDir);
+        Executor exec = new Executor(catalog, new FileManager(dbDir), new BufferPool(32));
+
+        // 外表几行、内表几十页且连接键上有索引：索引嵌套循环，NULL 键不查
+        query(exec, "CREATE TABLE small(k INT, tag TEXT);");
+        query(exec, "INSERT INTO small VALUES (1, 'a'), (2, 'b'), (2, 'bb'), (99, 'none');");
+        exec.exec(new ast.Insert("small", java.util.List.of(java.util.Arrays.asList(null, "null"))));
+        query(exec, "CREATE TABLE big(k INT, pad TEXT);");
+        for (int batch = 0; batch < 10; batch++) {
+            StringBuilder sql = new StringBuilder("INSERT INTO big VALUES ");
+            for (int i = 0; i < 300; i++) {
+                sql.append(i == 0 ? "" : ", ").append("(").append((batch * 300 + i) % 1000).append(", 'p").append(batch * 300 + i).append("x".repeat(40)).append("')");
+            }
+            query(exec, sql + ";");
+        }
+        query(exec, "CREATE INDEX big_k ON big(k);");
+        String nested = "SELECT s.tag, b.pad FROM small s %s JOIN big b ON s.k <= b.k AND s.k >= b.k;";
+        var inner = query(exec, "SELECT s.tag, b.pad FROM small s JOIN big b ON s.k = b.k;");
+        assertEquals(sorted(query(exec, String.format(nested, "")).rows), sorted(inner.rows));
+        assertEquals(12, inner.rows.size());
+        assertTrue(inner.plan().contains("IndexNestedLoopJoin(type=INNER, inner=IndexLookup(table=big, index=big_k), lookups=4, fetched=12)"), inner.plan());
+        var left = query(exec, "SELECT s.tag, b.pad FROM small s LEFT JOIN big b ON s.k = b.k;");
+        assertEquals(sorted(query(exec, String.format(nested, "LEFT")).rows), sorted(left.rows));
+        assertEquals(13, left.rows.size());
+        // 内表没被查到的行无从得知，RIGHT 只能用哈希连接
+        var right = query(exec, "SELECT s.tag, b.pad FROM small s RIGHT JOIN big b ON s.k = b.k;");
+        assertEquals(3003, right.rows.size());
+        assertTrue(right.plan().contains("HashJoin(type=RIGHT"), right.plan());
+
+        // 两边都有以连接键开头、覆盖查询列的 B+ 树索引：按索引顺序归并，只读索引不回表
+        query(exec, "CREATE TABLE ta(k INT, v TEXT, pad TEXT);");
+        query(exec, "CREATE TABLE tb(k INT, w TEXT, pad TEXT);");
+        StringBuilder ta = new StringBuilder("INSERT INTO ta VALUES "), tb = new StringBuilder("INSERT INTO tb VALUES ");
+        for (int i = 0; i < 600; i++) ta.append(i == 0 ? "" : ", ").append("(").append(i % 300).append(", 'v").append(i).append("', '").append("x".repeat(200)).append("')");
+        for (int i = 0; i < 300; i++) tb.append(i == 0 ? "" : ", ").append("(").append(150 + i).append(", 'w").append(i % 7).append("', '").append("y".repeat(200)).append("')");
+        query(exec, ta + ";");
+        query(exec, tb + ";");
+        exec.exec(new ast.Insert("ta", java.util.List.of(java.util.Arrays.asList(null, "vnull", ""))));
+        exec.exec(new ast.Insert("tb", java.util.List.of(java.util.Arrays.asList(null, "wnull", ""))));
+        query(exec, "CREATE INDEX ta_k ON ta(k) INCLUDE (v);");
+        query(exec, "CREATE INDEX tb_k ON tb(k) INCLUDE (w);");
+        for (String type : new String[]{"", "LEFT", "RIGHT", "FULL"}) {
+            var merged = query(exec, "SELECT ta.v, tb.w FROM ta " + type + " JOIN tb ON ta.k = tb.k;");
+            var expected = query(exec, "SELECT ta.v, tb.w FROM ta " + type + " JOIN tb ON ta.k <= tb.k AND ta.k >= tb.k;");
+            assertEquals(sorted(expected.rows), sorted(merged.rows), type);
+            String plan = merged.plan();
+            assertTrue(plan.contains("MergeJoin(type=" + (type.isEmpty() ? "INNER" : type) + ", groups=300)"), plan);
+            assertTrue(plan.contains("IndexOnlyScan(table=ta, index=ta_k") && plan.contains("IndexOnlyScan(table=tb, index=tb_k"), plan);
+        }
+        // 剩余条件参与匹配
+        var residual = query(exec, "SELECT ta.v, tb.w FROM ta LEFT JOIN tb ON ta.k = tb.k AND tb.w = 'w3';");
+        assertEquals(sorted(query(exec, "SELECT ta.v, tb.w FROM ta LEFT JOIN tb ON ta.k <= tb.k AND ta.k >= tb.k AND tb.w = 'w3';").rows),
+                sorted(residual.rows));
+        assertTrue(residual.plan().contains("MergeJoin"), residual.plan());
+        // 要读 pad 时索引不覆盖，每行回表比哈希连接贵
+        assertTrue(query(exec, "SELECT ta.pad FROM ta JOIN tb ON ta.k = tb.k;").plan().contains("HashJoin"));
+    }
+
+    @Test
+    public void testCompiledPredicates(@TempDir Path dbDir) {
+        Executor exec = new Executor(new Catalog(dbDir), new FileManager(dbDir), new BufferPool(16));
+        query(exec, "CREATE TABLE t(id INT, a INT, s TEXT);");
+        query(exec, "INSERT INTO t VALUES (1, 5, 'apple'), (2, 10, 'banana'), (3, 5, 'cherry');");
+        exec.exec(new ast.Insert("t", java.util.List.of(java.util.List.of(4, -3, "apricot"), java.util.Arrays.asList(5, null, null))));
+
+        // 列和常量、列和列、常量在左边
+        assertEquals(java.util.List.of(java.util.List.of(1), java.util.List.of(3)), query(exec, "SELECT id FROM t WHERE a = 5;").rows);
+        assertEquals(java.util.List.of(java.util.List.of(4)), query(exec, "SELECT id FROM t WHERE 5 > a;").rows);
+        assertEquals(java.util.List.of(java.util.List.of(2)), query(exec, "SELECT id FROM t WHERE a > id AND a = 10;").rows);
+        assertEquals(java.util.List.of(java.util.List.of(1), java.util.List.of(4)), query(exec, "SELECT id FROM t WHERE s < 'b';").rows);
+        assertEquals(java.util.List.of(java.util.List.of(4)), query(exec, "SELECT id FROM t WHERE s LIKE 'ap%t';").rows);
+        // NULL：比较为假，!= 对一边是 NULL 的行为真
+        assertEquals(4, query(exec, "SELECT id FROM t WHERE a < 100;").rows.size());
+        assertEquals(5, query(exec, "SELECT id FROM t WHERE a != 7;").rows.size());
+        assertEquals(java.util.List.of(java.util.List.of(5)), query(exec, "SELECT id FROM t WHERE s IS NULL AND NOT a = 1;").rows);
+        assertEquals(3, query(exec, "SELECT id FROM t WHERE a < 0 OR s LIKE '%an%' OR s IS NULL;").rows.size());
+        // 类型不同的两边按字符串比
+        assertEquals(java.util.List.of(java.util.List.of(2)), query(exec, "SELECT id FROM t WHERE a = '10';").rows);
+
+        // UPDATE / DELETE 也用编译好的条件和值
+        assertEquals("Updated 2 row(s).", query(exec, "UPDATE t SET s = 'five', id = 50 WHERE a = 5;").message);
+        assertEquals(java.util.List.of(java.util.List.of(50), java.util.List.of(50)), query(exec, "SELECT id FROM t WHERE s = 'five';").rows);
+        assertEquals("Deleted 1 row(s).", query(exec, "DELETE FROM t WHERE s IS NULL;").message);
+        assertEquals(Executor.Result.Kind.ERROR, query(exec, "SELECT id FROM t WHERE nosuch = 1;").kind);
+    }
+
+    private static java.util.List<String> sorted(java.util.List<java.util.List<Object>> rows) {
+        java.util.List<String> out = new java.util.ArrayList<>();
+        for (var row : rows) out.add(row.toString());
+        java.util.Collections.sort(out);
+        return out;
+    }
+
+    private static com.minidb.engine.exec.Operator rows(String table, java.util.List<java.util.List<Object>> values) {
+        Schema schema = new Schema(java.util.List.of(new Column("k", Column.Type.INT), new Column("v", Column.Type.TEXT)));
+        java.util.List<com.minidb.storage.Record> records = new java.util.ArrayList<>();
+        for (var v : values) records.add(new com.minidb.storage.Record(v));
+        return new com.minidb.engine.exec.ScanOperator("SeqScan(table=" + table + ")",
+                com.minidb.engine.exec.Layout.of(table, schema), records);
+    }
+    
+    // 全部输出行，排好序便于比较
+    private static java.util.List<String> drain(com.minidb.engine.exec.Operator op) {
+        java.util.List<String> out = new java.util.ArrayList<>();
+        op.open();
+        for (var row = op.next(); row != null; row = op.next()) out.add(row.values().toString());
+        op.close();
+        java.util.Collections.sort(out);
+        return out;
+    }
+    
+        private static String plan(String sql, Catalog catalog, com.minidb.index.IndexManager indexes) {
+        var select = (ast.Select) new Parser(new Lexer(sql).lex()).parseStmt();
+        return Planner.toTree(Planner.plan(select, catalog, indexes));
+    }
+    
+    private static Executor.Result query(Executor exec, String sql) {
+        return exec.exec(new Parser(new Lexer(sql).lex()).parseStmt());
+    }
 }
@@ -0,0 +1,779 @@
+package com.minidb;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.*;
+import java.util.*;
+import com.minidb.catalog.*;
+import com.minidb.storage.*;
+import com.minidb.utils.Constants;
+
+public class StorageTest {
+
+    private static Schema schema() {
+        return new Schema(List.of(new Column("id", Column.Type.INT), new Column("name", Column.Type.TEXT)));
+    }
+
+    private static int count(TableHeap heap) {
+        int n = 0;
+        for (com.minidb.storage.Record r : heap.scan()) n++;
+        return n;
+    }
+
+    @Test
+    public void testChannelPoolEvictsAndReopens(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir, 3);
+        // 写 8 个表，每表两页：打开的通道数不超过上限，被关掉的通道下次用时重新打开
+        for (int round = 0; round < 2; round++) {
+            for (int t = 1; t <= 8; t++) {
+                byte[] data = new byte[Constants.PAGE_SIZE];
+                data[0] = (byte) t; data[1] = (byte) round;
+                fm.writePage(t, new Page(round, data));
+                assertTrue(fm.openFiles() <= 3, "open=" + fm.openFiles());
+            }
+        }
+        assertEquals(16, fm.opens());
+        for (int t = 1; t <= 8; t++) {
+            assertEquals(2, fm.numPages(t));
+            for (int p = 0; p < 2; p++) {
+                Page page = fm.readPage(t, p);
+                assertEquals(t, page.buf.get(0));
+                assertEquals(p, page.buf.get(1));
+            }
+        }
+        assertEquals(3, fm.openFiles());
+
+        // 按访问顺序淘汰：表 1、7 要重新打开，最近用过的表 8 一直开着
+        long opens = fm.opens();
+        fm.readPage(6, 0);
+        fm.readPage(8, 1);
+        fm.readPage(1, 0);
+        fm.readPage(7, 0);
+        fm.readPage(8, 0);
+        assertEquals(opens + 2, fm.opens());
+
+        // 删表先关掉池里的通道再删文件；之后同号的表从空文件开始
+        fm.deleteTable(8);
+        assertEquals(2, fm.openFiles());
+        assertFalse(Files.exists(dir.resolve("table_8" + Constants.TABLE_FILE_EXTENSION)));
+        assertEquals(0, fm.numPages(8));
+        assertEquals(0, fm.readPage(8, 0).buf.get(0));
+        for (int t = 1; t <= 7; t++) assertEquals(t, fm.readPage(t, 1).buf.get(0));
+        fm.close();
+        assertEquals(0, fm.openFiles());
+    }
+
+    @Test
+    public void testFreeSpaceMapReusesSpace(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(16);
+        TableHeap heap = new TableHeap(1, schema(), fm, bp);
+        for (int i = 0; i < 2000; i++) heap.insert(new com.minidb.storage.Record(List.of(i, "name" + i)));
+        assertEquals(2000, count(heap));
+        int pages = fm.numPages(1);
+
+        // 插入不应逐页扫描：读页次数远小于 行数 × 页数
+        assertTrue(fm.reads() < 2000L * pages / 4, "reads=" + fm.reads());
+
+        // 删除后空间被压缩回收，再插入同样多的行不会扩展文件
+        assertEquals(1000, heap.delete(r -> ((Integer) r.values.get(0)) % 2 == 0));
+        for (int i = 0; i < 1000; i++) heap.insert(new com.minidb.storage.Record(List.of(-i, "name" + i)));
+        assertEquals(2000, count(heap));
+        assertEquals(pages, fm.numPages(1));
+
+        // 检查点后重新打开（冷缓存、新的映射实例），插入仍然正确
+        bp.checkpoint();
+        TableHeap reopened = new TableHeap(1, schema(), new FileManager(dir), new BufferPool(16));
+        reopened.insert(new com.minidb.storage.Record(List.of(5000, "x")));
+        assertEquals(2001, count(reopened));
+    }
+
+    @Test
+    public void testUpdateGrowingRecords(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        TableHeap heap = new TableHeap(1, schema(), fm, new BufferPool(16));
+        for (int i = 0; i < 500; i++) heap.insert(new com.minidb.storage.Record(List.of(i, "a")));
+        int n = heap.update(r -> true, r -> new com.minidb.storage.Record(List.of(r.values.get(0), "a".repeat(40))));
+        assertEquals(500, n);
+        assertEquals(500, count(heap));
+        for (com.minidb.storage.Record r : heap.scan()) assertEquals(40, ((String) r.values.get(1)).length());
+    }
+
+    @Test
+    public void testWriteBackCoalescesPageWrites(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(256, BufferPool.Policy.LRU, fm);
+        TableHeap heap = new TableHeap(1, schema(), fm, bp);
+        for (int i = 0; i < 10000; i++) heap.insert(new com.minidb.storage.Record(List.of(i, "row" + i)));
+        assertEquals(0, fm.writes());
+        bp.checkpoint();
+        int pages = fm.numPages(1);
+        // 每个堆页写一次，再加一个空闲空间映射页
+        assertEquals(pages + 1, fm.writes());
+        assertEquals(0, bp.dirtyPages());
+    }
+
+    @Test
+    public void testEvictionWritesBackDirtyPages(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(4, BufferPool.Policy.FIFO, fm);
+        TableHeap heap = new TableHeap(1, schema(), fm, bp);
+        for (int i = 0; i < 3000; i++) heap.insert(new com.minidb.storage.Record(List.of(i, "row" + i)));
+        assertTrue(bp.evicts() > 0);
+        bp.close();
+        fm.close();
+
+        FileManager fm2 = new FileManager(dir);
+        TableHeap reopened = new TableHeap(1, schema(), fm2, new BufferPool(4, BufferPool.Policy.LRU, fm2));
+        assertEquals(3000, count(reopened));
+    }
+
+    @Test
+    public void testPinnedPagesAreNeverEvicted(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(2, BufferPool.Policy.LRU, fm);
+        Page a = bp.newPage(1);
+        a.buf.putInt(0, 42);
+        Page b = bp.fetchPage(1, 7);
+        // 两个帧都被 pin 住，再取一页必须报错而不是悄悄丢掉正在使用的页
+        assertThrows(com.minidb.utils.DBException.class, () -> bp.fetchPage(1, 8));
+        bp.unpinPage(1, b.pageId, false);
+        Page c = bp.fetchPage(1, 8);
+        assertSame(a, bp.fetchPage(1, a.pageId));
+        assertEquals(2, bp.pinCount(1, a.pageId));
+        bp.unpinPage(1, a.pageId, true);
+        bp.unpinPage(1, a.pageId, false);
+        bp.unpinPage(1, c.pageId, false);
+        assertThrows(com.minidb.utils.DBException.class, () -> bp.unpinPage(1, c.pageId, false));
+
+        // 脏页被淘汰时写回，重新读入内容不变
+        bp.fetchPage(1, 9); bp.unpinPage(1, 9, false);
+        bp.fetchPage(1, 10); bp.unpinPage(1, 10, false);
+        assertEquals(42, bp.fetchPage(1, a.pageId).buf.getInt(0));
+    }
+
+    @Test
+    public void testReplacementPolicies(@TempDir Path dir) {
+        for (BufferPool.Policy policy : BufferPool.Policy.values()) {
+            FileManager fm = new FileManager(dir.resolve(policy.name()));
+            BufferPool bp = new BufferPool(8, policy, fm);
+            TableHeap heap = new TableHeap(1, schema(), fm, bp);
+            for (int i = 0; i < 2000; i++) heap.insert(new com.minidb.storage.Record(List.of(i, "row" + i)));
+            assertEquals(2000, count(heap), policy.name());
+            assertTrue(bp.evicts() > 0, policy.name());
+            assertTrue(bp.size() <= 8, policy.name());
+        }
+    }
+
+    @Test
+    public void testScanResistantPoliciesKeepHotPages(@TempDir Path dir) {
+        for (BufferPool.Policy policy : List.of(BufferPool.Policy.TWO_Q, BufferPool.Policy.LRU_K)) {
+            FileManager fm = new FileManager(dir.resolve(policy.name()));
+            BufferPool bp = new BufferPool(16, policy, fm);
+            // 热点页与一次远大于缓冲池的顺序扫描交替访问，稳定后热点页应一直命中
+            int scanPos = 0;
+            long hotMisses = 0;
+            for (int round = 0; round < 50; round++) {
+                long before = bp.misses();
+                for (int p = 0; p < 4; p++) { bp.fetchPage(1, p); bp.unpinPage(1, p, false); }
+                if (round >= 25) hotMisses += bp.misses() - before;
+                for (int s = 0; s < 14; s++, scanPos++) { bp.fetchPage(2, scanPos); bp.unpinPage(2, scanPos, false); }
+            }
+            assertEquals(0, hotMisses, policy.name());
+        }
+    }
+
+    @Test
+    public void testShardedPoolUnderConcurrentAccess(@TempDir Path dir) throws Exception {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(32, BufferPool.Policy.CLOCK, 4, fm);
+        int threads = 4, pagesPerThread = 32, rounds = 200;
+        // 每个线程只改自己的页（页号模线程数），页数远大于缓冲池，淘汰和写回并发发生
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers.add(new Thread(() -> {
+                try {
+                    for (int r = 0; r < rounds; r++) {
+                        int pid = (r % pagesPerThread) * threads + id;
+                        Page p = bp.fetchPage(1, pid);
+                        p.buf.putInt(0, p.buf.getInt(0) + 1);
+                        bp.unpinPage(1, pid, true);
+                        int other = (r * 7 % pagesPerThread) * threads + (id + 1) % threads;
+                        bp.fetchPage(1, other);
+                        bp.unpinPage(1, other, false);
+                    }
+                } catch (Throwable e) { errors.add(e); }
+            }));
+        }
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+        assertEquals(List.of(), errors);
+        assertTrue(bp.size() <= 32);
+        assertTrue(bp.evicts() > 0);
+        bp.checkpoint();
+
+        BufferPool fresh = new BufferPool(8, BufferPool.Policy.LRU, fm);
+        for (int pid = 0; pid < threads * pagesPerThread; pid++) {
+            assertEquals(rounds / pagesPerThread + (pid / threads < rounds % pagesPerThread ? 1 : 0),
+                    fresh.fetchPage(1, pid).buf.getInt(0), "page " + pid);
+            fresh.unpinPage(1, pid, false);
+        }
+    }
+
+    @Test
+    public void testOffHeapFrames(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(8, BufferPool.Policy.LRU, 2, true, fm);
+        assertTrue(bp.offHeap());
+        TableHeap heap = new TableHeap(1, schema(), fm, bp);
+        for (int i = 0; i < 2000; i++) heap.insert(new com.minidb.storage.Record(List.of(i, "row" + i)));
+        // 删除会压缩页面，更新变长会搬动记录，都直接在堆外帧上进行
+        heap.delete(r -> ((Integer) r.values.get(0)) % 2 == 0);
+        heap.update(r -> true, r -> new com.minidb.storage.Record(List.of(r.values.get(0), "renamed-" + r.values.get(1))));
+        assertEquals(1000, count(heap));
+        assertTrue(bp.evicts() > 0);
+        bp.checkpoint();
+
+        // 堆内缓冲池重新打开，看到的是同样的数据
+        TableHeap reopened = new TableHeap(1, schema(), new FileManager(dir), new BufferPool(16));
+        int n = 0;
+        for (com.minidb.storage.Record r : reopened.scan()) {
+            assertEquals(1, ((Integer) r.values.get(0)) % 2);
+            assertEquals("renamed-row" + r.values.get(0), r.values.get(1));
+            n++;
+        }
+        assertEquals(1000, n);
+    }
+
+    @Test
+    public void testRidFetchDeleteUpdate(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(8, BufferPool.Policy.LRU, fm);
+        TableHeap heap = new TableHeap(1, schema(), fm, bp);
+        List<RID> rids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) rids.add(heap.insert(new com.minidb.storage.Record(List.of(i, "row" + i))));
+        assertEquals(1000, new HashSet<>(rids).size());
+        for (com.minidb.storage.Record r : heap.scan()) assertEquals(rids.get((Integer) r.values.get(0)), r.rid);
+
+        long missesBefore = bp.misses();
+        assertEquals(List.of(500, "row500"), heap.fetch(rids.get(500)).values);
+        assertTrue(bp.misses() - missesBefore <= 1); // 只读一个堆页
+
+        // 删除后同页其他记录被压缩搬动，RID 不变
+        assertTrue(heap.delete(rids.get(10)));
+        assertFalse(heap.delete(rids.get(10)));
+        assertNull(heap.fetch(rids.get(10)));
+        assertEquals(List.of(11, "row11"), heap.fetch(rids.get(11)).values);
+
+        // 变短的更新留在原位，变长到放不下时搬走并返回新的 RID
+        assertEquals(rids.get(20), heap.update(rids.get(20), new com.minidb.storage.Record(List.of(20, "r"))));
+        assertEquals(List.of(20, "r"), heap.fetch(rids.get(20)).values);
+        String big = "x".repeat(3000);
+        RID moved = heap.update(rids.get(30), new com.minidb.storage.Record(List.of(30, big)));
+        assertNotEquals(rids.get(30), moved);
+        assertNull(heap.fetch(rids.get(30)));
+        assertEquals(big, heap.fetch(moved).values.get(1));
+        assertNull(heap.update(rids.get(10), new com.minidb.storage.Record(List.of(10, "gone"))));
+        assertNull(heap.fetch(new RID(999, 0)));
+        assertEquals(999, count(heap));
+    }
+
+    @Test
+    public void testIndexPagesLiveInOwnFile(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(8, BufferPool.Policy.LRU, fm);
+        TableHeap heap = new TableHeap(1, schema(), fm, bp);
+        List<RID> rids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) rids.add(heap.insert(new com.minidb.storage.Record(List.of(i, "row" + i))));
+        int heapPages = fm.numPages(1);
+
+        BPlusTree index = new BPlusTree(1, "id", fm, bp);
+        for (int i = 0; i < 3; i++) index.insert(i, rids.get(i));
+        bp.checkpoint();
+        // 索引页不占堆文件的页号，堆扫描也看不到索引页
+        assertEquals(heapPages, fm.numPages(1));
+        assertEquals(3, count(heap));
+        assertTrue(Files.exists(dir.resolve(com.minidb.utils.Constants.INDEX_DIR).resolve("index_1.idx")));
+        assertEquals(1, fm.numPages(index.fileId()));
+        assertEquals(List.of(rids.get(0)), index.search(0));
+
+        fm.deleteIndex(1);
+        assertFalse(Files.exists(dir.resolve(com.minidb.utils.Constants.INDEX_DIR).resolve("index_1.idx")));
+    }
+
+    @Test
+    public void testBPlusTreeSplitsRecursively(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(64, BufferPool.Policy.LRU, fm);
+        BPlusTree tree = new BPlusTree(1, "id", fm, bp);
+        int n = 100_000;
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) keys.add(i);
+        Collections.shuffle(keys, new Random(7));
+        for (int k : keys) tree.insert(k, new RID(k / 100, k % 100));
+
+        // 一页装几百个 INT 键，十万个键三层就够
+        assertEquals(3, tree.height());
+        assertTrue(fm.numPages(tree.fileId()) < 1000, "pages: " + fm.numPages(tree.fileId()));
+        long reads = 0, lookups = 0;
+        for (int k = 0; k < n; k += 97, lookups++) {
+            long before = bp.hits() + bp.misses();
+            assertEquals(List.of(new RID(k / 100, k % 100)), tree.search(k), "key " + k);
+            long r = bp.hits() + bp.misses() - before;
+            // 每个键只出现一次，点查恰好读 height 页
+            assertEquals(tree.height(), r, "reads for key " + k);
+            reads += r;
+        }
+        assertEquals(lookups * tree.height(), reads);
+        assertEquals(List.of(), tree.search(n));
+
+        // 变长字符串键同样按字节分裂
+        BPlusTree names = new BPlusTree(2, "name", fm, bp);
+        for (int i = 0; i < 20_000; i++) names.insert("name-" + i, new RID(i, 0));
+        assertTrue(names.height() >= 2);
+        for (int i = 0; i < 20_000; i += 101) assertEquals(List.of(new RID(i, 0)), names.search("name-" + i));
+        assertThrows(com.minidb.utils.DBException.class, () -> names.insert("x".repeat(1000), new RID(0, 0)));
+    }
+
+    private static List<Integer> drain(BPlusTree.Cursor c) {
+        List<Integer> keys = new ArrayList<>();
+        while (c.hasNext()) { c.next(); keys.add((Integer) c.key()); }
+        return keys;
+    }
+
+    @Test
+    public void testBPlusTreeRangeCursor(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(16, BufferPool.Policy.LRU, fm);
+        BPlusTree tree = new BPlusTree(1, "id", fm, bp);
+        int n = 5000; // 跨很多个叶子
+        for (int i = n - 1; i >= 0; i--) tree.insert(i, new RID(i, 0));
+        // 一个跨叶子的重复键
+        for (int i = 0; i < 600; i++) tree.insert(2500, new RID(-1, i));
+
+        assertEquals(n + 600, drain(tree.cursor(null, null, false)).size());
+        assertEquals(601, tree.search(2500).size());
+        assertEquals(601 + 2, tree.rangeSearch(2499, 2501).size());
+
+        List<Integer> asc = drain(tree.cursor(BPlusTree.Bound.exclusive(1000), BPlusTree.Bound.inclusive(1005), false));
+        assertEquals(List.of(1001, 1002, 1003, 1004, 1005), asc);
+        List<Integer> desc = drain(tree.cursor(BPlusTree.Bound.inclusive(1000), BPlusTree.Bound.exclusive(1005), true));
+        assertEquals(List.of(1004, 1003, 1002, 1001, 1000), desc);
+        assertEquals(List.of(2501, 2502), drain(tree.cursor(BPlusTree.Bound.exclusive(2500), BPlusTree.Bound.inclusive(2502), false)));
+        assertEquals(List.of(2499, 2498), drain(tree.cursor(BPlusTree.Bound.inclusive(2498), BPlusTree.Bound.exclusive(2500), true)));
+        assertEquals(List.of(n - 1, n - 2), drain(tree.cursor(BPlusTree.Bound.inclusive(n - 2), null, true)));
+        assertEquals(List.of(0, 1), drain(tree.cursor(null, BPlusTree.Bound.exclusive(2), false)));
+        assertEquals(List.of(), drain(tree.cursor(BPlusTree.Bound.exclusive(7), BPlusTree.Bound.exclusive(8), false)));
+
+        List<Integer> all = drain(tree.cursor(null, null, true));
+        for (int i = 1; i < all.size(); i++) assertTrue(all.get(i - 1) >= all.get(i));
+        // 游标只在读叶子时 pin 页，放弃迭代不会占住帧
+        tree.cursor(null, null, false).next();
+        for (int p = 0; p < fm.numPages(tree.fileId()); p++) assertEquals(0, bp.pinCount(tree.fileId(), p));
+    }
+
+    @Test
+    public void testBPlusTreePostingLists(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(16, BufferPool.Policy.LRU, fm);
+        BPlusTree tree = new BPlusTree(1, "status", fm, bp);
+        // 低基数列：10 个键，每个 3000 个 RID，大部分倒排表会溢出
+        int keys = 10, perKey = 3000;
+        for (int i = 0; i < perKey; i++) {
+            for (int k = 0; k < keys; k++) tree.insert(k, new RID(i / 50, (i % 50) * keys + k));
+        }
+        tree.insert(keys, new RID(7, 7)); // 只有一个 RID 的键
+        assertEquals(1, tree.height());
+        // 差分编码：同页相邻 RID 一般一两个字节，远小于每项一个键加 8 字节 RID
+        assertTrue(fm.numPages(tree.fileId()) < keys * perKey * 2 / com.minidb.utils.Constants.PAGE_SIZE + keys + 2,
+                "pages: " + fm.numPages(tree.fileId()));
+
+        for (int k = 0; k < keys; k++) {
+            Set<RID> got = new HashSet<>(tree.search(k));
+            assertEquals(perKey, got.size(), "key " + k);
+            assertTrue(got.contains(new RID(0, k)) && got.contains(new RID((perKey - 1) / 50, ((perKey - 1) % 50) * keys + k)));
+        }
+        assertEquals(List.of(new RID(7, 7)), tree.search(keys));
+        assertEquals(keys * perKey + 1, tree.rangeSearch(0, keys).size());
+
+        // 流式读取：中途放弃不占帧
+        BPlusTree.Cursor c = tree.lookup(3);
+        for (int i = 0; i < 1000; i++) { c.next(); assertEquals(3, c.key()); }
+        for (int p = 0; p < fm.numPages(tree.fileId()); p++) assertEquals(0, bp.pinCount(tree.fileId(), p));
+
+        // 按 RID 删除：删到只剩几个时搬回叶子，全部删掉后键消失
+        assertFalse(tree.delete(4, new RID(9999, 0)));
+        for (int i = 0; i < perKey - 3; i++) assertTrue(tree.delete(4, new RID(i / 50, (i % 50) * keys + 4)));
+        assertEquals(3, tree.search(4).size());
+        for (int i = perKey - 3; i < perKey; i++) assertTrue(tree.delete(4, new RID(i / 50, (i % 50) * keys + 4)));
+        assertEquals(List.of(), tree.search(4));
+        assertEquals(2 * perKey, tree.rangeSearch(3, 5).size());
+        tree.delete(5);
+        assertEquals(List.of(), tree.search(5));
+        assertEquals(perKey, tree.search(6).size());
+    }
+
+    @Test
+    public void testPostingListBatchDeleteReusesPages(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(64, BufferPool.Policy.LRU, fm);
+        BPlusTree tree = new BPlusTree(1, "dept", fm, bp);
+        tree.insert("a", new RID(0, 0));
+        for (int i = 0; i < 20_000; i++) tree.insert("x", new RID(i, 0));
+        tree.insert("z", new RID(0, 1));
+        int pages = fm.numPages(tree.fileId());
+        assertTrue(pages > 10, "pages: " + pages);
+
+        // 一条语句删掉低基数键的一半 RID：溢出链只读写一次，不是每个 RID 一遍
+        List<BPlusTree.Entry> half = new ArrayList<>();
+        for (int i = 0; i < 20_000; i += 2) half.add(new BPlusTree.Entry("x", new RID(i, 0)));
+        long before = bp.hits() + bp.misses();
+        assertEquals(10_000, tree.deleteBatch(half));
+        assertTrue(bp.hits() + bp.misses() - before < 3L * pages, "page accesses: " + (bp.hits() + bp.misses() - before));
+        assertEquals(10_000, tree.search("x").size());
+        assertEquals(List.of(new RID(1, 0)), tree.search("x").subList(0, 1));
+
+        // 删到只剩三个：搬回叶子，整条溢出链进空闲页链
+        List<BPlusTree.Entry> rest = new ArrayList<>();
+        for (int i = 1; i < 20_000 - 6; i += 2) rest.add(new BPlusTree.Entry("x", new RID(i, 0)));
+        assertEquals(10_000 - 3, tree.deleteBatch(rest));
+        assertEquals(List.of(new RID(19_995, 0), new RID(19_997, 0), new RID(19_999, 0)), tree.search("x"));
+        assertNotEquals(-1, tree.freePageHead());
+
+        // 重新打开后（空闲页链头由调用方保存），另一个键长出同样长的倒排表不会扩大文件
+        bp.checkpoint();
+        FileManager fm2 = new FileManager(dir);
+        BufferPool bp2 = new BufferPool(64, BufferPool.Policy.LRU, fm2);
+        BPlusTree reopened = new BPlusTree(1, "dept", fm2, bp2, tree.rootPageId(), tree.height(), tree.freePageHead());
+        for (int i = 0; i < 20_000; i++) reopened.insert("y", new RID(i, 1));
+        assertEquals(pages, fm2.numPages(reopened.fileId()));
+        assertEquals(20_000, reopened.search("y").size());
+        assertEquals(3, reopened.search("x").size());
+        assertEquals(List.of(new RID(0, 1)), reopened.search("z"));
+    }
+
+    @Test
+    public void testPostingPayloads(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(64, BufferPool.Policy.LRU, fm);
+        BPlusTree tree = new BPlusTree(1, "cust", fm, bp);
+        // INCLUDE 值跟在 RID 后面，键只有 cust：三个键各 2000 项，倒排表溢出
+        List<BPlusTree.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 6000; i++) entries.add(new BPlusTree.Entry(i % 3, new RID(i, 0), List.of(i, "p" + i)));
+        tree.insertBatch(entries);
+        assertEquals(1, tree.height());
+        BPlusTree.Cursor c = tree.lookup(1);
+        int n = 0;
+        while (c.hasNext()) {
+            RID rid = c.next();
+            assertEquals(List.of(rid.pageId, "p" + rid.pageId), c.payload());
+            n++;
+        }
+        assertEquals(2000, n);
+
+        // 删到搬回叶子，payload 跟着 RID 走；同一个 (key, RID) 再插入时换成新的 payload
+        List<BPlusTree.Entry> gone = new ArrayList<>();
+        for (int i = 1; i < 5990; i += 3) gone.add(new BPlusTree.Entry(1, new RID(i, 0)));
+        assertEquals(1997, tree.deleteBatch(gone));
+        // 同一个键的项要么都带 payload，要么都不带
+        assertThrows(com.minidb.utils.DBException.class, () -> tree.insert(2, new RID(0, 0)));
+        tree.insertBatch(List.of(new BPlusTree.Entry(1, new RID(5992, 0), List.of(-1, "new"))));
+        List<Object> payloads = new ArrayList<>();
+        c = tree.lookup(1);
+        while (c.hasNext()) { c.next(); payloads.add(c.payload()); }
+        assertEquals(List.of(List.of(-1, "new"), List.of(5995, "p5995"), List.of(5998, "p5998")), payloads);
+    }
+
+    @Test
+    public void testBPlusTreeBulkLoad(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(64, BufferPool.Policy.LRU, fm);
+        int n = 60_000;
+        List<BPlusTree.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < n; i++) entries.add(new BPlusTree.Entry(i, new RID(i / 100, i % 100)));
+        for (int i = 0; i < 500; i++) entries.add(30_000 + 1, new BPlusTree.Entry(30_000, new RID(9000, i)));
+
+        BPlusTree packed = new BPlusTree(1, "id", fm, bp);
+        packed.bulkLoad(entries.iterator(), 1.0);
+        BPlusTree inserted = new BPlusTree(2, "id", fm, bp);
+        List<BPlusTree.Entry> shuffled = new ArrayList<>(entries);
+        Collections.shuffle(shuffled, new Random(3));
+        for (BPlusTree.Entry e : shuffled) inserted.insert(e.key, e.rid);
+        // 装满的叶子比随机插入分裂出的半满叶子少得多，两百来个叶子一个根就装得下
+        assertEquals(2, packed.height());
+        assertTrue(fm.numPages(packed.fileId()) * 10 < fm.numPages(inserted.fileId()) * 8,
+                fm.numPages(packed.fileId()) + " vs " + fm.numPages(inserted.fileId()));
+        for (int k = 0; k < n; k += 89) assertEquals(List.of(new RID(k / 100, k % 100)), packed.search(k));
+        assertEquals(501, packed.search(30_000).size());
+        assertEquals(n + 500, packed.rangeSearch(0, n).size());
+        assertEquals(n + 500, inserted.rangeSearch(0, n).size());
+
+        // 装载后照常插入、分裂
+        for (int i = n; i < n + 5000; i++) packed.insert(i, new RID(i / 100, i % 100));
+        assertEquals(List.of(new RID((n + 4999) / 100, (n + 4999) % 100)), packed.search(n + 4999));
+        assertEquals(n + 5500, packed.rangeSearch(0, n + 5000).size());
+
+        assertThrows(com.minidb.utils.DBException.class, () -> packed.bulkLoad(entries.iterator(), 1.0));
+        BPlusTree unsorted = new BPlusTree(3, "id", fm, bp);
+        assertThrows(com.minidb.utils.DBException.class, () -> unsorted.bulkLoad(shuffled.iterator(), 0.9));
+    }
+
+    @Test
+    public void testCreateIndexUsesExternalSort(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(32, BufferPool.Policy.LRU, fm);
+        Catalog catalog = new Catalog(dir);
+        TableInfo t = catalog.createTable("t", schema());
+        TableHeap heap = new TableHeap(t.tableId, t.schema, fm, bp);
+        Map<Integer, List<RID>> byKey = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            int key = (i * 7919) % 1000; // 每个键 5 行，堆里乱序
+            byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(heap.insert(new com.minidb.storage.Record(List.of(key, "row" + i))));
+        }
+        // 顺串只有 700 项，迫使排序落盘再归并
+        com.minidb.index.IndexManager im = new com.minidb.index.IndexManager(catalog, fm, bp, 0.7, 700);
+        im.createIndex("t_id", "t", "id");
+        for (int k = 0; k < 1000; k += 37) assertEquals(new HashSet<>(byKey.get(k)), new HashSet<>(im.search("t_id", k)));
+        assertEquals(50, im.rangeSearch("t_id", 10, 19).size());
+        // 临时顺串文件用完即删
+        try (DirectoryStream<Path> runs = Files.newDirectoryStream(dir.resolve(com.minidb.utils.Constants.INDEX_DIR), "sort_*")) {
+            assertFalse(runs.iterator().hasNext());
+        } catch (java.io.IOException e) {
+            fail(e);
+        }
+        assertThrows(com.minidb.utils.DBException.class, () -> new com.minidb.index.IndexManager(catalog, fm, bp, 1.5, 700));
+    }
+
+    @Test
+    public void testIndexesSurviveRestart(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(32, BufferPool.Policy.LRU, fm);
+        Catalog catalog = new Catalog(dir);
+        TableInfo t = catalog.createTable("t", schema());
+        catalog.createTable("u", schema());
+        TableHeap heap = new TableHeap(t.tableId, t.schema, fm, bp);
+        for (int i = 0; i < 100; i++) heap.insert(new com.minidb.storage.Record(List.of(i, "row" + i)));
+        com.minidb.index.IndexManager im = new com.minidb.index.IndexManager(catalog, fm, bp);
+        im.createIndex("t_id", "t", "id");
+        im.createIndex("t_name", "t", "name");
+        im.createIndex("u_id", "u", "id");
+        im.dropIndex("t_name");
+        // 单个叶子的根在插入中分裂，新根页号要写进元数据
+        for (int i = 100; i < 3000; i++) im.insert("t_id", i, heap.insert(new com.minidb.storage.Record(List.of(i, "row" + i))));
+        assertTrue(im.open("t_id").height() > 1);
+        bp.checkpoint();
+
+        FileManager fm2 = new FileManager(dir);
+        BufferPool bp2 = new BufferPool(32, BufferPool.Policy.LRU, fm2);
+        com.minidb.index.IndexManager reopened = new com.minidb.index.IndexManager(new Catalog(dir), fm2, bp2);
+        assertEquals(List.of("t_id"), reopened.getIndexesForTable("T"));
+        assertEquals(List.of("u_id"), reopened.getIndexesForTable("u"));
+        assertEquals("id", reopened.getIndexColumn("t_id"));
+        // 启动时只读元数据，不碰索引页
+        assertEquals(0, bp2.hits() + bp2.misses());
+        TableHeap heap2 = new TableHeap(t.tableId, t.schema, fm2, bp2);
+        for (int k = 0; k < 3000; k += 71) {
+            List<RID> rids = reopened.search("t_id", k);
+            assertEquals(1, rids.size(), "key " + k);
+            assertEquals(k, heap2.fetch(rids.get(0)).values.get(0));
+        }
+        assertEquals(List.of(), reopened.search("u_id", 1));
+        // 新索引号不会和已有（包括删掉的）索引文件冲突
+        reopened.createIndex("t_name", "t", "name");
+        assertEquals(3000, reopened.rangeSearch("t_name", "", "zzz").size());
+        assertEquals(1, reopened.search("t_id", 2999).size());
+    }
+
+    @Test
+    public void testIndexRootDurableWithoutClose(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(256, BufferPool.Policy.LRU, fm);
+        Catalog catalog = new Catalog(dir);
+        TableInfo t = catalog.createTable("t", schema());
+        TableHeap heap = new TableHeap(t.tableId, t.schema, fm, bp);
+        for (int i = 0; i < 2000; i++) heap.insert(new com.minidb.storage.Record(List.of(i, "row" + i)));
+        bp.checkpoint();
+        com.minidb.index.IndexManager im = new com.minidb.index.IndexManager(catalog, fm, bp);
+        im.createIndex("t_id", "t", "id");
+        assertTrue(im.open("t_id").height() > 1);
+
+        // 不 close 就退出：元数据指向的根和下面的页已经写回
+        FileManager fm2 = new FileManager(dir);
+        BufferPool bp2 = new BufferPool(32, BufferPool.Policy.LRU, fm2);
+        com.minidb.index.IndexManager reopened = new com.minidb.index.IndexManager(new Catalog(dir), fm2, bp2);
+        TableHeap heap2 = new TableHeap(t.tableId, t.schema, fm2, bp2);
+        reopened.insert("t_id", 2000, heap2.insert(new com.minidb.storage.Record(List.of(2000, "row2000"))));
+        assertEquals(1, reopened.search("t_id", 1234).size());
+        assertEquals(1, reopened.search("t_id", 2000).size());
+
+        // 元数据指向零页时报损坏，而不是越界
+        BPlusTree broken = new BPlusTree(9, "id", fm2, bp2, 0, 2);
+        com.minidb.utils.DBException e = assertThrows(com.minidb.utils.DBException.class, () -> broken.search(1));
+        assertTrue(e.getMessage().contains("Corrupt index"), e.getMessage());
+        assertThrows(com.minidb.utils.DBException.class, () -> broken.insert(1, new RID(0, 0)));
+    }
+
+    @Test
+    public void testBPlusTreeBatchInsertAndDelete(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(64, BufferPool.Policy.LRU, fm);
+        BPlusTree batched = new BPlusTree(1, "id", fm, bp), single = new BPlusTree(2, "id", fm, bp);
+        List<BPlusTree.Entry> base = new ArrayList<>();
+        for (int i = 0; i < 40_000; i += 2) base.add(new BPlusTree.Entry(i, new RID(i, 0)));
+        batched.bulkLoad(base.iterator(), 0.9);
+        single.bulkLoad(base.iterator(), 0.9);
+
+        // 一批排好序的奇数键：按叶子分组后，页访问次数远少于逐条插入
+        List<BPlusTree.Entry> batch = new ArrayList<>();
+        for (int i = 1; i < 40_000; i += 2) batch.add(new BPlusTree.Entry(i, new RID(i, 0)));
+        long before = bp.hits() + bp.misses();
+        batched.insertBatch(batch);
+        long batchedReads = bp.hits() + bp.misses() - before;
+        before = bp.hits() + bp.misses();
+        for (BPlusTree.Entry e : batch) single.insert(e.key, e.rid);
+        long singleReads = bp.hits() + bp.misses() - before;
+        assertTrue(batchedReads * 5 < singleReads, batchedReads + " vs " + singleReads);
+        assertEquals(40_000, batched.rangeSearch(0, 40_000).size());
+        for (int k = 0; k < 40_000; k += 37) assertEquals(List.of(new RID(k, 0)), batched.search(k));
+
+        // 批量删除：不存在的项不算
+        List<BPlusTree.Entry> gone = new ArrayList<>();
+        for (int i = 0; i < 40_000; i += 4) gone.add(new BPlusTree.Entry(i, new RID(i, 0)));
+        gone.add(new BPlusTree.Entry(1, new RID(999, 9)));
+        assertEquals(10_000, batched.deleteBatch(gone));
+        assertEquals(30_000, batched.rangeSearch(0, 40_000).size());
+        assertEquals(List.of(), batched.search(400));
+        assertEquals(List.of(new RID(401, 0)), batched.search(401));
+    }
+
+    @Test
+    public void testHashIndex(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(64, BufferPool.Policy.LRU, fm);
+        HashIndex index = new HashIndex(1, "id", fm, bp);
+        // 目录逐桶增长：任何一次插入都只碰少数几页，不会出现整体重新哈希
+        long worst = 0;
+        for (int i = 0; i < 50_000; i++) {
+            long before = bp.hits() + bp.misses();
+            index.insert(i, new RID(i, 0));
+            worst = Math.max(worst, bp.hits() + bp.misses() - before);
+        }
+        assertTrue(index.globalDepth() > 4, "depth=" + index.globalDepth());
+        assertTrue(worst <= 12, "worst insert touched " + worst + " pages");
+        // 重复键分不开，挂溢出页
+        for (int i = 0; i < 1000; i++) index.insert(-1, new RID(100_000 + i, 0));
+
+        // 点查只读一个桶页
+        for (int k = 0; k < 50_000; k += 97) {
+            long before = bp.hits() + bp.misses();
+            assertEquals(List.of(new RID(k, 0)), index.search(k));
+            assertEquals(1, bp.hits() + bp.misses() - before, "key " + k);
+        }
+        assertEquals(1000, index.search(-1).size());
+        assertEquals(List.of(), index.search(50_000));
+
+        assertTrue(index.delete(7, new RID(7, 0)));
+        assertFalse(index.delete(7, new RID(7, 0)));
+        assertEquals(List.of(), index.search(7));
+        assertEquals(1000, index.delete(-1));
+        assertEquals(List.of(), index.search(-1));
+        bp.checkpoint();
+
+        // 重新打开：目录从索引文件里读回
+        FileManager fm2 = new FileManager(dir);
+        BufferPool bp2 = new BufferPool(64, BufferPool.Policy.LRU, fm2);
+        HashIndex reopened = new HashIndex(1, "id", fm2, bp2);
+        assertEquals(index.globalDepth(), reopened.globalDepth());
+        for (int k = 1; k < 50_000; k += 101) assertEquals(List.of(new RID(k, 0)), reopened.search(k), "key " + k);
+        assertEquals(List.of(), reopened.search(7));
+    }
+
+    @Test
+    public void testBPlusTreeCompositeKeys(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(64, BufferPool.Policy.LRU, fm);
+        Catalog catalog = new Catalog(dir);
+        TableInfo t = catalog.createTable("t", schema());
+        TableHeap heap = new TableHeap(t.tableId, t.schema, fm, bp);
+        for (int a = 0; a < 100; a++) {
+            for (int b = 99; b >= 0; b--) heap.insert(new com.minidb.storage.Record(List.of(a * 1000 + b, "k" + (a % 10))));
+        }
+        heap.insert(new com.minidb.storage.Record(Arrays.asList(5000, null)));
+        // 小顺串强制外部排序，组合键也要能写进顺串再读回来
+        com.minidb.index.IndexManager im = new com.minidb.index.IndexManager(catalog, fm, bp, 0.9, 1000);
+        im.createIndex("t_name_id", "t", List.of("name", "id"), List.of(), com.minidb.index.IndexManager.Kind.BTREE);
+        BPlusTree tree = im.open("t_name_id");
+
+        // 按列逐个比较：name 相同再按 id
+        List<Object> keys = new ArrayList<>();
+        BPlusTree.Cursor all = tree.cursor(null, null, false);
+        while (all.hasNext()) { all.next(); keys.add(all.key()); }
+        assertEquals(10_001, keys.size());
+        assertEquals(Arrays.asList(null, 5000), keys.get(0));
+        assertEquals(List.of("k0", 0), keys.get(1));
+        assertEquals(List.of("k0", 1), keys.get(2));
+        assertEquals(List.of("k9", 99099), keys.get(keys.size() - 1));
+
+        // 前缀边界：未约束的列用 null（最小）或 MAX_KEY（最大）补齐
+        Object max = BPlusTree.MAX_KEY;
+        assertEquals(1000, count(tree.cursor(BPlusTree.Bound.inclusive(Arrays.asList("k3", null)), BPlusTree.Bound.inclusive(List.of("k3", max)), false)));
+        assertEquals(6000, count(tree.cursor(BPlusTree.Bound.exclusive(List.of("k3", max)), null, false)));
+        assertEquals(3001, count(tree.cursor(null, BPlusTree.Bound.exclusive(Arrays.asList("k3", null)), false)));
+        // k3 且 id 在 [3000, 3050)，倒序
+        assertEquals(50, count(tree.cursor(BPlusTree.Bound.inclusive(List.of("k3", 3000)), BPlusTree.Bound.exclusive(List.of("k3", 3050)), true)));
+        assertEquals(1, tree.search(List.of("k7", 7042)).size());
+        assertEquals(0, tree.search(List.of("k7", 8042)).size());
+    }
+
+    @Test
+    public void testBPlusTreeKeyOrder(@TempDir Path dir) {
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(64, BufferPool.Policy.LRU, fm);
+        // 节点里按编码后的字节比较，顺序要和 KEY_ORDER 一致：负数在前，前缀在前，U+0000 不截断，按码点排
+        List<Object> ints = new ArrayList<>(List.of(Integer.MIN_VALUE, -70000, -1, 0, 1, 255, 256, 70000, Integer.MAX_VALUE));
+        List<Object> texts = new ArrayList<>(List.of("", "a", "a\0", "a\0b", "a\u0001", "ab", "b", "é", "\uFFFF", "\uD83D\uDE00"));
+        for (int i = 0; i < 2000; i++) { ints.add(i * 7919 - 5_000_000); texts.add("k" + i * 7919); }
+        for (List<Object> keys : List.of(ints, texts)) {
+            BPlusTree tree = new BPlusTree(keys == ints ? 1 : 2, "k", fm, bp);
+            List<Object> shuffled = new ArrayList<>(keys);
+            Collections.shuffle(shuffled, new Random(7));
+            for (int i = 0; i < shuffled.size(); i++) tree.insert(shuffled.get(i), new RID(i, 0));
+            List<Object> sorted = new ArrayList<>(keys);
+            sorted.sort(BPlusTree.KEY_ORDER);
+            List<Object> scanned = new ArrayList<>();
+            BPlusTree.Cursor c = tree.cursor(null, null, false);
+            while (c.hasNext()) { c.next(); scanned.add(c.key()); }
+            assertEquals(sorted, scanned);
+            for (Object k : keys) assertEquals(1, tree.search(k).size(), "key " + k);
+            // 范围游标的边界按字节比较，结果要和按对象比较切出来的一样（含前缀键、开闭区间、倒序）
+            for (int i = 0; i < 12; i++) {
+                Object lo = sorted.get(i), hi = sorted.get(sorted.size() - 1 - i * 97);
+                for (boolean inclusive : new boolean[]{true, false}) {
+                    List<Object> expected = new ArrayList<>();
+                    for (Object k : sorted) {
+                        int a = BPlusTree.KEY_ORDER.compare(k, lo), b = BPlusTree.KEY_ORDER.compare(k, hi);
+                        if ((a > 0 || inclusive && a == 0) && (b < 0 || inclusive && b == 0)) expected.add(k);
+                    }
+                    BPlusTree.Bound lower = inclusive ? BPlusTree.Bound.inclusive(lo) : BPlusTree.Bound.exclusive(lo);
+                    BPlusTree.Bound upper = inclusive ? BPlusTree.Bound.inclusive(hi) : BPlusTree.Bound.exclusive(hi);
+                    List<Object> got = new ArrayList<>();
+                    for (c = tree.cursor(lower, upper, true); c.hasNext(); ) { c.next(); got.add(0, c.key()); }
+                    assertEquals(expected, got, "(" + lo + ", " + hi + ")");
+                    assertEquals(expected.size(), count(tree.cursor(lower, upper, false)));
+                }
+            }
+        }
+        assertTrue(BPlusTree.KEY_ORDER.compare(-1, 0) < 0);
+        assertTrue(BPlusTree.KEY_ORDER.compare("ab", "a") > 0);
+        assertTrue(BPlusTree.KEY_ORDER.compare("\uFFFF", "\uD83D\uDE00") < 0); // String.compareTo 会反过来
+    }
+
+    private static int count(BPlusTree.Cursor c) {
+        int n = 0;
+        while (c.hasNext()) { c.next(); n++; }
+        return n;
+    }
+}
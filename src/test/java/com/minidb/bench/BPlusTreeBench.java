@@ -0,0 +1,73 @@
+package com.minidb.bench;
+
+import java.nio.file.*;
+import java.util.*;
+import com.minidb.storage.*;
+
+/**
+ * B+ 树点查与范围扫描：一百万个随机顺序插入的 INT 键，报告树高、页数、每次点查读的页数和耗时，
+ * 以及用游标（升序 / 降序交替）扫描十万个键的耗时；再对比同样的键自底向上批量装载的耗时和页数，
+ * 最后把同样的键插进哈希索引，报告最慢一次插入（目录翻倍时）的耗时和点查读的页数。
+ */
+public class BPlusTreeBench {
+    public static void main(String[] args) throws Exception {
+        int n = 1_000_000;
+        Path dir = Files.createTempDirectory("minidb-bench");
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(8192, BufferPool.Policy.LRU, fm);
+        BPlusTree tree = new BPlusTree(1, "id", fm, bp);
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) keys[i] = i;
+        Random rnd = new Random(42);
+        for (int i = n - 1; i > 0; i--) { int j = rnd.nextInt(i + 1); int t = keys[i]; keys[i] = keys[j]; keys[j] = t; }
+
+        long t0 = System.nanoTime();
+        for (int k : keys) tree.insert(k, new RID(k >>> 8, k & 0xff));
+        long t1 = System.nanoTime();
+        System.out.printf("inserted %d keys in %.1f s, height=%d, index pages=%d%n",
+                n, (t1 - t0) / 1e9, tree.height(), fm.numPages(tree.fileId()));
+
+        long before = bp.hits() + bp.misses();
+        int lookups = 100_000;
+        Bench.run("point lookup", lookups, 2, 3, i -> Bench.sink += tree.search(keys[(int) (i % n)]).size());
+        System.out.printf("page reads per lookup: %.2f%n",
+                (bp.hits() + bp.misses() - before) / (double) (lookups * 5));
+        // 范围扫描：游标沿叶子链表流式读取，每次只缓存一个叶子
+        int span = 100_000;
+        Bench.run("range scan, 100k keys per cursor", 5, 1, 3, i -> {
+            int lo = (int) (i * 7919 % (n - span));
+            BPlusTree.Cursor c = tree.cursor(BPlusTree.Bound.inclusive(lo), BPlusTree.Bound.exclusive(lo + span), i % 2 == 1);
+            long cnt = 0;
+            while (c.hasNext()) { c.next(); cnt++; }
+            Bench.sink += cnt;
+        });
+
+        // 批量装载：输入已排序，每页只写一次
+        List<BPlusTree.Entry> sorted = new ArrayList<>(n);
+        for (int k = 0; k < n; k++) sorted.add(new BPlusTree.Entry(k, new RID(k >>> 8, k & 0xff)));
+        BPlusTree packed = new BPlusTree(2, "id", fm, bp);
+        long t2 = System.nanoTime();
+        packed.bulkLoad(sorted.iterator(), 0.9);
+        long t3 = System.nanoTime();
+        System.out.printf("bulk loaded %d keys in %.2f s (fill 0.9), height=%d, index pages=%d%n",
+                n, (t3 - t2) / 1e9, packed.height(), fm.numPages(packed.fileId()));
+
+        // 哈希索引：点查只读一个桶页，目录翻倍只复制页号
+        HashIndex hash = new HashIndex(3, "id", fm, bp);
+        long worst = 0;
+        long t4 = System.nanoTime();
+        for (int k : keys) {
+            long s = System.nanoTime();
+            hash.insert(k, new RID(k >>> 8, k & 0xff));
+            worst = Math.max(worst, System.nanoTime() - s);
+        }
+        long t5 = System.nanoTime();
+        System.out.printf("hash inserted %d keys in %.1f s, slowest insert %.2f ms, depth=%d, index pages=%d%n",
+                n, (t5 - t4) / 1e9, worst / 1e6, hash.globalDepth(), fm.numPages(hash.fileId()));
+        before = bp.hits() + bp.misses();
+        Bench.run("hash point lookup", lookups, 2, 3, i -> Bench.sink += hash.search(keys[(int) (i % n)]).size());
+        System.out.printf("page reads per hash lookup: %.2f%n",
+                (bp.hits() + bp.misses() - before) / (double) (lookups * 5));
+        fm.close();
+    }
+}
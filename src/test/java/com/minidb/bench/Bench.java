@@ -0,0 +1,47 @@
+package com.minidb.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.LongConsumer;
+
+/**
+ * 极简微基准工具（不依赖 JMH）：先预热，再多轮计时，报告每次操作的耗时和当前线程的分配字节数。
+ *
+ * 运行方式：mvn -q test-compile 之后
+ * java -cp target/classes:target/test-classes com.minidb.bench.&lt;类名&gt;
+ */
+public final class Bench {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** 用来吃掉结果，防止 JIT 把被测代码当成死代码消除 */
+    public static volatile long sink;
+
+    private Bench() {}
+
+    public static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * 对 body 调用 ops 次（参数为第几次操作），预热 warmupRounds 轮后取 rounds 轮中最快的一轮
+     */
+    public static void run(String name, long ops, int warmupRounds, int rounds, LongConsumer body) {
+        for (int r = 0; r < warmupRounds; r++) loop(ops, body);
+        double bestNs = Double.MAX_VALUE;
+        double bytes = 0;
+        for (int r = 0; r < rounds; r++) {
+            long a0 = allocatedBytes();
+            long t0 = System.nanoTime();
+            loop(ops, body);
+            long t1 = System.nanoTime();
+            long a1 = allocatedBytes();
+            bestNs = Math.min(bestNs, (t1 - t0) / (double) ops);
+            bytes = (a1 - a0) / (double) ops;
+        }
+        System.out.printf("%-40s %10.1f ns/op %10.1f B/op%n", name, bestNs, bytes);
+    }
+
+    private static void loop(long ops, LongConsumer body) {
+        for (long i = 0; i < ops; i++) body.accept(i);
+    }
+}
@@ -0,0 +1,56 @@
+package com.minidb.bench;
+
+import java.nio.file.*;
+import java.util.*;
+import com.minidb.storage.*;
+
+/**
+ * 缓冲池命中路径基准：fetchPage + unpinPage（全部命中），
+ * 对照旧实现的 tableId+":"+pageId 字符串键 HashMap 查找。
+ */
+public class BufferPoolLookupBench {
+    public static void main(String[] args) throws Exception {
+        int pages = 1024;
+        long ops = 5_000_000;
+        Path dir = Files.createTempDirectory("minidb-bench");
+        FileManager fm = new FileManager(dir);
+        BufferPool bp = new BufferPool(pages, BufferPool.Policy.LRU, fm);
+        for (int i = 0; i < pages; i++) {
+            bp.fetchPage(1, i);
+            bp.unpinPage(1, i, false);
+        }
+
+        // 旧实现：每次 fetch / unpin 都拼一个 String 键再查 LinkedHashMap（同样在锁内）
+        StringKeyedPool before = new StringKeyedPool(pages);
+        for (int i = 0; i < pages; i++) before.put(1, i, new Page(i, new byte[0]));
+
+        Bench.run("String key fetch+unpin (before)", ops, 5, 5, i -> {
+            int pid = (int) ((i * 7919) & (pages - 1));
+            Page p = before.fetch(1, pid);
+            before.unpin(1, pid);
+            Bench.sink += p.pageId;
+        });
+        Bench.run("BufferPool fetch+unpin, packed key (after)", ops, 5, 5, i -> {
+            int pid = (int) ((i * 7919) & (pages - 1));
+            Page p = bp.fetchPage(1, pid);
+            bp.unpinPage(1, pid, false);
+            Bench.sink += p.pageId;
+        });
+        System.out.printf("hits=%d misses=%d%n", bp.hits(), bp.misses());
+    }
+
+    private static final class StringKeyedPool {
+        private final Map<String, Page> cache;
+        private final Map<String, Integer> pins = new HashMap<>();
+        StringKeyedPool(int capacity) { cache = new LinkedHashMap<>(capacity, 0.75f, true); }
+        synchronized void put(int tableId, int pageId, Page p) { cache.put(tableId + ":" + pageId, p); }
+        synchronized Page fetch(int tableId, int pageId) {
+            String k = tableId + ":" + pageId;
+            pins.merge(k, 1, Integer::sum);
+            return cache.get(k);
+        }
+        synchronized void unpin(int tableId, int pageId) {
+            pins.merge(tableId + ":" + pageId, -1, Integer::sum);
+        }
+    }
+}
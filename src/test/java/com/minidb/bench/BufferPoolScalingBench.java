@@ -0,0 +1,67 @@
+package com.minidb.bench;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.minidb.storage.*;
+
+/**
+ * 多线程扩展性：以读为主（5% 的访问把页标脏）的随机点查，工作集装得下缓冲池，
+ * 比较单锁缓冲池与分片缓冲池在 1..N 个线程下的吞吐量。
+ */
+public class BufferPoolScalingBench {
+    public static void main(String[] args) throws Exception {
+        int capacity = 1024;
+        int pages = 768;
+        int shards = 16;
+        long opsPerThread = 2_000_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = Math.max(4, cores);
+
+        System.out.printf("pool=%d frames, working set=%d pages, %d cores, %d ops per thread%n",
+                capacity, pages, cores, opsPerThread);
+        System.out.printf("%-8s %8s %14s %14s%n", "threads", "shards", "Mops/s", "vs 1 thread");
+        for (int shardCount : new int[]{1, shards}) {
+            Path dir = Files.createTempDirectory("minidb-bench");
+            FileManager fm = new FileManager(dir);
+            BufferPool bp = new BufferPool(capacity, BufferPool.Policy.LRU, shardCount, fm);
+            for (int p = 0; p < pages; p++) { bp.fetchPage(1, p); bp.unpinPage(1, p, false); }
+            run(bp, 1, opsPerThread / 4, pages); // 预热
+            double base = 0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                double mops = run(bp, threads, opsPerThread, pages);
+                if (threads == 1) base = mops;
+                System.out.printf("%-8d %8d %14.2f %13.2fx%n", threads, shardCount, mops, mops / base);
+            }
+            bp.close();
+            fm.close();
+        }
+    }
+
+    private static double run(BufferPool bp, int threads, long opsPerThread, int pages) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        List<Future<Long>> done = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = 42 + t;
+            done.add(pool.submit(() -> {
+                SplittableRandom rnd = new SplittableRandom(seed);
+                long sum = 0;
+                start.await();
+                for (long i = 0; i < opsPerThread; i++) {
+                    int pid = rnd.nextInt(pages);
+                    Page p = bp.fetchPage(1, pid);
+                    sum += p.pageId;
+                    bp.unpinPage(1, pid, rnd.nextInt(100) < 5);
+                }
+                return sum;
+            }));
+        }
+        start.await();
+        long t0 = System.nanoTime();
+        for (Future<Long> f : done) Bench.sink += f.get();
+        long t1 = System.nanoTime();
+        pool.shutdown();
+        return threads * opsPerThread / ((t1 - t0) / 1e3);
+    }
+}
@@ -0,0 +1,46 @@
+package com.minidb.bench;
+
+import java.lang.management.*;
+import java.nio.file.*;
+import com.minidb.storage.*;
+
+/**
+ * 未命中路径基准：顺序扫描一个远大于缓冲池的文件（每次 fetch 都要读盘），
+ * 对比堆内帧（每次读入分配新的 byte[]）和堆外帧（读进预分配的直接内存）的分配量与 GC 次数。
+ */
+public class OffHeapFrameBench {
+    public static void main(String[] args) throws Exception {
+        int capacity = 256;
+        int filePages = 4096;
+        long ops = 400_000;
+        Path dir = Files.createTempDirectory("minidb-bench");
+        FileManager fm = new FileManager(dir);
+        BufferPool writer = new BufferPool(capacity, BufferPool.Policy.LRU, fm);
+        for (int i = 0; i < filePages; i++) {
+            Page p = writer.newPage(1);
+            p.buf.putInt(0, i);
+            writer.unpinPage(1, p.pageId, true);
+        }
+        writer.checkpoint();
+
+        for (boolean offHeap : new boolean[]{false, true}) {
+            BufferPool bp = new BufferPool(capacity, BufferPool.Policy.LRU, 1, offHeap);
+            bp.attach(fm);
+            long gc0 = gcCount();
+            Bench.run((offHeap ? "off-heap" : "heap") + " frames, scan miss", ops, 3, 5, i -> {
+                int pid = (int) (i % filePages);
+                Page p = bp.fetchPage(1, pid);
+                Bench.sink += p.buf.getInt(0);
+                bp.unpinPage(1, pid, false);
+            });
+            System.out.printf("  misses=%d gc=%d%n", bp.misses(), gcCount() - gc0);
+        }
+        fm.close();
+    }
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += gc.getCollectionCount();
+        return n;
+    }
+}